@@ -0,0 +1,63 @@
+package com.revolut.benchmarks;
+
+import com.revolut.core.account.Account;
+import com.revolut.persistence.DataSource;
+import com.revolut.persistence.SqlStorage;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link SqlStorage#details(UUID)} depending on the table size,
+ * with primary key lookup it's supposed to stay flat.
+ * Biggest tables require a few gigabytes of heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class AccountLookupBenchmark {
+
+    private static final int KNOWN = 4096;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int accounts;
+
+    private JdbcDataSource database;
+    private SqlStorage storage;
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = Databases.create("lookup_" + accounts);
+        ids = Databases.populateBulk(database, accounts, Math.min(KNOWN, accounts), 1_000_000);
+        storage = new SqlStorage(new DataSource(database));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Databases.shutdown(database);
+    }
+
+    @Benchmark
+    public Account details() {
+        return storage.details(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+}
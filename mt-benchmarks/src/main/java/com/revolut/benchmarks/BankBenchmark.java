@@ -0,0 +1,116 @@
+package com.revolut.benchmarks;
+
+import com.revolut.core.bank.Bank;
+import com.revolut.core.bank.SimpleBank;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.persistence.DataSource;
+import com.revolut.persistence.SqlStorage;
+import com.revolut.persistence.TransactionalOperation;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SimpleBank} on top of {@link SqlStorage} with in-memory H2, every
+ * operation runs in its own {@link TransactionalOperation} exactly as the webapp does.
+ * Retries are not made, optimistic lock failures are counted instead, so optimistic and
+ * pessimistic modes are compared by operations succeeded rather than raw throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BankBenchmark {
+
+    private static final Money CENT = new Money(1);
+
+    @Param({"UNIFORM", "ZIPF", "HOT"})
+    private Workload workload;
+
+    @Param({"OPTIMISTIC", "PESSIMISTIC"})
+    private SimpleBank.Mode mode;
+
+    @Param({"1000"})
+    private int accounts;
+
+    private JdbcDataSource database;
+    private DataSource dataSource;
+    private Bank bank;
+    private Zipf zipf;
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = Databases.create("bank_" + workload + "_" + mode);
+        ids = Databases.populate(database, accounts, 1_000_000_000);
+        dataSource = new DataSource(database);
+        bank = new SimpleBank(new SqlStorage(dataSource), mode);
+        zipf = new Zipf(accounts, 1.0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Databases.shutdown(database);
+    }
+
+    @Benchmark
+    public void transfer(Outcome outcome) {
+        int[] pair = workload.pickPair(zipf, accounts);
+        UUID from = ids[pair[0]];
+        UUID to = ids[pair[1]];
+        outcome.run(new TransactionalOperation(dataSource, () -> bank.transfer(from, to, CENT)));
+    }
+
+    @Benchmark
+    public void deposit(Outcome outcome) {
+        UUID id = ids[workload.pick(zipf, accounts)];
+        outcome.run(new TransactionalOperation(dataSource, () -> bank.deposit(id, CENT)));
+    }
+
+    /**
+     * Per thread counters of how operations ended, reported next to the throughput
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long succeeded;
+        public long conflicts;
+        public long failures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            succeeded = 0;
+            conflicts = 0;
+            failures = 0;
+        }
+
+        void run(TransactionalOperation operation) {
+            try {
+                operation.call();
+                succeeded++;
+            } catch (RetryStorageException ex) {
+                conflicts++;
+            } catch (Exception ex) {
+                failures++;
+            }
+        }
+    }
+}
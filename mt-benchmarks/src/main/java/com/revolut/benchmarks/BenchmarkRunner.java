@@ -0,0 +1,27 @@
+package com.revolut.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs selected benchmarks once for every configured number of threads.
+ * Accepts usual JMH command line, plus {@code -Dthreads=1,4,16} to define
+ * thread counts to sweep through.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        String[] threads = System.getProperty("threads", "1,4,16").split(",");
+
+        for (String count : threads) {
+            Options options = new OptionsBuilder()
+                .parent(cmd)
+                .threads(Integer.parseInt(count.trim()))
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
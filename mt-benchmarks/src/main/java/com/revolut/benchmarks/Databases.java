@@ -0,0 +1,92 @@
+package com.revolut.benchmarks;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Helpers to prepare in-memory databases for benchmarks
+ */
+final class Databases {
+
+    private Databases() {
+    }
+
+    /**
+     * Creates fresh migrated in-memory H2 database
+     *
+     * @param name unique name of the database
+     */
+    static JdbcDataSource create(String name) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        ds.setUser("sa");
+        ds.setPassword("");
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(ds);
+        flyway.clean();
+        flyway.migrate();
+
+        return ds;
+    }
+
+    /**
+     * Inserts given number of accounts with the same balance
+     *
+     * @return ids of inserted accounts
+     */
+    static UUID[] populate(javax.sql.DataSource ds, int accounts, int balance) throws SQLException {
+        UUID[] ids = new UUID[accounts];
+        try (Connection connection = ds.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                 "INSERT INTO accounts (accountId, balance, version) VALUES (?, ?, 0)")) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < accounts; i++) {
+                ids[i] = UUID.randomUUID();
+                ps.setObject(1, ids[i]);
+                ps.setInt(2, balance);
+                ps.addBatch();
+                if (i % 10_000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+            connection.commit();
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts given number of accounts, only some of them are known to the caller.
+     * Suitable for tables way bigger than reasonable to keep ids of in memory.
+     *
+     * @param known how many of inserted accounts ids to return
+     * @return ids of known accounts, which are spread all over the table
+     */
+    static UUID[] populateBulk(javax.sql.DataSource ds, int accounts, int known, int balance) throws SQLException {
+        UUID[] ids = populate(ds, known, balance);
+        try (Connection connection = ds.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                 "INSERT INTO accounts (accountId, balance, version) " +
+                     "SELECT RANDOM_UUID(), ?, 0 FROM SYSTEM_RANGE(1, ?)")) {
+            ps.setInt(1, balance);
+            ps.setInt(2, accounts - known);
+            ps.executeUpdate();
+        }
+        return ids;
+    }
+
+    /**
+     * Shuts the in-memory database down, so its memory is released
+     */
+    static void shutdown(javax.sql.DataSource ds) throws SQLException {
+        try (Connection connection = ds.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+    }
+}
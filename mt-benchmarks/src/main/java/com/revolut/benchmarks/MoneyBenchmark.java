@@ -0,0 +1,39 @@
+package com.revolut.benchmarks;
+
+import com.revolut.core.money.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arithmetic of {@link Money}, the baseline every other benchmark builds on
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private Money balance = new Money(1_000_000);
+    private Money amount = new Money(100);
+
+    @Benchmark
+    public Money add() {
+        return balance.add(amount);
+    }
+
+    @Benchmark
+    public Money subtract() {
+        return balance.subtract(amount);
+    }
+}
@@ -0,0 +1,104 @@
+package com.revolut.benchmarks;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+import com.revolut.persistence.DataSource;
+import com.revolut.persistence.SqlStorage;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Raw {@link SqlStorage} operations against in-memory H2 without any transaction
+ * around them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"1000"})
+    private int accounts;
+
+    private JdbcDataSource database;
+    private SqlStorage storage;
+    private UUID[] ids;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = Databases.create("storage");
+        ids = Databases.populate(database, accounts, 1_000_000);
+        storage = new SqlStorage(new DataSource(database));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Databases.shutdown(database);
+    }
+
+    @Benchmark
+    public Account details() {
+        return storage.details(ids[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    public void update(Owned owned) {
+        Account account = owned.next();
+        storage.update(account);
+        account.setVersion(account.getVersion() + 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<Account> getAllAccounts() {
+        return storage.getAllAccounts();
+    }
+
+    /**
+     * Disjoint slice of accounts for every thread, so updates never conflict
+     * and versions are tracked locally.
+     */
+    @State(Scope.Thread)
+    public static class Owned {
+        private Account[] accounts;
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(StorageBenchmark benchmark) {
+            int slice = 16;
+            int first = benchmark.threads.getAndIncrement() * slice;
+            accounts = new Account[slice];
+            for (int i = 0; i < slice; i++) {
+                UUID id = benchmark.ids[(first + i) % benchmark.accounts];
+                accounts[i] = new Account(id, new Money(1_000_000), 0);
+            }
+        }
+
+        Account next() {
+            cursor = (cursor + 1) % accounts.length;
+            return accounts[cursor];
+        }
+    }
+}
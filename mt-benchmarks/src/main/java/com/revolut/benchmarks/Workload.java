@@ -0,0 +1,68 @@
+package com.revolut.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Contention profile of a benchmark, defines how accounts are picked
+ * for every single operation.
+ */
+public enum Workload {
+
+    /**
+     * Every account is equally likely, contention is close to none
+     */
+    UNIFORM {
+        @Override
+        int pick(Zipf zipf, int accounts) {
+            return ThreadLocalRandom.current().nextInt(accounts);
+        }
+    },
+
+    /**
+     * Few accounts take most of the operations, the rest forms a long tail
+     */
+    ZIPF {
+        @Override
+        int pick(Zipf zipf, int accounts) {
+            return zipf.next();
+        }
+    },
+
+    /**
+     * Every second pick is the very same account
+     */
+    HOT {
+        @Override
+        int pick(Zipf zipf, int accounts) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return random.nextBoolean() ? 0 : random.nextInt(accounts);
+        }
+    };
+
+    /**
+     * Picks index of an account
+     *
+     * @param zipf     distribution to use for skewed profile
+     * @param accounts number of accounts to pick from
+     * @return index in range [0, accounts)
+     */
+    abstract int pick(Zipf zipf, int accounts);
+
+    /**
+     * Picks pair of distinct account indexes
+     *
+     * @param zipf     distribution to use for skewed profile
+     * @param accounts number of accounts to pick from, at least two
+     * @return two distinct indexes
+     */
+    int[] pickPair(Zipf zipf, int accounts) {
+        int from = pick(zipf, accounts);
+        int to = pick(zipf, accounts);
+        while (to == from) {
+            to = ThreadLocalRandom.current().nextInt(accounts);
+        }
+        return ThreadLocalRandom.current().nextBoolean()
+            ? new int[]{from, to}
+            : new int[]{to, from};
+    }
+}
@@ -0,0 +1,31 @@
+package com.revolut.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf distribution over [0, n) based on precomputed cumulative probabilities.
+ * Index 0 is the most frequent one.
+ */
+public class Zipf {
+    private final double[] cdf;
+
+    public Zipf(int n, double exponent) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    public int next() {
+        double p = ThreadLocalRandom.current().nextDouble();
+        int idx = Arrays.binarySearch(cdf, p);
+        int pos = idx >= 0 ? idx : -idx - 1;
+        return Math.min(pos, cdf.length - 1);
+    }
+}
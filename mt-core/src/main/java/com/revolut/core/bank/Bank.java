@@ -1,10 +1,20 @@
 package com.revolut.core.bank;
 
 import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
 import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.LedgerEntry;
+import com.revolut.core.storage.Storage;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Entity to provide business functionality
@@ -27,6 +37,26 @@ public interface Bank {
      */
     void transfer(UUID from, UUID to, Money amount);
 
+    /**
+     * Applies all given transfers one after another. Transfer, which cannot be made
+     * because of missing account or lack of money, fails alone, the rest are applied.
+     *
+     * @param transfers transfers to apply in order
+     * @return result of every transfer in the same order
+     */
+    default List<TransferResult> transfer(List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            try {
+                transfer(transfer.getFrom(), transfer.getTo(), transfer.getAmount());
+                results.add(TransferResult.completed());
+            } catch (AccountException | AccountDoesNotExistException ex) {
+                results.add(TransferResult.failed(ex.getMessage()));
+            }
+        }
+        return results;
+    }
+
     /**
      * Retrieve information about single account
      *
@@ -35,6 +65,25 @@ public interface Bank {
      */
     Account getAccount(UUID accountId);
 
+    /**
+     * Retrieve information about many accounts at once
+     *
+     * @param accountIds accountIds to retrieve information for
+     * @return found accounts by id, missing accounts are skipped
+     */
+    default Map<UUID, Account> getAccounts(Collection<UUID> accountIds) {
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            if (accounts.containsKey(accountId)) continue;
+            try {
+                accounts.put(accountId, getAccount(accountId));
+            } catch (AccountDoesNotExistException ex) {
+                // left out, callers tell missing accounts by absence
+            }
+        }
+        return accounts;
+    }
+
     /**
      * Deposit money to an account
      *
@@ -44,10 +93,58 @@ public interface Bank {
      */
     Account deposit(UUID accountId, Money money);
 
+    /**
+     * @return whether accounts can be striped by {@link #stripe(UUID, int)}
+     */
+    default boolean supportsStriping() {
+        return false;
+    }
+
+    /**
+     * Spread balance of a heavily used account over several slots, so its deposits
+     * and transfers don't wait for each other
+     *
+     * @param accountId account id to stripe
+     * @param slots     number of slots
+     * @throws UnsupportedOperationException if the bank doesn't {@link #supportsStriping()}
+     */
+    default void stripe(UUID accountId, int slots) {
+        throw new UnsupportedOperationException("Bank doesn't support striped accounts");
+    }
+
+    /**
+     * @return whether completed transfers are kept for {@link #getTransactions(UUID, Long, int)}
+     */
+    default boolean hasHistory() {
+        return false;
+    }
+
+    /**
+     * Retrieve single page of completed transfers from or to an account, the latest first
+     *
+     * @param accountId account id to retrieve transfers of
+     * @param before    ledger entry id to start before, {@code null} to start from the latest one
+     * @param limit     maximum number of transfers to retrieve
+     * @return ledger entries with ids less than given one, none if the bank has no history
+     */
+    default List<LedgerEntry> getTransactions(UUID accountId, Long before, int limit) {
+        return Collections.emptyList();
+    }
+
     /**
      * Retrieve information about all accounts in the bank
      *
      * @return collection with all accounts
      */
     List<Account> getAllAccounts();
+
+    /**
+     * Retrieve single page of accounts ordered by account id, see {@link Storage#getAccounts(UUID, int)}
+     */
+    List<Account> getAccounts(UUID after, int limit);
+
+    /**
+     * Pass every account in the bank to given consumer one by one, see {@link Storage#forEachAccount(Consumer)}
+     */
+    void forEachAccount(Consumer<Account> consumer);
 }
@@ -0,0 +1,153 @@
+package com.revolut.core.bank;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * In-memory bank for a single instance deployment.
+ *
+ * Accounts are guarded by a fixed set of striped locks. Transfer takes locks of
+ * both accounts ordered by stripe index, which is derived from the account id only,
+ * so any two transfers take their locks in the same order and cannot deadlock.
+ * Transfers between accounts of different stripes run fully in parallel.
+ * Account ids are kept sorted aside, so a page of accounts costs as much as its size.
+ */
+public class ConcurrentBank implements Bank {
+
+    private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+    private final NavigableSet<UUID> ids = new ConcurrentSkipListSet<>();
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public ConcurrentBank() {
+        this(1024);
+    }
+
+    /**
+     * @param stripes number of locks, has to be power of two
+     */
+    public ConcurrentBank(int stripes) {
+        if (Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("Number of stripes has to be power of two");
+        this.stripes = new ReentrantLock[stripes];
+        this.mask = stripes - 1;
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Account createAccount() {
+        Account account = new Account();
+        accounts.put(account.getAccountId(), account);
+        ids.add(account.getAccountId());
+        return snapshot(account);
+    }
+
+    @Override
+    public Account getAccount(UUID accountId) {
+        Account account = find(accountId);
+        ReentrantLock lock = stripe(accountId);
+        lock.lock();
+        try {
+            return snapshot(account);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Account deposit(UUID accountId, Money money) {
+        Account account = find(accountId);
+        ReentrantLock lock = stripe(accountId);
+        lock.lock();
+        try {
+            return snapshot(account.deposit(money));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return accounts.keySet().stream()
+            .map(this::getAccount)
+            .collect(toList());
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        List<Account> page = new ArrayList<>(limit);
+        for (UUID accountId : after == null ? ids : ids.tailSet(after, false)) {
+            if (page.size() == limit) break;
+            page.add(getAccount(accountId));
+        }
+        return page;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        ids.forEach(accountId -> consumer.accept(getAccount(accountId)));
+    }
+
+    @Override
+    public void transfer(UUID from, UUID to, Money amount) {
+        if (from.equals(to)) return;
+        if (amount.getCents() == 0) return;
+
+        Account fromAcc = find(from);
+        Account toAcc = find(to);
+
+        int fromStripe = index(from);
+        int toStripe = index(to);
+        ReentrantLock first = stripes[Math.min(fromStripe, toStripe)];
+        ReentrantLock second = stripes[Math.max(fromStripe, toStripe)];
+
+        first.lock();
+        try {
+            second.lock();
+            try {
+                fromAcc.withdraw(amount);
+                toAcc.deposit(amount);
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    private Account find(UUID accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null)
+            throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+        return account;
+    }
+
+    private ReentrantLock stripe(UUID accountId) {
+        return stripes[index(accountId)];
+    }
+
+    private int index(UUID accountId) {
+        long bits = accountId.getMostSignificantBits() ^ accountId.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static Account snapshot(Account account) {
+        return new Account(account.getAccountId(), account.getBalance(), account.getVersion());
+    }
+}
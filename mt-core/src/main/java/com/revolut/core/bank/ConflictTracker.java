@@ -0,0 +1,120 @@
+package com.revolut.core.bank;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps decaying score of optimistic lock conflicts per account. Every conflict adds one
+ * to the score, the score halves every half-life. Account gets hot once its score reaches
+ * the threshold and stays hot till the score falls below half of it, so it doesn't flip
+ * back and forth on every conflict. Cooled down accounts are forgotten.
+ */
+public class ConflictTracker {
+
+    private static final int SWEEP_EVERY = 1024;
+
+    private final double threshold;
+    private final double halfLifeNanos;
+    private final LongSupplier clock;
+    private final Map<UUID, Score> scores = new ConcurrentHashMap<>();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    /**
+     * @param threshold score account gets hot at
+     * @param halfLife  time the score halves in
+     */
+    public ConflictTracker(double threshold, long halfLife, TimeUnit unit) {
+        this(threshold, halfLife, unit, System::nanoTime);
+    }
+
+    public ConflictTracker(double threshold, long halfLife, TimeUnit unit, LongSupplier clock) {
+        if (threshold < 1) throw new IllegalArgumentException("Threshold has to be at least one conflict");
+        this.threshold = threshold;
+        this.halfLifeNanos = unit.toNanos(halfLife);
+        this.clock = clock;
+    }
+
+    /**
+     * Records optimistic lock conflict on the account
+     */
+    public void conflict(UUID accountId) {
+        long now = clock.getAsLong();
+        scores.computeIfAbsent(accountId, id -> new Score(now)).add(now);
+        if (conflicts.incrementAndGet() % SWEEP_EVERY == 0) sweep(now);
+    }
+
+    /**
+     * @return whether conflicts on the account are frequent enough to avoid optimistic lock
+     */
+    public boolean isHot(UUID accountId) {
+        Score score = scores.get(accountId);
+        if (score == null) return false;
+        long now = clock.getAsLong();
+        if (score.isHot(now)) return true;
+        if (score.isForgotten(now)) scores.remove(accountId, score);
+        return false;
+    }
+
+    /**
+     * @return number of accounts being hot at the moment
+     */
+    public int getHotAccounts() {
+        long now = clock.getAsLong();
+        int hot = 0;
+        for (Score score : scores.values()) {
+            if (score.isHot(now)) hot++;
+        }
+        return hot;
+    }
+
+    /**
+     * @return conflicts recorded since start
+     */
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    // accounts with a few conflicts long ago may never be asked about again
+    private void sweep(long now) {
+        scores.entrySet().removeIf(entry -> entry.getValue().isForgotten(now));
+    }
+
+    /**
+     * Score of a single account along with its hot flag
+     */
+    private class Score {
+        private double value;
+        private long decayedAt;
+        private boolean hot;
+
+        Score(long now) {
+            this.decayedAt = now;
+        }
+
+        synchronized void add(long now) {
+            decay(now);
+            value++;
+            if (value >= threshold) hot = true;
+        }
+
+        synchronized boolean isHot(long now) {
+            decay(now);
+            if (hot && value < threshold / 2) hot = false;
+            return hot;
+        }
+
+        synchronized boolean isForgotten(long now) {
+            return !isHot(now) && value < 0.5;
+        }
+
+        private void decay(long now) {
+            if (now <= decayedAt) return;
+            value *= Math.pow(0.5, (now - decayedAt) / halfLifeNanos);
+            decayedAt = now;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.revolut.core.bank;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.StorageException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-memory bank, which spreads accounts by id hash over partitions, every partition
+ * is owned by a single worker thread.
+ *
+ * Callers put operations into the mailbox of the partition owning the account and get
+ * futures back. Worker applies operations of its mailbox one after another, so accounts
+ * of a partition need no locks and operations of different partitions run in parallel.
+ * Transfer within a partition is a single operation. Transfer between partitions is
+ * a debit on the partition of the source account, which on success sends credit to the
+ * partition of the destination account itself, so the transfer completes whether the
+ * caller still waits or not. If credit fails, the amount is refunded to the source account.
+ * Money being moved between partitions is in neither account for a moment, reads don't
+ * wait for it.
+ *
+ * Callers wait for their operations a bounded time. Operations submitted before the bank
+ * is closed are applied, later ones are rejected.
+ */
+@Slf4j
+public class PartitionedBank implements Bank, AutoCloseable {
+
+    private final Partition[] partitions;
+    // operations posted, but not applied yet, including credits and refunds
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean running = true;
+    private final long timeoutNanos;
+
+    public PartitionedBank() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PartitionedBank(int partitions) {
+        this(partitions, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param partitions number of partitions, one worker thread each
+     * @param timeout    how long callers wait for their operations, not completed ones fail
+     *                   with {@link StorageException}, though they may still be applied
+     */
+    public PartitionedBank(int partitions, long timeout, TimeUnit unit) {
+        if (partitions < 1) throw new IllegalArgumentException("At least one partition is required");
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(i);
+        }
+    }
+
+    public int partitionOf(UUID accountId) {
+        long bits = accountId.getMostSignificantBits() ^ accountId.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    @Override
+    public Account createAccount() {
+        Account account = new Account();
+        Partition partition = partitions[partitionOf(account.getAccountId())];
+        return await(ask(partition, accounts -> {
+            accounts.put(account.getAccountId(), account);
+            partition.ids.add(account.getAccountId());
+            return snapshot(account);
+        }));
+    }
+
+    @Override
+    public Account getAccount(UUID accountId) {
+        return await(ask(accountId, accounts -> snapshot(find(accounts, accountId))));
+    }
+
+    /**
+     * Asks every partition owning any of the accounts once, partitions don't wait for each other
+     */
+    @Override
+    public Map<UUID, Account> getAccounts(Collection<UUID> accountIds) {
+        Map<Partition, List<UUID>> byPartition = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            byPartition.computeIfAbsent(partitions[partitionOf(accountId)], p -> new ArrayList<>()).add(accountId);
+        }
+        List<CompletableFuture<Map<UUID, Account>>> futures = new ArrayList<>(byPartition.size());
+        byPartition.forEach((partition, ids) -> futures.add(ask(partition, accounts -> {
+            Map<UUID, Account> found = new HashMap<>();
+            for (UUID accountId : ids) {
+                Account account = accounts.get(accountId);
+                if (account != null) found.put(accountId, snapshot(account));
+            }
+            return found;
+        })));
+        Map<UUID, Account> found = new HashMap<>();
+        futures.forEach(future -> found.putAll(await(future)));
+
+        Map<UUID, Account> ordered = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            Account account = found.get(accountId);
+            if (account != null) ordered.put(accountId, account);
+        }
+        return ordered;
+    }
+
+    @Override
+    public Account deposit(UUID accountId, Money money) {
+        return await(depositAsync(accountId, money));
+    }
+
+    @Override
+    public void transfer(UUID from, UUID to, Money amount) {
+        await(transferAsync(from, to, amount));
+    }
+
+    /**
+     * Asks every partition for its accounts, partitions don't wait for each other
+     */
+    @Override
+    public List<Account> getAllAccounts() {
+        List<CompletableFuture<List<Account>>> futures = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            futures.add(ask(partition, accounts -> {
+                List<Account> snapshots = new ArrayList<>(accounts.size());
+                accounts.values().forEach(account -> snapshots.add(snapshot(account)));
+                return snapshots;
+            }));
+        }
+        List<Account> all = new ArrayList<>();
+        futures.forEach(future -> all.addAll(await(future)));
+        return all;
+    }
+
+    /**
+     * Asks every partition for its page through the sorted ids, the first of them all make the page
+     */
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        List<CompletableFuture<List<Account>>> futures = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            futures.add(ask(partition, accounts -> {
+                List<Account> page = new ArrayList<>(limit);
+                for (UUID accountId : after == null ? partition.ids : partition.ids.tailSet(after, false)) {
+                    if (page.size() == limit) break;
+                    page.add(snapshot(accounts.get(accountId)));
+                }
+                return page;
+            }));
+        }
+        List<Account> pages = new ArrayList<>(partitions.length * limit);
+        futures.forEach(future -> pages.addAll(await(future)));
+        pages.sort(Comparator.comparing(Account::getAccountId));
+        return pages.size() > limit ? new ArrayList<>(pages.subList(0, limit)) : pages;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        getAllAccounts().forEach(consumer);
+    }
+
+    /**
+     * Deposits money to an account
+     *
+     * @return future completed with the account state right after the deposit
+     */
+    public CompletableFuture<Account> depositAsync(UUID accountId, Money money) {
+        return ask(accountId, accounts -> snapshot(find(accounts, accountId).deposit(money)));
+    }
+
+    /**
+     * Transfers money between accounts
+     *
+     * @return future completed when the amount has reached the destination account
+     */
+    public CompletableFuture<Void> transferAsync(UUID from, UUID to, Money amount) {
+        if (from.equals(to) || amount.getCents() == 0) return CompletableFuture.completedFuture(null);
+
+        Partition source = partitions[partitionOf(from)];
+        Partition destination = partitions[partitionOf(to)];
+        if (source == destination) {
+            return ask(source, accounts -> {
+                Account toAcc = find(accounts, to);
+                find(accounts, from).withdraw(amount);
+                toAcc.deposit(amount);
+                return null;
+            });
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(source, accounts -> {
+            try {
+                find(accounts, from).withdraw(amount);
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+                return;
+            }
+            post(destination, credit -> {
+                try {
+                    find(credit, to).deposit(amount);
+                    future.complete(null);
+                } catch (RuntimeException ex) {
+                    post(source, refund -> {
+                        refund.get(from).deposit(amount);
+                        future.completeExceptionally(ex);
+                    });
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Stops the workers, after they have applied all submitted operations along with
+     * credits and refunds those have caused
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        for (Partition partition : partitions) {
+            partition.worker.join();
+        }
+    }
+
+    private <T> CompletableFuture<T> ask(UUID accountId, Function<Map<UUID, Account>, T> operation) {
+        return ask(partitions[partitionOf(accountId)], operation);
+    }
+
+    private <T> CompletableFuture<T> ask(Partition partition, Function<Map<UUID, Account>, T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submit(partition, accounts -> {
+            try {
+                future.complete(operation.apply(accounts));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    // counted as pending before the running check, so workers don't stop before it's posted
+    private void submit(Partition partition, Operation operation) {
+        pending.incrementAndGet();
+        if (!running) {
+            pending.decrementAndGet();
+            throw new IllegalStateException("Bank is closed");
+        }
+        partition.mailbox.add(operation);
+    }
+
+    // operations posted by workers are accepted even while closing, so started transfers complete
+    private void post(Partition partition, Operation operation) {
+        pending.incrementAndGet();
+        partition.mailbox.add(operation);
+    }
+
+    private static Account find(Map<UUID, Account> accounts, UUID accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null)
+            throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+        return account;
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new StorageException("Operation has failed", ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new StorageException("Operation is not completed in time, it may still be applied");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for operation", ex);
+        }
+    }
+
+    private static Account snapshot(Account account) {
+        return new Account(account.getAccountId(), account.getBalance(), account.getVersion());
+    }
+
+    /**
+     * Operation applied by the worker to accounts of its partition
+     */
+    private interface Operation {
+        void apply(Map<UUID, Account> accounts);
+    }
+
+    /**
+     * Accounts and their sorted ids touched by the worker thread only, and its mailbox
+     */
+    private class Partition {
+        private final Map<UUID, Account> accounts = new HashMap<>();
+        private final NavigableSet<UUID> ids = new TreeSet<>();
+        private final BlockingQueue<Operation> mailbox = new LinkedBlockingQueue<>();
+        private final Thread worker;
+
+        Partition(int index) {
+            this.worker = new Thread(this::work, "bank-partition-" + index);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        private void work() {
+            // pending reaches zero only when no worker can post anything anymore
+            while (running || pending.get() > 0) {
+                Operation operation;
+                try {
+                    operation = mailbox.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (operation == null) continue;
+                try {
+                    operation.apply(accounts);
+                } catch (RuntimeException ex) {
+                    log.error("Operation failed on [{}]", worker.getName(), ex);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        }
+    }
+}
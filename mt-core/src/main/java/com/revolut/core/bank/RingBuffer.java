@@ -0,0 +1,85 @@
+package com.revolut.core.bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Pre-allocated ring of slots with many producers and the single consumer.
+ *
+ * Producer claims a sequence, fills the slot in place and publishes it. Consumer
+ * reads published slots strictly in sequence order and releases them in bulk, once
+ * it doesn't need their content anymore. Producers wait for the consumer, when
+ * all slots are taken.
+ */
+final class RingBuffer<T> {
+
+    private final Object[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long released = -1;
+
+    RingBuffer(int capacity, Supplier<T> factory) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity has to be power of two");
+        this.slots = new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Claims next sequence, waits while the ring is full
+     */
+    long claim() {
+        long sequence = claimed.incrementAndGet();
+        while (sequence - slots.length > released) {
+            LockSupport.parkNanos(1_000);
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(long sequence) {
+        return (T) slots[index(sequence)];
+    }
+
+    /**
+     * Makes claimed slot visible to the consumer
+     */
+    void publish(long sequence) {
+        published.lazySet(index(sequence), sequence);
+    }
+
+    /**
+     * Finds the last sequence consumer could read without gaps
+     *
+     * @param from  first sequence to check
+     * @param limit maximum number of sequences to check
+     * @return last published sequence or {@code from - 1} if nothing is available
+     */
+    long availableUpTo(long from, int limit) {
+        long last = from - 1;
+        while (last + 1 < from + limit && published.get(index(last + 1)) == last + 1) {
+            last++;
+        }
+        return last;
+    }
+
+    /**
+     * Gives slots up to given sequence back to producers
+     */
+    void release(long sequence) {
+        released = sequence;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+}
@@ -0,0 +1,385 @@
+package com.revolut.core.bank;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UnitOfWork;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bank, which applies all deposits and transfers by the single writer thread.
+ *
+ * Callers put operations into the {@link RingBuffer} and get futures back. Writer
+ * keeps every account it has touched in memory, applies operations one after another
+ * and persists all changed accounts of a batch within single {@link UnitOfWork}.
+ * Futures are completed only after the batch has been persisted, if persisting fails
+ * the whole batch fails and changed accounts are re-read from the storage. List of
+ * transfers is a single operation, so it's always persisted as a whole.
+ *
+ * There is no contention between operations, so optimistic lock may only fail,
+ * if someone else updates the same storage.
+ *
+ * Callers wait for their operations a bounded time. Once the bank is closed or the writer
+ * has died, new operations are rejected and the ones already submitted are completed.
+ */
+@Slf4j
+public class SequencedBank implements Bank, AutoCloseable {
+
+    private final Storage storage;
+    private final UnitOfWork unitOfWork;
+    private final RingBuffer<Command> ring;
+    private final int maxBatch;
+
+    private final long timeoutNanos;
+
+    private final Map<UUID, Account> accounts = new HashMap<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    // callers between the running check and publishing, the writer doesn't stop while there are any
+    private final AtomicInteger submitting = new AtomicInteger();
+    // what has killed the writer, operations left in the ring are failed with it
+    private volatile Throwable failure;
+
+    public SequencedBank(Storage storage, UnitOfWork unitOfWork, int capacity, int maxBatch) {
+        this(storage, unitOfWork, capacity, maxBatch, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param timeout how long callers wait for their operations, not completed ones fail
+     *                with {@link StorageException}, though they may still be applied
+     */
+    public SequencedBank(Storage storage, UnitOfWork unitOfWork, int capacity, int maxBatch,
+                         long timeout, TimeUnit unit) {
+        this.storage = storage;
+        this.unitOfWork = unitOfWork;
+        this.ring = new RingBuffer<>(capacity, Command::new);
+        this.maxBatch = maxBatch;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.writer = new Thread(this::write, "bank-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public Account createAccount() {
+        Account account = new Account();
+        storage.create(account);
+        return account;
+    }
+
+    @Override
+    public Account getAccount(UUID accountId) {
+        return storage.details(accountId);
+    }
+
+    @Override
+    public Map<UUID, Account> getAccounts(Collection<UUID> accountIds) {
+        return storage.details(accountIds);
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return storage.getAllAccounts();
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        return storage.getAccounts(after, limit);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        storage.forEachAccount(consumer);
+    }
+
+    @Override
+    public Account deposit(UUID accountId, Money money) {
+        return await(depositAsync(accountId, money));
+    }
+
+    @Override
+    public void transfer(UUID from, UUID to, Money amount) {
+        await(transferAsync(from, to, amount));
+    }
+
+    /**
+     * Submits all transfers as a single operation, which is persisted within one unit of work
+     */
+    @Override
+    public List<TransferResult> transfer(List<Transfer> transfers) {
+        CompletableFuture<List<TransferResult>> future = new CompletableFuture<>();
+        if (transfers.isEmpty()) return new ArrayList<>();
+        submit(Type.BATCH, null, null, null, new ArrayList<>(transfers), future);
+        return await(future);
+    }
+
+    /**
+     * Deposits money to an account
+     *
+     * @return future completed with the account state right after the deposit
+     */
+    public CompletableFuture<Account> depositAsync(UUID accountId, Money money) {
+        CompletableFuture<Account> future = new CompletableFuture<>();
+        submit(Type.DEPOSIT, null, accountId, money, null, future);
+        return future;
+    }
+
+    /**
+     * Transfers money between accounts
+     *
+     * @return future completed when the transfer has been persisted
+     */
+    public CompletableFuture<Void> transferAsync(UUID from, UUID to, Money amount) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (from.equals(to) || amount.getCents() == 0) {
+            future.complete(null);
+            return future;
+        }
+        submit(Type.TRANSFER, from, to, amount, null, future);
+        return future;
+    }
+
+    /**
+     * Stops the writer, after it has processed all submitted operations
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+    }
+
+    private void submit(Type type, UUID from, UUID to, Money amount, List<Transfer> transfers,
+                        CompletableFuture<?> future) {
+        submitting.incrementAndGet();
+        try {
+            if (!running) throw new IllegalStateException("Bank is closed", failure);
+            long sequence = ring.claim();
+            Command command = ring.get(sequence);
+            command.type = type;
+            command.from = from;
+            command.to = to;
+            command.amount = amount;
+            command.transfers = transfers;
+            command.future = future;
+            ring.publish(sequence);
+        } finally {
+            submitting.decrementAndGet();
+            // rejected ones too, the writer may be waiting for them to stop
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void write() {
+        long next = 0;
+        while (true) {
+            long last = ring.availableUpTo(next, maxBatch);
+            if (last < next) {
+                // submitted before close are either in the ring already or counted as submitting
+                if (!running && submitting.get() == 0 && ring.availableUpTo(next, 1) < next) return;
+                // submit and close unpark the writer
+                LockSupport.park(this);
+                continue;
+            }
+            List<Completion> completions = new ArrayList<>((int) (last - next + 1));
+            List<CompletableFuture<?>> futures = new ArrayList<>((int) (last - next + 1));
+            Map<UUID, Account> changed = new LinkedHashMap<>();
+            long seq = next;
+            try {
+                for (; seq <= last; seq++) {
+                    Command command = ring.get(seq);
+                    futures.add(command.future);
+                    if (failure == null) completions.add(apply(command, changed));
+                    command.clear();
+                }
+                if (failure == null) persist(changed, completions);
+            } catch (Throwable ex) {
+                log.error("Bank writer has failed, rejecting operations from now on", ex);
+                failure = ex;
+                running = false;
+                // the rest of the batch hasn't been looked at, it's failed along with the applied part
+                for (; seq <= last; seq++) {
+                    Command command = ring.get(seq);
+                    if (command.future != null) futures.add(command.future);
+                    command.clear();
+                }
+            } finally {
+                ring.release(last);
+                next = last + 1;
+            }
+            if (failure != null) {
+                futures.forEach(future -> future.completeExceptionally(
+                    new StorageException("Bank writer has failed", failure)));
+            }
+        }
+    }
+
+    private Completion apply(Command command, Map<UUID, Account> changed) {
+        try {
+            if (command.type == Type.DEPOSIT) {
+                Account account = load(command.to).deposit(command.amount);
+                changed.put(account.getAccountId(), account);
+                return new Completion(command.future, new Account(account.getAccountId(), account.getBalance()));
+            } else if (command.type == Type.BATCH) {
+                return new Completion(command.future, apply(command.transfers, changed));
+            } else {
+                Account from = load(command.from);
+                Account to = load(command.to);
+                from.withdraw(command.amount);
+                to.deposit(command.amount);
+                changed.put(from.getAccountId(), from);
+                changed.put(to.getAccountId(), to);
+                return new Completion(command.future, null);
+            }
+        } catch (RuntimeException ex) {
+            command.future.completeExceptionally(ex);
+            return null;
+        }
+    }
+
+    // all accounts are loaded before anything is changed, so the batch fails as a whole or not at all
+    private List<TransferResult> apply(List<Transfer> transfers, Map<UUID, Account> changed) {
+        Map<UUID, String> missing = new HashMap<>();
+        for (Transfer transfer : transfers) {
+            for (UUID accountId : new UUID[]{transfer.getFrom(), transfer.getTo()}) {
+                try {
+                    load(accountId);
+                } catch (AccountDoesNotExistException ex) {
+                    missing.put(accountId, ex.getMessage());
+                }
+            }
+        }
+
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            if (transfer.getFrom().equals(transfer.getTo()) || transfer.getAmount().getCents() == 0) {
+                results.add(TransferResult.completed());
+            } else if (missing.containsKey(transfer.getFrom())) {
+                results.add(TransferResult.failed(missing.get(transfer.getFrom())));
+            } else if (missing.containsKey(transfer.getTo())) {
+                results.add(TransferResult.failed(missing.get(transfer.getTo())));
+            } else {
+                try {
+                    Account from = accounts.get(transfer.getFrom()).withdraw(transfer.getAmount());
+                    Account to = accounts.get(transfer.getTo()).deposit(transfer.getAmount());
+                    changed.put(from.getAccountId(), from);
+                    changed.put(to.getAccountId(), to);
+                    results.add(TransferResult.completed());
+                } catch (AccountException ex) {
+                    results.add(TransferResult.failed(ex.getMessage()));
+                }
+            }
+        }
+        return results;
+    }
+
+    private Account load(UUID accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            account = storage.details(accountId);
+            accounts.put(accountId, account);
+        }
+        return account;
+    }
+
+    private void persist(Map<UUID, Account> changed, List<Completion> completions) {
+        try {
+            if (!changed.isEmpty()) {
+                unitOfWork.execute(() -> storage.update(changed.values()));
+            }
+        } catch (Exception ex) {
+            log.warn("Batch of [{}] operations failed", completions.size(), ex);
+            changed.keySet().forEach(accounts::remove);
+            for (Completion completion : completions) {
+                if (completion != null) completion.future.completeExceptionally(ex);
+            }
+            return;
+        }
+
+        for (Account account : changed.values()) {
+            account.setVersion(account.getVersion() + 1);
+        }
+        for (Completion completion : completions) {
+            if (completion == null) continue;
+            if (completion.result instanceof Account) {
+                Account result = (Account) completion.result;
+                result.setVersion(accounts.get(result.getAccountId()).getVersion());
+            }
+            completion.complete();
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new StorageException("Operation has failed", ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new StorageException("Operation is not completed in time, it may still be applied");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for operation", ex);
+        }
+    }
+
+    private enum Type {
+        DEPOSIT, TRANSFER, BATCH
+    }
+
+    /**
+     * Pre-allocated slot of the ring
+     */
+    private static class Command {
+        private Type type;
+        private UUID from;
+        private UUID to;
+        private Money amount;
+        private List<Transfer> transfers;
+        private CompletableFuture<?> future;
+
+        void clear() {
+            from = null;
+            to = null;
+            amount = null;
+            transfers = null;
+            future = null;
+        }
+    }
+
+    /**
+     * Future to complete once the batch it belongs to is persisted
+     */
+    private static class Completion {
+        private final CompletableFuture<?> future;
+        private final Object result;
+
+        Completion(CompletableFuture<?> future, Object result) {
+            this.future = future;
+            this.result = result;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete() {
+            ((CompletableFuture<Object>) future).complete(result);
+        }
+    }
+}
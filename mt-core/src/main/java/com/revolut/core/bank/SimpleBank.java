@@ -1,20 +1,59 @@
 package com.revolut.core.bank;
 
 import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
 import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.Ledger;
+import com.revolut.core.storage.LedgerEntry;
+import com.revolut.core.storage.RetryStorageException;
 import com.revolut.core.storage.Storage;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
- * Entity to provide business functionality
+ * Entity to provide business functionality. Completed transfers are recorded
+ * by the {@link Ledger} along with the balance changes. Optimistic lock conflicts
+ * are counted per account by the {@link ConflictTracker}.
  */
 public class SimpleBank implements Bank {
     private final Storage storage;
+    private final Mode mode;
+    private final Ledger ledger;
+    private final ConflictTracker conflicts;
 
     public SimpleBank(Storage storage) {
+        this(storage, Mode.OPTIMISTIC);
+    }
+
+    public SimpleBank(Storage storage, Mode mode) {
+        this(storage, mode, Ledger.none());
+    }
+
+    public SimpleBank(Storage storage, Mode mode, Ledger ledger) {
+        this(storage, mode, ledger, new ConflictTracker(5, 10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param conflicts tells accounts to lock in adaptive mode
+     */
+    public SimpleBank(Storage storage, Mode mode, Ledger ledger, ConflictTracker conflicts) {
         this.storage = storage;
+        this.mode = mode;
+        this.ledger = ledger;
+        this.conflicts = conflicts;
     }
 
     @Override
@@ -29,19 +68,58 @@ public class SimpleBank implements Bank {
         return storage.details(accountId);
     }
 
+    @Override
+    public Map<UUID, Account> getAccounts(Collection<UUID> accountIds) {
+        return storage.details(accountIds);
+    }
+
     @Override
     public Account deposit(UUID accountId, Money money) {
-        Account account = storage.details(accountId);
+        if (mode == Mode.DELTA || storage.isStriped(accountId)) return storage.deposit(accountId, money);
+
+        Account account = pessimistic(accountId)
+            ? locked(storage.lock(Collections.singleton(accountId)), accountId)
+            : storage.details(accountId);
         account.deposit(money);
-        storage.update(account);
+        update(account);
         return account;
     }
 
+    @Override
+    public boolean supportsStriping() {
+        return storage.supportsStriping();
+    }
+
+    @Override
+    public void stripe(UUID accountId, int slots) {
+        storage.stripe(accountId, slots);
+    }
+
+    @Override
+    public boolean hasHistory() {
+        return ledger.hasHistory();
+    }
+
+    @Override
+    public List<LedgerEntry> getTransactions(UUID accountId, Long before, int limit) {
+        return ledger.entries(accountId, before, limit);
+    }
+
     @Override
     public List<Account> getAllAccounts() {
         return storage.getAllAccounts();
     }
 
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        return storage.getAccounts(after, limit);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        storage.forEachAccount(consumer);
+    }
+
     /*
          There are options of how to organize concurrent updates: optimistic lock
          is implemented. Considered all three:
@@ -63,11 +141,124 @@ public class SimpleBank implements Bank {
         if (from.equals(to)) return;
         if (amount.getCents() == 0) return;
 
-        Account fromAcc = storage.details(from);
-        Account toAcc = storage.details(to);
-        Account withdrawn = fromAcc.withdraw(amount);
-        Account deposited = toAcc.deposit(amount);
-        storage.update(withdrawn);
-        storage.update(deposited);
+        if (mode == Mode.DELTA || storage.isStriped(from) || storage.isStriped(to)) {
+            storage.transfer(from, to, amount);
+        } else if (pessimistic(from) || pessimistic(to)) {
+            Map<UUID, Account> locked = storage.lock(Arrays.asList(from, to));
+            Account fromAcc = locked(locked, from);
+            Account toAcc = locked(locked, to);
+            storage.update(fromAcc.withdraw(amount));
+            storage.update(toAcc.deposit(amount));
+        } else {
+            Account fromAcc = storage.details(from);
+            Account toAcc = storage.details(to);
+            Account withdrawn = fromAcc.withdraw(amount);
+            Account deposited = toAcc.deposit(amount);
+            update(withdrawn);
+            update(deposited);
+        }
+        ledger.record(new Transfer(from, to, amount));
+    }
+
+    /**
+     * Reads every account once, applies all transfers in memory and writes
+     * changed accounts with a single batch update. In pessimistic mode, or in adaptive
+     * one if any account is hot, all accounts of the batch are locked upfront. Batch
+     * involving striped accounts is applied transfer by transfer.
+     */
+    @Override
+    public List<TransferResult> transfer(List<Transfer> transfers) {
+        if (mode == Mode.DELTA || transfers.stream().anyMatch(this::isStriped)) return Bank.super.transfer(transfers);
+
+        Set<UUID> accountIds = new HashSet<>();
+        for (Transfer transfer : transfers) {
+            accountIds.add(transfer.getFrom());
+            accountIds.add(transfer.getTo());
+        }
+        Map<UUID, Account> loaded = new HashMap<>();
+        boolean locked = accountIds.stream().anyMatch(this::pessimistic);
+        if (locked) loaded.putAll(storage.lock(accountIds));
+        Map<UUID, Account> changed = new LinkedHashMap<>();
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        List<Transfer> completed = new ArrayList<>(transfers.size());
+
+        for (Transfer transfer : transfers) {
+            UUID from = transfer.getFrom();
+            UUID to = transfer.getTo();
+            if (from.equals(to) || transfer.getAmount().getCents() == 0) {
+                results.add(TransferResult.completed());
+                continue;
+            }
+            try {
+                Account fromAcc = loaded.computeIfAbsent(from, storage::details);
+                Account toAcc = loaded.computeIfAbsent(to, storage::details);
+                fromAcc.withdraw(transfer.getAmount());
+                toAcc.deposit(transfer.getAmount());
+                changed.put(from, fromAcc);
+                changed.put(to, toAcc);
+                completed.add(transfer);
+                results.add(TransferResult.completed());
+            } catch (AccountException | AccountDoesNotExistException ex) {
+                results.add(TransferResult.failed(ex.getMessage()));
+            }
+        }
+
+        try {
+            storage.update(changed.values());
+        } catch (RetryStorageException ex) {
+            // conflicting account is not known, the whole batch is blamed
+            if (!locked) changed.keySet().forEach(conflicts::conflict);
+            throw ex;
+        }
+        ledger.record(completed);
+        return results;
+    }
+
+    private boolean pessimistic(UUID accountId) {
+        return mode == Mode.PESSIMISTIC || mode == Mode.ADAPTIVE && conflicts.isHot(accountId);
+    }
+
+    private void update(Account account) {
+        try {
+            storage.update(account);
+        } catch (RetryStorageException ex) {
+            conflicts.conflict(account.getAccountId());
+            throw ex;
+        }
+    }
+
+    private static Account locked(Map<UUID, Account> locked, UUID accountId) {
+        Account account = locked.get(accountId);
+        if (account == null)
+            throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+        return account;
+    }
+
+    private boolean isStriped(Transfer transfer) {
+        return storage.isStriped(transfer.getFrom()) || storage.isStriped(transfer.getTo());
+    }
+
+    /**
+     * How concurrent changes of the same account are dealt with
+     */
+    public enum Mode {
+        /**
+         * Accounts are read and written back with version check, conflicting operation is retried
+         */
+        OPTIMISTIC,
+        /**
+         * Balances are changed in place by the storage, conflicting operations wait for each other
+         */
+        DELTA,
+        /**
+         * Accounts are locked in account id order before they are read, conflicting operations
+         * wait for each other, versioned update cannot fail then
+         */
+        PESSIMISTIC,
+        /**
+         * Accounts are read and written back with version check, hot accounts are locked
+         * the pessimistic way till they cool down
+         */
+        ADAPTIVE
     }
 }
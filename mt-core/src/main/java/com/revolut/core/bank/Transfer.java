@@ -0,0 +1,16 @@
+package com.revolut.core.bank;
+
+import com.revolut.core.money.Money;
+import lombok.Data;
+
+import java.util.UUID;
+
+/**
+ * Single transfer of money between two accounts
+ */
+@Data
+public class Transfer {
+    private final UUID from;
+    private final UUID to;
+    private final Money amount;
+}
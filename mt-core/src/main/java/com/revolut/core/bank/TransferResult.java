@@ -0,0 +1,22 @@
+package com.revolut.core.bank;
+
+import lombok.Data;
+
+/**
+ * Outcome of a single transfer within a batch
+ */
+@Data
+public class TransferResult {
+    private static final TransferResult COMPLETED = new TransferResult(true, null);
+
+    private final boolean completed;
+    private final String error;
+
+    public static TransferResult completed() {
+        return COMPLETED;
+    }
+
+    public static TransferResult failed(String error) {
+        return new TransferResult(false, error);
+    }
+}
@@ -0,0 +1,128 @@
+package com.revolut.core.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named metrics of the application, written out in Prometheus text format.
+ *
+ * Metric is identified by its name and labels, given as name and value pairs.
+ * Registering the same metric again returns the one already registered, so classes
+ * could keep their metrics in static fields of {@link #DEFAULT} registry. Metrics with
+ * values maintained somewhere else are replaced on registration instead. Histograms
+ * of durations in nanoseconds are written as summaries in seconds.
+ */
+public class MetricsRegistry {
+
+    public static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return family(name, help, "counter").get(labels, Counter.class, Counter::new);
+    }
+
+    /**
+     * Counter, which value is maintained somewhere else
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter").set(labels, value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").set(labels, value);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return family(name, help, "summary").get(labels, Histogram.class, Histogram::new);
+    }
+
+    public void write(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP " + name + " " + family.help + "\n");
+            out.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                write(out, name, metric.getKey(), metric.getValue());
+            }
+        }
+    }
+
+    private static void write(Writer out, String name, String labels, Object metric) throws IOException {
+        if (metric instanceof Counter) {
+            sample(out, name, labels, ((Counter) metric).get());
+        } else if (metric instanceof LongSupplier) {
+            sample(out, name, labels, ((LongSupplier) metric).getAsLong());
+        } else if (metric instanceof DoubleSupplier) {
+            sample(out, name, labels, ((DoubleSupplier) metric).getAsDouble());
+        } else {
+            Histogram histogram = (Histogram) metric;
+            for (double quantile : QUANTILES) {
+                String quantileLabels = (labels.isEmpty() ? "" : labels + ",") + "quantile=\"" + quantile + "\"";
+                sample(out, name, quantileLabels, seconds(histogram.getValueAtQuantile(quantile)));
+            }
+            sample(out, name + "_sum", labels, seconds(histogram.getSum()));
+            sample(out, name + "_count", labels, histogram.getCount());
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, Object value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) out.write("{" + labels + "}");
+        out.write(" " + value + "\n");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException("Metric [" + name + "] is already registered as " + family.type);
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name and value pairs");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) text.append(',');
+            text.append(labels[i]).append("=\"")
+                .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        }
+        return text.toString();
+    }
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        <T> T get(String[] labels, Class<T> kind, Supplier<T> factory) {
+            Object metric = metrics.computeIfAbsent(labels(labels), l -> factory.get());
+            if (!kind.isInstance(metric))
+                throw new IllegalArgumentException("Metric is already registered as " + metric.getClass().getSimpleName());
+            return kind.cast(metric);
+        }
+
+        void set(String[] labels, Object metric) {
+            metrics.put(labels(labels), metric);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.revolut.core.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * {@link Storage}, which serves {@link #details(UUID)} from a bounded cache in front of
+ * another storage. Eviction is configured with Guava cache spec, for instance
+ * {@code maximumSize=100000,expireAfterWrite=30s}.
+ *
+ * Accounts changed within a unit of work are read from the underlying storage until
+ * it's finished, then committed states are put into the cache and rolled back ones are
+ * evicted, so units of work have to go through {@link #wrap(UnitOfWork)}. Changes made
+ * outside of a unit of work are considered committed right away. Cached entry is never
+ * replaced by an older version, so a slow reader cannot bring stale state back after
+ * a newer one has been committed. Optimistic lock failure evicts the entry. Striped
+ * accounts change without new version, so they are never cached.
+ */
+public class CachingStorage implements Storage {
+
+    private final Storage storage;
+    private final Cache<UUID, Account> cache;
+
+    // accounts changed by the current unit of work, null state if it's not known
+    private final ThreadLocal<Map<UUID, Account>> changes = new ThreadLocal<>();
+
+    public CachingStorage(Storage storage, String spec) {
+        this.storage = storage;
+        this.cache = CacheBuilder.from(spec).build();
+    }
+
+    @Override
+    public Account details(UUID accountId) {
+        Map<UUID, Account> changed = changes.get();
+        if (changed != null && changed.containsKey(accountId)) return storage.details(accountId);
+        if (storage.isStriped(accountId)) return storage.details(accountId);
+
+        Account cached = cache.getIfPresent(accountId);
+        if (cached != null) return copy(cached);
+
+        Account account = storage.details(accountId);
+        put(account);
+        return account;
+    }
+
+    /**
+     * Cached accounts are served from the cache, the rest are read from the underlying
+     * storage at once
+     */
+    @Override
+    public Map<UUID, Account> details(Collection<UUID> accountIds) {
+        Map<UUID, Account> cached = new HashMap<>();
+        List<UUID> missed = new ArrayList<>();
+        for (UUID accountId : accountIds) {
+            Account account = cacheable(accountId) ? cache.getIfPresent(accountId) : null;
+            if (account != null) cached.put(accountId, copy(account));
+            else missed.add(accountId);
+        }
+        Map<UUID, Account> loaded = missed.isEmpty() ? Collections.emptyMap() : storage.details(missed);
+        loaded.values().stream().filter(account -> cacheable(account.getAccountId())).forEach(this::put);
+
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            Account account = cached.containsKey(accountId) ? cached.get(accountId) : loaded.get(accountId);
+            if (account != null) accounts.put(accountId, account);
+        }
+        return accounts;
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return storage.getAllAccounts();
+    }
+
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        return storage.getAccounts(after, limit);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        storage.forEachAccount(consumer);
+    }
+
+    /**
+     * Locked accounts are read from the underlying storage, they are about to change
+     */
+    @Override
+    public Map<UUID, Account> lock(Collection<UUID> accountIds) {
+        accountIds.forEach(this::changing);
+        return storage.lock(accountIds);
+    }
+
+    @Override
+    public void update(Account account) {
+        Account updated = new Account(account.getAccountId(), account.getBalance(), account.getVersion() + 1);
+        changing(account.getAccountId());
+        try {
+            storage.update(account);
+        } catch (RuntimeException ex) {
+            cache.invalidate(account.getAccountId());
+            throw ex;
+        }
+        changed(updated);
+    }
+
+    @Override
+    public void update(Collection<Account> accounts) {
+        accounts.forEach(account -> changing(account.getAccountId()));
+        try {
+            storage.update(accounts);
+        } catch (RuntimeException ex) {
+            accounts.forEach(account -> cache.invalidate(account.getAccountId()));
+            throw ex;
+        }
+        for (Account account : accounts) {
+            changed(new Account(account.getAccountId(), account.getBalance(), account.getVersion() + 1));
+        }
+    }
+
+    @Override
+    public Account deposit(UUID accountId, Money amount) {
+        changing(accountId);
+        Account account;
+        try {
+            account = storage.deposit(accountId, amount);
+        } catch (RuntimeException ex) {
+            cache.invalidate(accountId);
+            throw ex;
+        }
+        if (!storage.isStriped(accountId)) changed(account);
+        return account;
+    }
+
+    /**
+     * Resulting states are not known, so both accounts are evicted
+     */
+    @Override
+    public void transfer(UUID from, UUID to, Money amount) {
+        changing(from);
+        changing(to);
+        try {
+            storage.transfer(from, to, amount);
+        } finally {
+            if (changes.get() == null) {
+                cache.invalidate(from);
+                cache.invalidate(to);
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsStriping() {
+        return storage.supportsStriping();
+    }
+
+    @Override
+    public void stripe(UUID accountId, int slots) {
+        storage.stripe(accountId, slots);
+        cache.invalidate(accountId);
+    }
+
+    @Override
+    public boolean isStriped(UUID accountId) {
+        return storage.isStriped(accountId);
+    }
+
+    @Override
+    public void create(Account account) {
+        Account created = copy(account);
+        changing(account.getAccountId());
+        storage.create(account);
+        changed(created);
+    }
+
+    /**
+     * Makes given unit of work keep the cache coherent with the storage
+     */
+    public UnitOfWork wrap(UnitOfWork unitOfWork) {
+        return work -> {
+            if (changes.get() != null) {
+                unitOfWork.execute(work);
+                return;
+            }
+
+            Map<UUID, Account> changed = new HashMap<>();
+            changes.set(changed);
+            boolean committed = false;
+            try {
+                unitOfWork.execute(work);
+                committed = true;
+            } finally {
+                changes.remove();
+                for (Map.Entry<UUID, Account> entry : changed.entrySet()) {
+                    if (committed && entry.getValue() != null) put(entry.getValue());
+                    else cache.invalidate(entry.getKey());
+                }
+            }
+        };
+    }
+
+    /**
+     * Hit and eviction counts, recorded only if {@code recordStats} is in the spec
+     */
+    public CacheStats getStatistics() {
+        return cache.stats();
+    }
+
+    // the same accounts details(UUID) reads past the cache
+    private boolean cacheable(UUID accountId) {
+        Map<UUID, Account> changed = changes.get();
+        return (changed == null || !changed.containsKey(accountId)) && !storage.isStriped(accountId);
+    }
+
+    private void changing(UUID accountId) {
+        Map<UUID, Account> changed = changes.get();
+        if (changed != null) {
+            changed.put(accountId, null);
+        }
+    }
+
+    private void changed(Account account) {
+        Map<UUID, Account> changed = changes.get();
+        if (changed != null) {
+            changed.put(account.getAccountId(), account);
+        } else {
+            put(account);
+        }
+    }
+
+    // compute and merge of Guava cache may hang under contention, so plain compare and set
+    private void put(Account account) {
+        ConcurrentMap<UUID, Account> entries = cache.asMap();
+        Account fresh = copy(account);
+        while (true) {
+            Account old = entries.putIfAbsent(fresh.getAccountId(), fresh);
+            if (old == null || old.getVersion() >= fresh.getVersion()) return;
+            if (entries.replace(fresh.getAccountId(), old, fresh)) return;
+        }
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getAccountId(), account.getBalance(), account.getVersion());
+    }
+}
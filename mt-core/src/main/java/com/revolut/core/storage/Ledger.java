@@ -0,0 +1,68 @@
+package com.revolut.core.storage;
+
+import com.revolut.core.bank.Transfer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Append-only record of completed transfers. Transfers are supposed to be recorded
+ * within the same unit of work, which changes balances.
+ */
+public interface Ledger {
+
+    /**
+     * Records nothing, has no history to read
+     */
+    static Ledger none() {
+        return new Ledger() {
+            @Override
+            public void record(Transfer transfer) {
+            }
+
+            @Override
+            public boolean hasHistory() {
+                return false;
+            }
+
+            @Override
+            public List<LedgerEntry> entries(UUID accountId, Long before, int limit) {
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    /**
+     * Record a completed transfer
+     *
+     * @param transfer transfer to record
+     */
+    void record(Transfer transfer);
+
+    /**
+     * Record several completed transfers at once
+     *
+     * @param transfers transfers to record in order
+     */
+    default void record(List<Transfer> transfers) {
+        transfers.forEach(this::record);
+    }
+
+    /**
+     * @return whether recorded transfers can be read back by {@link #entries(UUID, Long, int)}
+     */
+    default boolean hasHistory() {
+        return true;
+    }
+
+    /**
+     * Retrieve single page of transfers from or to given account, the latest first
+     *
+     * @param accountId account to retrieve transfers of
+     * @param before    entry id to start before, {@code null} to start from the latest one
+     * @param limit     maximum number of entries to retrieve
+     * @return entries with ids less than given one
+     */
+    List<LedgerEntry> entries(UUID accountId, Long before, int limit);
+}
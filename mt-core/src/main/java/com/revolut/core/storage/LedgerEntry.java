@@ -0,0 +1,19 @@
+package com.revolut.core.storage;
+
+import com.revolut.core.money.Money;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Completed transfer as recorded by the {@link Ledger}
+ */
+@Data
+public class LedgerEntry {
+    private final long id;
+    private final UUID from;
+    private final UUID to;
+    private final Money amount;
+    private final Instant timestamp;
+}
@@ -1,9 +1,18 @@
 package com.revolut.core.storage;
 
 import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * Represents any kind of persistence storage to keep accounts data
@@ -18,6 +27,25 @@ public interface Storage {
     public Account details(UUID accountId)
         throws StorageException;
 
+    /**
+     * Retrieves details of many accounts at once
+     *
+     * @param accountIds account ids to retrieve details
+     * @return found accounts by id, missing accounts are skipped
+     */
+    default Map<UUID, Account> details(Collection<UUID> accountIds) {
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            if (accounts.containsKey(accountId)) continue;
+            try {
+                accounts.put(accountId, details(accountId));
+            } catch (AccountDoesNotExistException ex) {
+                // left out, callers tell missing accounts by absence
+            }
+        }
+        return accounts;
+    }
+
     /**
      * Retrieves all accounts data
      *
@@ -25,6 +53,47 @@ public interface Storage {
      */
     List<Account> getAllAccounts();
 
+    /**
+     * Retrieves single page of accounts ordered by account id
+     *
+     * @param after account id to start after, {@code null} to start from the beginning
+     * @param limit maximum number of accounts to retrieve
+     * @return accounts with ids greater than given one
+     */
+    default List<Account> getAccounts(UUID after, int limit) {
+        return page(getAllAccounts(), after, limit);
+    }
+
+    /**
+     * Passes every account to given consumer without keeping all of them at once
+     *
+     * @param consumer receiver of accounts
+     */
+    default void forEachAccount(Consumer<Account> consumer) {
+        getAllAccounts().forEach(consumer);
+    }
+
+    /**
+     * Reads accounts and locks them till the end of the current transaction, one by one
+     * in account id order, so concurrent callers wait for each other instead of failing
+     * on version and cannot deadlock. Storages without row locks just read the accounts,
+     * their updates are checked by version anyway.
+     *
+     * @param accountIds accounts to lock
+     * @return locked accounts by id, missing accounts are skipped
+     */
+    default Map<UUID, Account> lock(Collection<UUID> accountIds) {
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        for (UUID accountId : new TreeSet<>(accountIds)) {
+            try {
+                accounts.put(accountId, details(accountId));
+            } catch (AccountDoesNotExistException ex) {
+                // left out, callers tell missing accounts by absence
+            }
+        }
+        return accounts;
+    }
+
     /**
      * Withdraws money from an account
      *
@@ -33,10 +102,86 @@ public interface Storage {
     public void update(Account account)
         throws StorageException;
 
+    /**
+     * Updates many accounts at once, either all of them or none
+     *
+     * @param accounts accounts to update
+     */
+    default void update(Collection<Account> accounts)
+        throws StorageException {
+        accounts.forEach(this::update);
+    }
+
+    /**
+     * Adds money to an account whatever version it has
+     *
+     * @return account state right after the deposit
+     */
+    default Account deposit(UUID accountId, Money amount) {
+        Account account = details(accountId).deposit(amount);
+        update(account);
+        account.setVersion(account.getVersion() + 1);
+        return account;
+    }
+
+    /**
+     * Moves money between accounts whatever versions they have. Either both accounts
+     * are changed or none of them.
+     *
+     * @throws com.revolut.core.account.AccountException if there is not enough money
+     */
+    default void transfer(UUID from, UUID to, Money amount) {
+        Account fromAcc = details(from);
+        Account toAcc = details(to);
+        fromAcc.withdraw(amount);
+        toAcc.deposit(amount);
+        update(fromAcc);
+        update(toAcc);
+    }
+
+    /**
+     * @return whether accounts can be striped by {@link #stripe(UUID, int)}
+     */
+    default boolean supportsStriping() {
+        return false;
+    }
+
+    /**
+     * Spreads balance of a heavily used account over several slots. Deposits and transfers
+     * change a single slot then, so they don't wait for each other on the account, reads
+     * sum the slots up. Version of striped account stays the same, so it cannot be updated
+     * by version, only by {@link #deposit(UUID, Money)} and {@link #transfer(UUID, UUID, Money)}.
+     *
+     * @param accountId account to stripe
+     * @param slots     number of slots
+     * @throws UnsupportedOperationException if the storage doesn't {@link #supportsStriping()}
+     */
+    default void stripe(UUID accountId, int slots) {
+        throw new UnsupportedOperationException("Storage doesn't support striped accounts");
+    }
+
+    /**
+     * @return whether balance of the account is spread over slots
+     */
+    default boolean isStriped(UUID accountId) {
+        return false;
+    }
+
     /**
      * Persists single Account
      *
      * @param account account to persist
      */
     public void create(Account account);
+
+    /**
+     * Single page of given accounts ordered by account id, for those who keep no index of accounts
+     */
+    static List<Account> page(Collection<Account> accounts, UUID after, int limit) {
+        return accounts.stream()
+            .filter(account -> after == null || account.getAccountId().compareTo(after) > 0)
+            .sorted(Comparator.comparing(Account::getAccountId))
+            .limit(limit)
+            .collect(toList());
+    }
 }
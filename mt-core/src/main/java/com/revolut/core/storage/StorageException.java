@@ -9,7 +9,7 @@ public class StorageException extends RuntimeException {
         super(message);
     }
 
-    StorageException(String message, Throwable cause) {
+    public StorageException(String message, Throwable cause) {
         super(message, cause);
     }
 }
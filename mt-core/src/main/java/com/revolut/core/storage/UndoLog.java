@@ -0,0 +1,82 @@
+package com.revolut.core.storage;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * {@link UnitOfWork} for storages without transactions of their own.
+ *
+ * Storage records compensating action for every change made within the unit of work,
+ * if the work fails, compensations are run in reverse order. Changes are not visible to
+ * others until the unit of work is over, as long as the storage keeps them locked and
+ * gives the locks back through {@link #release(Runnable)}, so compensations may restore
+ * old values. Storage, which makes changes durable, does it once the work is done through
+ * {@link #commit(Runnable)}, so a unit of work is written at once. Nested units of work
+ * join the outer one.
+ */
+public class UndoLog implements UnitOfWork {
+
+    private final ThreadLocal<Unit> units = new ThreadLocal<>();
+
+    @Override
+    public void execute(Runnable work) throws Exception {
+        if (units.get() != null) {
+            work.run();
+            return;
+        }
+
+        Unit unit = new Unit();
+        units.set(unit);
+        try {
+            work.run();
+            while (!unit.commits.isEmpty()) {
+                unit.commits.poll().run();
+            }
+        } catch (RuntimeException | Error ex) {
+            units.remove();
+            while (!unit.compensations.isEmpty()) {
+                unit.compensations.pop().run();
+            }
+            throw ex;
+        } finally {
+            units.remove();
+            while (!unit.releases.isEmpty()) {
+                unit.releases.pop().run();
+            }
+        }
+    }
+
+    /**
+     * Records action to undo a change, ignored outside of a unit of work
+     */
+    public void record(Runnable compensation) {
+        Unit unit = units.get();
+        if (unit != null) unit.compensations.push(compensation);
+    }
+
+    /**
+     * Defers action till the work is done, its failure undoes the unit of work, runs it right
+     * away outside of a unit of work
+     */
+    public void commit(Runnable commit) {
+        Unit unit = units.get();
+        if (unit != null) unit.commits.add(commit);
+        else commit.run();
+    }
+
+    /**
+     * Defers action till the unit of work is over, committed or undone, runs it right away
+     * outside of a unit of work
+     */
+    public void release(Runnable release) {
+        Unit unit = units.get();
+        if (unit != null) unit.releases.push(release);
+        else release.run();
+    }
+
+    private static class Unit {
+        private final Deque<Runnable> compensations = new ArrayDeque<>();
+        private final Deque<Runnable> commits = new ArrayDeque<>();
+        private final Deque<Runnable> releases = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,15 @@
+package com.revolut.core.storage;
+
+/**
+ * Scope, in which several storage operations are applied all together or none of them
+ */
+public interface UnitOfWork {
+
+    /**
+     * Executes given work as a single unit
+     *
+     * @param work storage operations to execute
+     * @throws Exception whatever the work has thrown, after everything it did was undone
+     */
+    void execute(Runnable work) throws Exception;
+}
@@ -0,0 +1,238 @@
+package com.revolut.core;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.CachingStorage;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.UnitOfWork;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachingStorageTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+
+    private final MapStorage storage = new MapStorage();
+    private final CachingStorage caching = new CachingStorage(storage, "maximumSize=100");
+    private final UnitOfWork unitOfWork = caching.wrap(Runnable::run);
+
+    @Test
+    public void details_cached() {
+        storage.create(new Account(ONE, new Money(100), 1));
+
+        caching.details(ONE);
+        Account account = caching.details(ONE);
+
+        assertThat(account).isEqualTo(new Account(ONE, new Money(100), 1));
+        assertThat(storage.reads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void details_stripedAccountNotCached() {
+        storage.create(new Account(ONE, new Money(100), 1));
+        caching.details(ONE);
+
+        caching.stripe(ONE, 4);
+        caching.details(ONE);
+        caching.details(ONE);
+
+        assertThat(caching.isStriped(ONE)).isTrue();
+        assertThat(storage.reads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void details_copyIsReturned() {
+        storage.create(new Account(ONE, new Money(100), 1));
+
+        caching.details(ONE).deposit(new Money(50));
+
+        assertThat(caching.details(ONE).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void details_noAccount() {
+        assertThatThrownBy(() -> caching.details(ONE))
+            .isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void detailsMany_readsOnlyNotCached() {
+        storage.create(new Account(ONE, new Money(100), 1));
+        storage.create(new Account(TWO, new Money(200), 1));
+        caching.details(ONE);
+        UUID missing = UUID.randomUUID();
+
+        Map<UUID, Account> accounts = caching.details(Arrays.asList(TWO, missing, ONE));
+
+        assertThat(accounts).containsOnlyKeys(TWO, ONE);
+        assertThat(accounts.keySet()).containsExactly(TWO, ONE);
+        assertThat(accounts.get(ONE)).isEqualTo(new Account(ONE, new Money(100), 1));
+        assertThat(storage.reads.get()).isEqualTo(3);
+
+        caching.details(TWO);
+        assertThat(storage.reads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void update_cachesNewVersion() {
+        caching.create(new Account(ONE, new Money(100), 1));
+
+        caching.update(new Account(ONE, new Money(150), 1));
+
+        assertThat(caching.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 2));
+        assertThat(storage.reads.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void update_optimisticLockFailureEvicts() {
+        storage.create(new Account(ONE, new Money(100), 1));
+        caching.details(ONE);
+        storage.update(new Account(ONE, new Money(200), 1));
+
+        assertThatThrownBy(() -> caching.update(new Account(ONE, new Money(150), 1)))
+            .isInstanceOf(RetryStorageException.class);
+
+        assertThat(caching.details(ONE)).isEqualTo(new Account(ONE, new Money(200), 2));
+    }
+
+    @Test
+    public void unitOfWork_changesReadFromStorageUntilCommitted() throws Exception {
+        caching.create(new Account(ONE, new Money(100), 1));
+
+        unitOfWork.execute(() -> {
+            caching.update(new Account(ONE, new Money(150), 1));
+            caching.details(ONE);
+            assertThat(storage.reads.get()).isEqualTo(1);
+        });
+
+        assertThat(caching.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 2));
+        assertThat(storage.reads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void unitOfWork_failureEvicts() {
+        caching.create(new Account(ONE, new Money(100), 1));
+        caching.create(new Account(TWO, new Money(100), 1));
+
+        assertThatThrownBy(() -> unitOfWork.execute(() -> {
+            caching.update(Arrays.asList(
+                new Account(ONE, new Money(50), 1),
+                new Account(TWO, new Money(150), 1)));
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        caching.details(ONE);
+        caching.details(TWO);
+        assertThat(storage.reads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void olderVersionDoesNotReplaceNewer() {
+        storage.create(new Account(ONE, new Money(100), 1));
+        // update is committed while the read is on its way back
+        storage.afterRead = () -> {
+            storage.afterRead = null;
+            caching.update(new Account(ONE, new Money(150), 1));
+        };
+
+        assertThat(caching.details(ONE).getVersion()).isEqualTo(1);
+
+        assertThat(caching.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 2));
+        assertThat(storage.reads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void transfer_evictsBoth() {
+        storage.create(new Account(ONE, new Money(100), 1));
+        storage.create(new Account(TWO, new Money(100), 1));
+        caching.details(ONE);
+        caching.details(TWO);
+
+        caching.transfer(ONE, TWO, new Money(30));
+
+        assertThat(caching.details(ONE).getBalance()).isEqualTo(new Money(70));
+        assertThat(caching.details(TWO).getBalance()).isEqualTo(new Money(130));
+    }
+
+    @Test
+    public void deposit_cachesResult() throws Exception {
+        caching.create(new Account(ONE, new Money(100), 1));
+
+        unitOfWork.execute(() -> caching.deposit(ONE, new Money(50)));
+
+        assertThat(caching.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 2));
+        assertThat(storage.reads.get()).isEqualTo(1);
+    }
+
+    /**
+     * Counts reads, which reach the storage
+     */
+    private static class MapStorage implements Storage {
+        private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+        private final Set<UUID> striped = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger reads = new AtomicInteger();
+        private volatile Runnable afterRead;
+
+        @Override
+        public Account details(UUID accountId) {
+            reads.incrementAndGet();
+            Account account = accounts.get(accountId);
+            if (account == null) throw new AccountDoesNotExistException("No account [" + accountId + "]");
+            Account copy = copy(account);
+            Runnable hook = afterRead;
+            if (hook != null) hook.run();
+            return copy;
+        }
+
+        @Override
+        public List<Account> getAllAccounts() {
+            return new ArrayList<>(accounts.values());
+        }
+
+        @Override
+        public void update(Account account) {
+            Account current = accounts.get(account.getAccountId());
+            if (current == null || current.getVersion() != account.getVersion()) throw new RetryStorageException();
+            accounts.put(account.getAccountId(),
+                new Account(account.getAccountId(), account.getBalance(), account.getVersion() + 1));
+        }
+
+        @Override
+        public void create(Account account) {
+            accounts.put(account.getAccountId(), copy(account));
+        }
+
+        @Override
+        public boolean supportsStriping() {
+            return true;
+        }
+
+        @Override
+        public void stripe(UUID accountId, int slots) {
+            striped.add(accountId);
+        }
+
+        @Override
+        public boolean isStriped(UUID accountId) {
+            return striped.contains(accountId);
+        }
+
+        private static Account copy(Account account) {
+            return new Account(account.getAccountId(), account.getBalance(), account.getVersion());
+        }
+    }
+}
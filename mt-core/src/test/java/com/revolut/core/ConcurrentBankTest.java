@@ -0,0 +1,138 @@
+package com.revolut.core;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.bank.ConcurrentBank;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConcurrentBankTest {
+
+    @Test
+    public void deposit() {
+        ConcurrentBank bank = new ConcurrentBank();
+        Account account = bank.createAccount();
+
+        bank.deposit(account.getAccountId(), new Money(100));
+
+        assertThat(bank.getAccount(account.getAccountId()).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void transfer() {
+        ConcurrentBank bank = new ConcurrentBank();
+        UUID one = bank.createAccount().getAccountId();
+        UUID two = bank.createAccount().getAccountId();
+        bank.deposit(one, new Money(100));
+
+        bank.transfer(one, two, new Money(30));
+
+        assertThat(bank.getAccount(one).getBalance()).isEqualTo(new Money(70));
+        assertThat(bank.getAccount(two).getBalance()).isEqualTo(new Money(30));
+    }
+
+    @Test
+    public void transfer_notEnoughMoney() {
+        ConcurrentBank bank = new ConcurrentBank();
+        UUID one = bank.createAccount().getAccountId();
+        UUID two = bank.createAccount().getAccountId();
+
+        assertThatThrownBy(() -> bank.transfer(one, two, new Money(30)))
+            .isInstanceOf(AccountException.class);
+        assertThat(bank.getAccount(two).getBalance()).isEqualTo(new Money(0));
+    }
+
+    @Test
+    public void transfer_accountDoesNotExist() {
+        ConcurrentBank bank = new ConcurrentBank();
+        UUID one = bank.createAccount().getAccountId();
+        bank.deposit(one, new Money(100));
+
+        assertThatThrownBy(() -> bank.transfer(one, UUID.randomUUID(), new Money(30)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+        assertThat(bank.getAccount(one).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void accountSnapshotIsDetached() {
+        ConcurrentBank bank = new ConcurrentBank();
+        Account account = bank.createAccount();
+
+        bank.getAccount(account.getAccountId()).deposit(new Money(100));
+
+        assertThat(bank.getAccount(account.getAccountId()).getBalance()).isEqualTo(new Money(0));
+    }
+
+    @Test
+    public void getAccounts_pagesInIdOrder() {
+        ConcurrentBank bank = new ConcurrentBank();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) ids.add(bank.createAccount().getAccountId());
+        Collections.sort(ids);
+
+        List<Account> first = bank.getAccounts(null, 2);
+        List<Account> second = bank.getAccounts(first.get(1).getAccountId(), 2);
+        List<Account> last = bank.getAccounts(second.get(1).getAccountId(), 2);
+
+        assertThat(first).extracting(Account::getAccountId).containsExactly(ids.get(0), ids.get(1));
+        assertThat(second).extracting(Account::getAccountId).containsExactly(ids.get(2), ids.get(3));
+        assertThat(last).extracting(Account::getAccountId).containsExactly(ids.get(4));
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentTransfersKeepTotal() throws InterruptedException {
+        // few stripes, so most transfers share locks with each other
+        ConcurrentBank bank = new ConcurrentBank(8);
+        int accounts = 32;
+        UUID[] ids = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = bank.createAccount().getAccountId();
+            bank.deposit(ids[i], new Money(1000));
+        }
+
+        int threads = 64;
+        CountDownLatch start = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                start.countDown();
+                await(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2000; i++) {
+                    try {
+                        bank.transfer(ids[random.nextInt(accounts)], ids[random.nextInt(accounts)],
+                            new Money(random.nextInt(1, 200)));
+                    } catch (AccountException ignored) {
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(25, TimeUnit.SECONDS)).isTrue();
+
+        int total = bank.getAllAccounts().stream().mapToInt(a -> a.getBalance().getCents()).sum();
+        assertThat(total).isEqualTo(accounts * 1000);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
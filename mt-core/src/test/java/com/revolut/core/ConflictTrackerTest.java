@@ -0,0 +1,66 @@
+package com.revolut.core;
+
+import com.revolut.core.bank.ConflictTracker;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConflictTrackerTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+
+    private long now;
+    private final ConflictTracker tracker = new ConflictTracker(4, 1, TimeUnit.SECONDS, () -> now);
+
+    @Test
+    public void hotAtThreshold() {
+        conflicts(ONE, 3);
+        assertThat(tracker.isHot(ONE)).isFalse();
+
+        conflicts(ONE, 1);
+        assertThat(tracker.isHot(ONE)).isTrue();
+        assertThat(tracker.isHot(TWO)).isFalse();
+        assertThat(tracker.getHotAccounts()).isEqualTo(1);
+    }
+
+    @Test
+    public void oldConflictsDecay() {
+        conflicts(ONE, 3);
+        now += TimeUnit.SECONDS.toNanos(1);
+        conflicts(ONE, 1);
+
+        assertThat(tracker.isHot(ONE)).isFalse();
+    }
+
+    @Test
+    public void staysHotTillHalfOfThreshold() {
+        conflicts(ONE, 4);
+
+        now += TimeUnit.MILLISECONDS.toNanos(900);
+        assertThat(tracker.isHot(ONE)).isTrue();
+
+        now += TimeUnit.MILLISECONDS.toNanos(200);
+        assertThat(tracker.isHot(ONE)).isFalse();
+        assertThat(tracker.getHotAccounts()).isZero();
+    }
+
+    @Test
+    public void cooledDownAccountStartsOver() {
+        conflicts(ONE, 4);
+        now += TimeUnit.SECONDS.toNanos(10);
+        assertThat(tracker.isHot(ONE)).isFalse();
+
+        conflicts(ONE, 3);
+        assertThat(tracker.isHot(ONE)).isFalse();
+    }
+
+    private void conflicts(UUID accountId, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.conflict(accountId);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.revolut.core;
+
+import com.revolut.core.metrics.Histogram;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HistogramTest {
+
+    @Test
+    public void empty() {
+        Histogram histogram = new Histogram();
+
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getValueAtQuantile(0.99)).isEqualTo(0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10; i++) histogram.record(i);
+
+        assertThat(histogram.getValueAtQuantile(0.5)).isEqualTo(5);
+        assertThat(histogram.getValueAtQuantile(1)).isEqualTo(10);
+        assertThat(histogram.getSum()).isEqualTo(55);
+        assertThat(histogram.getMax()).isEqualTo(10);
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1_000_000; i++) histogram.record(i * 1000L);
+
+        assertThat((double) histogram.getValueAtQuantile(0.5)).isCloseTo(500_000_000, within(500_000_000 * 0.04));
+        assertThat((double) histogram.getValueAtQuantile(0.99)).isCloseTo(990_000_000, within(990_000_000 * 0.04));
+        assertThat(histogram.getValueAtQuantile(1)).isEqualTo(1_000_000_000L);
+    }
+
+    @Test
+    public void outliersAreCounted() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat(histogram.getValueAtQuantile(0.5)).isEqualTo(0);
+        assertThat(histogram.getValueAtQuantile(1)).isGreaterThan(1L << 39);
+    }
+
+    @Test
+    public void concurrentRecording() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) histogram.record(ThreadLocalRandom.current().nextLong(1_000_000));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertThat(histogram.getCount()).isEqualTo(400_000);
+        assertThat(histogram.getValueAtQuantile(1)).isEqualTo(histogram.getMax());
+    }
+}
@@ -0,0 +1,65 @@
+package com.revolut.core;
+
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.Histogram;
+import com.revolut.core.metrics.MetricsRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void sameMetricIsReturned() {
+        Counter counter = registry.counter("requests_total", "Requests", "endpoint", "a");
+
+        assertThat(registry.counter("requests_total", "Requests", "endpoint", "a")).isSameAs(counter);
+        assertThat(registry.counter("requests_total", "Requests", "endpoint", "b")).isNotSameAs(counter);
+    }
+
+    @Test
+    public void differentTypeIsRejected() {
+        registry.counter("requests_total", "Requests");
+
+        assertThatThrownBy(() -> registry.histogram("requests_total", "Requests"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void prometheusFormat() throws IOException {
+        registry.counter("requests_total", "Requests", "endpoint", "transfer").add(3);
+        registry.gauge("connections", "Open connections", () -> 2);
+        Histogram histogram = registry.histogram("latency_seconds", "Latency", "endpoint", "transfer");
+        histogram.record(1_000_000);
+        histogram.record(3_000_000);
+
+        StringWriter out = new StringWriter();
+        registry.write(out);
+
+        assertThat(out.toString()).contains(
+            "# TYPE requests_total counter\n",
+            "requests_total{endpoint=\"transfer\"} 3\n",
+            "# HELP connections Open connections\n",
+            "connections 2.0\n",
+            "# TYPE latency_seconds summary\n",
+            "latency_seconds{endpoint=\"transfer\",quantile=\"0.5\"} 0.001",
+            "latency_seconds_sum{endpoint=\"transfer\"} 0.004\n",
+            "latency_seconds_count{endpoint=\"transfer\"} 2\n");
+    }
+
+    @Test
+    public void labelValuesAreEscaped() throws IOException {
+        registry.counter("requests_total", "Requests", "path", "a\"b").increment();
+
+        StringWriter out = new StringWriter();
+        registry.write(out);
+
+        assertThat(out.toString()).contains("requests_total{path=\"a\\\"b\"} 1\n");
+    }
+}
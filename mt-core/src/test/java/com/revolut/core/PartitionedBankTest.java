@@ -0,0 +1,213 @@
+package com.revolut.core;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.bank.PartitionedBank;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PartitionedBankTest {
+
+    private final PartitionedBank bank = new PartitionedBank(4);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        bank.close();
+    }
+
+    @Test
+    public void deposit() {
+        Account account = bank.createAccount();
+
+        Account deposited = bank.deposit(account.getAccountId(), new Money(50));
+
+        assertThat(deposited.getBalance()).isEqualTo(new Money(50));
+        assertThat(bank.getAccount(account.getAccountId()).getBalance()).isEqualTo(new Money(50));
+    }
+
+    @Test
+    public void transfer_samePartition() {
+        UUID one = funded(100);
+        UUID two = accountIn(bank.partitionOf(one));
+
+        bank.transfer(one, two, new Money(30));
+
+        assertThat(bank.getAccount(one).getBalance()).isEqualTo(new Money(70));
+        assertThat(bank.getAccount(two).getBalance()).isEqualTo(new Money(30));
+    }
+
+    @Test
+    public void transfer_acrossPartitions() {
+        UUID one = funded(100);
+        UUID two = accountIn((bank.partitionOf(one) + 1) % 4);
+
+        bank.transfer(one, two, new Money(30));
+
+        assertThat(bank.getAccount(one).getBalance()).isEqualTo(new Money(70));
+        assertThat(bank.getAccount(two).getBalance()).isEqualTo(new Money(30));
+    }
+
+    @Test
+    public void transfer_notEnoughMoney() {
+        UUID one = funded(100);
+        UUID two = accountIn((bank.partitionOf(one) + 1) % 4);
+
+        assertThatThrownBy(() -> bank.transfer(one, two, new Money(200)))
+            .isInstanceOf(AccountException.class);
+
+        assertThat(bank.getAccount(one).getBalance()).isEqualTo(new Money(100));
+        assertThat(bank.getAccount(two).getBalance()).isEqualTo(new Money(0));
+    }
+
+    @Test
+    public void transfer_missingDestinationRefunded() {
+        UUID one = funded(100);
+        UUID missing;
+        do {
+            missing = UUID.randomUUID();
+        } while (bank.partitionOf(missing) == bank.partitionOf(one));
+        UUID to = missing;
+
+        assertThatThrownBy(() -> bank.transfer(one, to, new Money(30)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+
+        assertThat(bank.getAccount(one).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void getAccounts_acrossPartitions() {
+        UUID one = funded(100);
+        UUID two = accountIn((bank.partitionOf(one) + 1) % 4);
+        UUID missing = UUID.randomUUID();
+
+        Map<UUID, Account> accounts = bank.getAccounts(Arrays.asList(two, missing, one));
+
+        assertThat(accounts.keySet()).containsExactly(two, one);
+        assertThat(accounts.get(one).getBalance()).isEqualTo(new Money(100));
+        assertThat(accounts.get(two).getBalance()).isEqualTo(new Money(0));
+    }
+
+    @Test
+    public void getAccounts_pagesInIdOrderAcrossPartitions() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) ids.add(bank.createAccount().getAccountId());
+        Collections.sort(ids);
+
+        List<UUID> paged = new ArrayList<>();
+        UUID after = null;
+        List<Account> page;
+        do {
+            page = bank.getAccounts(after, 3);
+            page.forEach(account -> paged.add(account.getAccountId()));
+            if (!page.isEmpty()) after = page.get(page.size() - 1).getAccountId();
+        } while (page.size() == 3);
+
+        assertThat(paged).isEqualTo(ids);
+    }
+
+    @Test
+    public void closed() throws InterruptedException {
+        bank.close();
+
+        assertThatThrownBy(bank::createAccount).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void closeCompletesTransfersInFlight() throws InterruptedException {
+        UUID one = funded(100);
+        UUID two = accountIn((bank.partitionOf(one) + 1) % 4);
+
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transfers.add(bank.transferAsync(one, two, new Money(10)));
+        }
+        bank.close();
+
+        assertThat(transfers).allMatch(transfer -> transfer.isDone() && !transfer.isCompletedExceptionally());
+    }
+
+    @Test(timeout = 10000)
+    public void depositsRacingCloseAreAppliedOrRejected() throws Exception {
+        UUID one = bank.createAccount().getAccountId();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Account>> deposits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                while (true) {
+                    CompletableFuture<Account> deposit;
+                    try {
+                        deposit = bank.depositAsync(one, new Money(1));
+                    } catch (IllegalStateException ex) {
+                        return;
+                    }
+                    synchronized (deposits) {
+                        deposits.add(deposit);
+                    }
+                }
+            });
+        }
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        bank.close();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertThat(deposits).allMatch(deposit -> deposit.isDone() && !deposit.isCompletedExceptionally());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentTransfersKeepTotal() throws Exception {
+        List<UUID> accounts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            accounts.add(funded(10000));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID from = accounts.get(i % 8);
+            UUID to = accounts.get((i * 3 + 1) % 8);
+            executor.execute(() -> {
+                CompletableFuture<Void> transfer = bank.transferAsync(from, to, new Money(7));
+                synchronized (transfers) {
+                    transfers.add(transfer);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).join();
+
+        int total = bank.getAllAccounts().stream().mapToInt(account -> account.getBalance().getCents()).sum();
+        assertThat(total).isEqualTo(8 * 10000);
+    }
+
+    private UUID funded(int cents) {
+        UUID accountId = bank.createAccount().getAccountId();
+        bank.deposit(accountId, new Money(cents));
+        return accountId;
+    }
+
+    private UUID accountIn(int partition) {
+        while (true) {
+            UUID accountId = bank.createAccount().getAccountId();
+            if (bank.partitionOf(accountId) == partition) return accountId;
+        }
+    }
+}
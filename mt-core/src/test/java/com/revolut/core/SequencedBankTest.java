@@ -0,0 +1,283 @@
+package com.revolut.core;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.bank.SequencedBank;
+import com.revolut.core.bank.Transfer;
+import com.revolut.core.bank.TransferResult;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.StorageException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SequencedBankTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+
+    private final MapStorage storage = new MapStorage();
+    private SequencedBank bank;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (bank != null) bank.close();
+    }
+
+    @Test
+    public void deposit() {
+        storage.create(new Account(ONE, new Money(100)));
+        bank = new SequencedBank(storage, Runnable::run, 16, 4);
+
+        Account account = bank.deposit(ONE, new Money(50));
+
+        assertThat(account.getBalance()).isEqualTo(new Money(150));
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 1));
+    }
+
+    @Test
+    public void transfer() {
+        storage.create(new Account(ONE, new Money(100)));
+        storage.create(new Account(TWO, new Money(0)));
+        bank = new SequencedBank(storage, Runnable::run, 16, 4);
+
+        bank.transfer(ONE, TWO, new Money(30));
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(70));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(30));
+    }
+
+    @Test
+    public void transfer_notEnoughMoneyFailsOnlyItself() {
+        storage.create(new Account(ONE, new Money(100)));
+        storage.create(new Account(TWO, new Money(0)));
+        bank = new SequencedBank(storage, Runnable::run, 16, 4);
+
+        CompletableFuture<Void> failed = bank.transferAsync(ONE, TWO, new Money(200));
+        CompletableFuture<Void> succeeded = bank.transferAsync(ONE, TWO, new Money(100));
+
+        assertThatThrownBy(failed::join).hasCauseInstanceOf(AccountException.class);
+        succeeded.join();
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void transfer_accountDoesNotExist() {
+        storage.create(new Account(ONE, new Money(100)));
+        bank = new SequencedBank(storage, Runnable::run, 16, 4);
+
+        assertThatThrownBy(() -> bank.transfer(ONE, TWO, new Money(10)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void transferList_persistedInSingleUnitOfWork() {
+        storage.create(new Account(ONE, new Money(100)));
+        storage.create(new Account(TWO, new Money(0)));
+        AtomicInteger units = new AtomicInteger();
+        bank = new SequencedBank(storage, work -> {
+            units.incrementAndGet();
+            work.run();
+        }, 16, 4);
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transfers.add(new Transfer(ONE, TWO, new Money(10)));
+        }
+        transfers.add(new Transfer(ONE, TWO, new Money(10)));
+        transfers.add(new Transfer(ONE, UUID.randomUUID(), new Money(10)));
+
+        List<TransferResult> results = bank.transfer(transfers);
+
+        assertThat(results.subList(0, 10)).containsOnly(TransferResult.completed());
+        assertThat(results.get(10).isCompleted()).isFalse();
+        assertThat(results.get(11).isCompleted()).isFalse();
+        assertThat(units.get()).isEqualTo(1);
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void transferList_failsAsWhole() {
+        storage.create(new Account(ONE, new Money(100)));
+        storage.create(new Account(TWO, new Money(0)));
+        AtomicInteger failures = new AtomicInteger(1);
+        bank = new SequencedBank(storage, work -> {
+            if (failures.getAndDecrement() > 0) throw new RetryStorageException();
+            work.run();
+        }, 16, 4);
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transfers.add(new Transfer(ONE, TWO, new Money(10)));
+        }
+
+        assertThatThrownBy(() -> bank.transfer(transfers)).isInstanceOf(RetryStorageException.class);
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(0));
+
+        bank.transfer(transfers);
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(0));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void failedBatchIsReloadedFromStorage() {
+        storage.create(new Account(ONE, new Money(100)));
+        AtomicInteger failures = new AtomicInteger(1);
+        bank = new SequencedBank(storage, work -> {
+            if (failures.getAndDecrement() > 0) throw new RetryStorageException();
+            work.run();
+        }, 16, 4);
+
+        assertThatThrownBy(() -> bank.deposit(ONE, new Money(50)))
+            .isInstanceOf(RetryStorageException.class);
+
+        assertThat(bank.deposit(ONE, new Money(50)).getBalance()).isEqualTo(new Money(150));
+    }
+
+    @Test(timeout = 10000)
+    public void writerFailureFailsOperations() {
+        storage.create(new Account(ONE, new Money(100)));
+        bank = new SequencedBank(storage, work -> {
+            throw new AssertionError("Writer dies");
+        }, 16, 4);
+
+        assertThatThrownBy(() -> bank.deposit(ONE, new Money(50)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining("writer has failed");
+        assertThatThrownBy(() -> bank.deposit(ONE, new Money(50)))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test(timeout = 10000)
+    public void writerFailureFailsRestOfBatch() throws Exception {
+        MapStorage storage = new MapStorage() {
+            @Override
+            public Account details(UUID accountId) {
+                if (accountId.equals(TWO)) throw new AssertionError("Writer dies");
+                return super.details(accountId);
+            }
+        };
+        storage.create(new Account(ONE, new Money(100)));
+        CountDownLatch persisting = new CountDownLatch(1);
+        CountDownLatch persisted = new CountDownLatch(1);
+        bank = new SequencedBank(storage, work -> {
+            persisting.countDown();
+            persisted.await();
+            work.run();
+        }, 16, 4);
+
+        CompletableFuture<Account> first = bank.depositAsync(ONE, new Money(10));
+        persisting.await();
+        // both wait for the first batch, so they are taken as the next one
+        CompletableFuture<Account> failing = bank.depositAsync(TWO, new Money(10));
+        CompletableFuture<Account> last = bank.depositAsync(ONE, new Money(10));
+        persisted.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getBalance()).isEqualTo(new Money(110));
+        assertThatThrownBy(() -> failing.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StorageException.class);
+        assertThatThrownBy(() -> last.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StorageException.class);
+    }
+
+    @Test(timeout = 10000)
+    public void slowOperationTimesOut() {
+        storage.create(new Account(ONE, new Money(100)));
+        CountDownLatch persisted = new CountDownLatch(1);
+        bank = new SequencedBank(storage, work -> {
+            persisted.await();
+            work.run();
+        }, 16, 4, 100, TimeUnit.MILLISECONDS);
+
+        assertThatThrownBy(() -> bank.deposit(ONE, new Money(50)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining("not completed in time");
+        persisted.countDown();
+    }
+
+    @Test
+    public void closed() throws InterruptedException {
+        bank = new SequencedBank(storage, Runnable::run, 16, 4);
+        bank.close();
+
+        assertThatThrownBy(() -> bank.transferAsync(ONE, TWO, new Money(10)))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentTransfersKeepTotal() throws Exception {
+        storage.create(new Account(ONE, new Money(10000)));
+        storage.create(new Account(TWO, new Money(10000)));
+        bank = new SequencedBank(storage, Runnable::run, 8, 4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            boolean forward = i % 2 == 0;
+            executor.execute(() -> {
+                CompletableFuture<Void> transfer = forward
+                    ? bank.transferAsync(ONE, TWO, new Money(7))
+                    : bank.transferAsync(TWO, ONE, new Money(3));
+                synchronized (transfers) {
+                    transfers.add(transfer);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).join();
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(10000 - 500 * 4));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(10000 + 500 * 4));
+    }
+
+    /**
+     * Keeps copies of accounts, so the bank could not change them behind storage back
+     */
+    private static class MapStorage implements Storage {
+        private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+
+        @Override
+        public Account details(UUID accountId) {
+            Account account = accounts.get(accountId);
+            if (account == null) throw new AccountDoesNotExistException("No account [" + accountId + "]");
+            return copy(account);
+        }
+
+        @Override
+        public List<Account> getAllAccounts() {
+            return new ArrayList<>(accounts.values());
+        }
+
+        @Override
+        public void update(Account account) {
+            Account current = accounts.get(account.getAccountId());
+            if (current.getVersion() != account.getVersion()) throw new RetryStorageException();
+            accounts.put(account.getAccountId(),
+                new Account(account.getAccountId(), account.getBalance(), account.getVersion() + 1));
+        }
+
+        @Override
+        public void create(Account account) {
+            accounts.put(account.getAccountId(), copy(account));
+        }
+
+        private static Account copy(Account account) {
+            return new Account(account.getAccountId(), account.getBalance(), account.getVersion());
+        }
+    }
+}
@@ -3,17 +3,31 @@ package com.revolut.core;
 import com.revolut.core.account.Account;
 import com.revolut.core.account.AccountException;
 import com.revolut.core.bank.Bank;
+import com.revolut.core.bank.ConflictTracker;
 import com.revolut.core.bank.SimpleBank;
+import com.revolut.core.bank.Transfer;
+import com.revolut.core.bank.TransferResult;
 import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.Ledger;
+import com.revolut.core.storage.LedgerEntry;
+import com.revolut.core.storage.RetryStorageException;
 import com.revolut.core.storage.Storage;
 import org.assertj.core.util.Lists;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -164,6 +178,270 @@ public class SimpleBankTest {
         assertThat(hasBeenCalled[0]).isFalse();
     }
 
+    @Test
+    public void transferBatch() {
+        UUID three = UUID.randomUUID();
+        List<Collection<Account>> batches = new ArrayList<>();
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public Account details(UUID accountId) {
+                if (accountId.equals(three)) throw new AccountDoesNotExistException("No account");
+                return new Account(accountId, accountId.equals(ONE) ? new Money(1000) : new Money(500));
+            }
+
+            @Override
+            public void update(Collection<Account> accounts) {
+                batches.add(new ArrayList<>(accounts));
+            }
+        });
+
+        List<TransferResult> results = bank.transfer(Arrays.asList(
+            new Transfer(ONE, TWO, new Money(600)),
+            new Transfer(ONE, TWO, new Money(600)),
+            new Transfer(TWO, ONE, new Money(100)),
+            new Transfer(ONE, three, new Money(100))));
+
+        assertThat(results).containsExactly(
+            TransferResult.completed(),
+            TransferResult.failed(AccountException.NOT_ENOUGH_MONEY),
+            TransferResult.completed(),
+            TransferResult.failed("No account"));
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsOnly(
+            new Account(ONE, new Money(500)),
+            new Account(TWO, new Money(1000)));
+    }
+
+    @Test
+    public void deltaMode_depositAndTransferGoToStorage() {
+        List<String> calls = new ArrayList<>();
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public Account deposit(UUID accountId, Money amount) {
+                calls.add("deposit " + amount.getCents());
+                return new Account(accountId, amount, 1);
+            }
+
+            @Override
+            public void transfer(UUID from, UUID to, Money amount) {
+                calls.add("transfer " + amount.getCents());
+            }
+
+            @Override
+            public void update(Account account) {
+                throw new AssertionError("Versioned update is not expected");
+            }
+        }, SimpleBank.Mode.DELTA);
+
+        bank.deposit(ONE, new Money(100));
+        bank.transfer(ONE, TWO, new Money(200));
+
+        assertThat(calls).containsExactly("deposit 100", "transfer 200");
+    }
+
+    @Test
+    public void stripedAccount_depositAndTransferGoToStorage() {
+        List<String> calls = new ArrayList<>();
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public boolean isStriped(UUID accountId) {
+                return accountId.equals(ONE);
+            }
+
+            @Override
+            public Account deposit(UUID accountId, Money amount) {
+                calls.add("deposit " + amount.getCents());
+                return new Account(accountId, amount, 1);
+            }
+
+            @Override
+            public void transfer(UUID from, UUID to, Money amount) {
+                calls.add("transfer " + amount.getCents());
+            }
+
+            @Override
+            public void update(Account account) {
+                throw new AssertionError("Versioned update is not expected");
+            }
+        });
+
+        bank.deposit(ONE, new Money(100));
+        bank.transfer(TWO, ONE, new Money(200));
+
+        assertThat(calls).containsExactly("deposit 100", "transfer 200");
+    }
+
+    @Test
+    public void pessimisticMode_accountsLockedBeforeUpdate() {
+        List<String> calls = new ArrayList<>();
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public Account details(UUID accountId) {
+                throw new AssertionError("Unlocked read is not expected");
+            }
+
+            @Override
+            public Map<UUID, Account> lock(Collection<UUID> accountIds) {
+                calls.add("lock " + accountIds.size());
+                Map<UUID, Account> locked = new HashMap<>();
+                accountIds.forEach(id -> locked.put(id, new Account(id, new Money(1000))));
+                return locked;
+            }
+
+            @Override
+            public void update(Account account) {
+                calls.add("update " + account.getBalance().getCents());
+            }
+        }, SimpleBank.Mode.PESSIMISTIC);
+
+        bank.deposit(ONE, new Money(100));
+        bank.transfer(ONE, TWO, new Money(200));
+
+        assertThat(calls).containsExactly("lock 1", "update 1100", "lock 2", "update 800", "update 1200");
+    }
+
+    @Test
+    public void pessimisticMode_missingAccount() {
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public Map<UUID, Account> lock(Collection<UUID> accountIds) {
+                return singletonMap(ONE, new Account(ONE, new Money(1000)));
+            }
+        }, SimpleBank.Mode.PESSIMISTIC);
+
+        assertThatThrownBy(() -> bank.transfer(ONE, TWO, new Money(200)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void adaptiveMode_hotAccountsLocked() {
+        List<String> calls = new ArrayList<>();
+        ConflictTracker conflicts = new ConflictTracker(2, 1, TimeUnit.MINUTES, () -> 0);
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public Account details(UUID accountId) {
+                calls.add("read");
+                return new Account(accountId, new Money(1000));
+            }
+
+            @Override
+            public Map<UUID, Account> lock(Collection<UUID> accountIds) {
+                calls.add("lock");
+                Map<UUID, Account> locked = new HashMap<>();
+                accountIds.forEach(id -> locked.put(id, new Account(id, new Money(1000))));
+                return locked;
+            }
+
+            @Override
+            public void update(Account account) {
+                if (calls.get(calls.size() - 1).equals("read") && account.getAccountId().equals(TWO))
+                    throw new RetryStorageException();
+            }
+        }, SimpleBank.Mode.ADAPTIVE, Ledger.none(), conflicts);
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> bank.deposit(TWO, new Money(100))).isInstanceOf(RetryStorageException.class);
+        }
+        bank.transfer(ONE, TWO, new Money(200));
+        bank.deposit(ONE, new Money(100));
+
+        assertThat(conflicts.isHot(TWO)).isTrue();
+        assertThat(calls).containsExactly("read", "read", "lock", "read");
+    }
+
+    @Test
+    public void deltaMode_transferBatchFailsSeparately() {
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public void transfer(UUID from, UUID to, Money amount) {
+                if (amount.getCents() > 1000) throw new AccountException(AccountException.NOT_ENOUGH_MONEY);
+            }
+        }, SimpleBank.Mode.DELTA);
+
+        List<TransferResult> results = bank.transfer(Arrays.asList(
+            new Transfer(ONE, TWO, new Money(2000)),
+            new Transfer(ONE, TWO, new Money(100))));
+
+        assertThat(results).containsExactly(
+            TransferResult.failed(AccountException.NOT_ENOUGH_MONEY),
+            TransferResult.completed());
+    }
+
+    @Test
+    public void ledger_recordsCompletedTransfers() {
+        RecordingLedger ledger = new RecordingLedger();
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public void transfer(UUID from, UUID to, Money amount) {
+                if (amount.getCents() > 1000) throw new AccountException(AccountException.NOT_ENOUGH_MONEY);
+            }
+        }, SimpleBank.Mode.DELTA, ledger);
+
+        bank.transfer(ONE, TWO, new Money(100));
+        assertThatThrownBy(() -> bank.transfer(ONE, TWO, new Money(2000)))
+            .isInstanceOf(AccountException.class);
+        bank.transfer(ONE, ONE, new Money(100));
+
+        assertThat(ledger.transfers).containsExactly(new Transfer(ONE, TWO, new Money(100)));
+    }
+
+    @Test
+    public void ledger_recordsCompletedTransfersOfBatch() {
+        RecordingLedger ledger = new RecordingLedger();
+        Bank bank = new SimpleBank(new TestStorage() {
+            @Override
+            public Account details(UUID accountId) {
+                return new Account(accountId, accountId.equals(ONE) ? new Money(1000) : new Money(500));
+            }
+
+            @Override
+            public void update(Collection<Account> accounts) {
+            }
+        }, SimpleBank.Mode.OPTIMISTIC, ledger);
+
+        bank.transfer(Arrays.asList(
+            new Transfer(ONE, TWO, new Money(600)),
+            new Transfer(ONE, TWO, new Money(600)),
+            new Transfer(TWO, ONE, new Money(100))));
+
+        assertThat(ledger.transfers).containsExactly(
+            new Transfer(ONE, TWO, new Money(600)),
+            new Transfer(TWO, ONE, new Money(100)));
+    }
+
+    @Test
+    public void capabilitiesFollowStorageAndLedger() {
+        Bank bank = new SimpleBank(new TestStorage(), SimpleBank.Mode.OPTIMISTIC);
+
+        assertThat(bank.hasHistory()).isFalse();
+        assertThat(bank.getTransactions(ONE, null, 10)).isEmpty();
+        assertThat(bank.supportsStriping()).isFalse();
+
+        Bank striping = new SimpleBank(new TestStorage() {
+            @Override
+            public boolean supportsStriping() {
+                return true;
+            }
+        }, SimpleBank.Mode.OPTIMISTIC, new RecordingLedger());
+
+        assertThat(striping.hasHistory()).isTrue();
+        assertThat(striping.supportsStriping()).isTrue();
+    }
+
+    private static class RecordingLedger implements Ledger {
+        private final List<Transfer> transfers = new ArrayList<>();
+
+        @Override
+        public void record(Transfer transfer) {
+            transfers.add(transfer);
+        }
+
+        @Override
+        public List<LedgerEntry> entries(UUID accountId, Long before, int limit) {
+            return emptyList();
+        }
+    }
+
     /**
      * Helper class, which allows to override just single method to
      * simplify test.
@@ -0,0 +1,149 @@
+package com.revolut.core;
+
+import com.revolut.core.storage.UndoLog;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UndoLogTest {
+
+    @Test
+    public void undoInReverseOrder() {
+        UndoLog undoLog = new UndoLog();
+        List<String> undone = new ArrayList<>();
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            undoLog.record(() -> undone.add("first"));
+            undoLog.record(() -> undone.add("second"));
+            throw new RuntimeException("Suppose to happen");
+        })).hasMessage("Suppose to happen");
+
+        assertThat(undone).containsExactly("second", "first");
+    }
+
+    @Test
+    public void successfulWorkIsNotUndone() throws Exception {
+        UndoLog undoLog = new UndoLog();
+        List<String> undone = new ArrayList<>();
+
+        undoLog.execute(() -> undoLog.record(() -> undone.add("first")));
+
+        assertThat(undone).isEmpty();
+    }
+
+    @Test
+    public void nestedWorkJoinsOuter() {
+        UndoLog undoLog = new UndoLog();
+        List<String> undone = new ArrayList<>();
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            try {
+                undoLog.execute(() -> undoLog.record(() -> undone.add("inner")));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            throw new RuntimeException("Suppose to happen");
+        }));
+
+        assertThat(undone).containsExactly("inner");
+    }
+
+    @Test
+    public void recordOutsideOfWorkIsIgnored() throws Exception {
+        UndoLog undoLog = new UndoLog();
+        List<String> undone = new ArrayList<>();
+        undoLog.record(() -> undone.add("outside"));
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            throw new RuntimeException();
+        }));
+
+        assertThat(undone).isEmpty();
+    }
+
+    @Test
+    public void releasedAfterUndo() {
+        UndoLog undoLog = new UndoLog();
+        List<String> done = new ArrayList<>();
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            undoLog.release(() -> done.add("released"));
+            undoLog.record(() -> done.add("undone"));
+            throw new RuntimeException("Suppose to happen");
+        }));
+
+        assertThat(done).containsExactly("undone", "released");
+    }
+
+    @Test
+    public void releasedAfterSuccessfulWork() throws Exception {
+        UndoLog undoLog = new UndoLog();
+        List<String> released = new ArrayList<>();
+
+        undoLog.execute(() -> {
+            undoLog.release(() -> released.add("first"));
+            undoLog.release(() -> released.add("second"));
+            assertThat(released).isEmpty();
+        });
+
+        assertThat(released).containsExactly("second", "first");
+    }
+
+    @Test
+    public void releasedRightAwayOutsideOfWork() {
+        UndoLog undoLog = new UndoLog();
+        List<String> released = new ArrayList<>();
+
+        undoLog.release(() -> released.add("outside"));
+
+        assertThat(released).containsExactly("outside");
+    }
+
+    @Test
+    public void committedAfterWorkBeforeRelease() throws Exception {
+        UndoLog undoLog = new UndoLog();
+        List<String> done = new ArrayList<>();
+
+        undoLog.execute(() -> {
+            undoLog.release(() -> done.add("released"));
+            undoLog.commit(() -> done.add("first"));
+            undoLog.commit(() -> done.add("second"));
+            done.add("work");
+        });
+
+        assertThat(done).containsExactly("work", "first", "second", "released");
+    }
+
+    @Test
+    public void failedCommitUndoesWork() {
+        UndoLog undoLog = new UndoLog();
+        List<String> done = new ArrayList<>();
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            undoLog.record(() -> done.add("undone"));
+            undoLog.commit(() -> {
+                throw new RuntimeException("Suppose to happen");
+            });
+            undoLog.commit(() -> done.add("committed"));
+        })).hasMessage("Suppose to happen");
+
+        assertThat(done).containsExactly("undone");
+    }
+
+    @Test
+    public void failedWorkIsNotCommitted() {
+        UndoLog undoLog = new UndoLog();
+        List<String> done = new ArrayList<>();
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            undoLog.commit(() -> done.add("committed"));
+            throw new RuntimeException("Suppose to happen");
+        }));
+
+        assertThat(done).isEmpty();
+    }
+}
@@ -0,0 +1,35 @@
+package com.revolut.loadgen;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When operations are due, independently of how long the previous ones take
+ */
+public enum Arrivals {
+
+    /**
+     * Operations are evenly spaced
+     */
+    CONSTANT {
+        @Override
+        long nextGapNanos(double rate) {
+            return (long) (1e9 / rate);
+        }
+    },
+
+    /**
+     * Gaps are exponentially distributed, as arrivals of independent clients are
+     */
+    POISSON {
+        @Override
+        long nextGapNanos(double rate) {
+            return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * 1e9 / rate);
+        }
+    };
+
+    /**
+     * @param rate operations per second
+     * @return nanos till the next operation is due
+     */
+    abstract long nextGapNanos(double rate);
+}
@@ -0,0 +1,90 @@
+package com.revolut.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Calls REST endpoints of the bank with plain {@link HttpURLConnection}, responses are read
+ * till the end, so that connections are kept alive and reused
+ */
+public class BankClient {
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([0-9a-fA-F-]{36})\"");
+
+    private final String target;
+    private final int timeoutMillis;
+
+    /**
+     * @param target base URL of the bank, e.g. {@code http://localhost:8080}
+     */
+    public BankClient(String target, int timeoutMillis) {
+        this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public UUID createAccount() throws IOException {
+        Response response = request("POST", "/account", "");
+        if (response.status != 200) throw new IOException("Cannot create account, status [" + response.status + "]");
+        Matcher matcher = ID.matcher(response.body);
+        if (!matcher.find()) throw new IOException("No account id in [" + response.body + "]");
+        return UUID.fromString(matcher.group(1));
+    }
+
+    public int getAccount(UUID id) throws IOException {
+        return request("GET", "/account/" + id, null).status;
+    }
+
+    public int deposit(UUID id, int amount) throws IOException {
+        return request("POST", "/account/" + id + "/deposit", "amount=" + amount).status;
+    }
+
+    public int transfer(UUID from, UUID to, int amount) throws IOException {
+        return request("POST", "/account/" + from + "/transfer", "to=" + to + "&amount=" + amount).status;
+    }
+
+    private Response request(String method, String path, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(target + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        if (form != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        return new Response(status, in == null ? "" : read(in));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
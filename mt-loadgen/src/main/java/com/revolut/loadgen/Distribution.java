@@ -0,0 +1,51 @@
+package com.revolut.loadgen;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+
+/**
+ * How accounts are picked for operations
+ */
+public enum Distribution {
+
+    /**
+     * Every account is equally likely, contention is close to none
+     */
+    UNIFORM {
+        @Override
+        IntSupplier indexes(int accounts, double exponent) {
+            return () -> ThreadLocalRandom.current().nextInt(accounts);
+        }
+    },
+
+    /**
+     * Account of index {@code i} is picked with probability proportional to
+     * {@code 1 / (i + 1)^exponent}, the first few take most of the operations
+     */
+    ZIPF {
+        @Override
+        IntSupplier indexes(int accounts, double exponent) {
+            double[] cdf = new double[accounts];
+            double sum = 0;
+            for (int i = 0; i < accounts; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < accounts; i++) {
+                cdf[i] /= sum;
+            }
+            return () -> {
+                int idx = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+                return Math.min(idx >= 0 ? idx : -idx - 1, accounts - 1);
+            };
+        }
+    };
+
+    /**
+     * @param accounts number of accounts to pick from
+     * @param exponent skew of the distribution, if it has one
+     * @return source of account indexes in range [0, accounts)
+     */
+    abstract IntSupplier indexes(int accounts, double exponent);
+}
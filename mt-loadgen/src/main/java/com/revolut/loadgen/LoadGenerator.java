@@ -0,0 +1,163 @@
+package com.revolut.loadgen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * Open-model load generator driving REST endpoints of a running bank.
+ *
+ * Operations are issued at the given rate whatever the latency is: the dispatcher decides
+ * when every operation is due by {@link Arrivals} and hands it over to a pool of connections,
+ * so a slow bank makes operations queue up instead of slowing the load down. Every rate is
+ * run after a warmup of its own, sweeping through increasing rates shows where latency and
+ * errors start to grow.
+ *
+ * Settings are system properties: {@code -Dtarget=http://localhost:8080}, {@code -Drates=100,200,400},
+ * {@code -Dduration=30} and {@code -Dwarmup=5} seconds, {@code -Daccounts=1000},
+ * {@code -Ddistribution=uniform|zipf} with {@code -Dzipf.exponent=1.0}, {@code -Darrivals=poisson|constant},
+ * {@code -Dreads=0.2} and {@code -Ddeposits=0.1} shares of operations, {@code -Dconnections=256}.
+ */
+public class LoadGenerator {
+
+    private final LoadProfile profile;
+    private final BankClient client;
+    private final IntSupplier indexes;
+    private UUID[] accounts;
+
+    public LoadGenerator(LoadProfile profile) {
+        if (profile.getAccounts() < 2) throw new IllegalArgumentException("At least two accounts are required");
+        this.profile = profile;
+        this.client = new BankClient(profile.getTarget(), profile.getTimeoutMillis());
+        this.indexes = profile.getDistribution().indexes(profile.getAccounts(), profile.getZipfExponent());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int connections = Integer.getInteger("connections", 256);
+        // idle connections above that are closed by the JDK instead of being reused
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+
+        LoadProfile profile = LoadProfile.builder()
+            .target(System.getProperty("target", "http://localhost:8080"))
+            .accounts(Integer.getInteger("accounts", 1000))
+            .distribution(Distribution.valueOf(System.getProperty("distribution", "uniform").toUpperCase()))
+            .zipfExponent(Double.parseDouble(System.getProperty("zipf.exponent", "1.0")))
+            .arrivals(Arrivals.valueOf(System.getProperty("arrivals", "poisson").toUpperCase()))
+            .reads(Double.parseDouble(System.getProperty("reads", "0.2")))
+            .deposits(Double.parseDouble(System.getProperty("deposits", "0.1")))
+            .connections(connections)
+            .warmupSeconds(Integer.getInteger("warmup", 5))
+            .durationSeconds(Integer.getInteger("duration", 30))
+            .build();
+
+        LoadGenerator generator = new LoadGenerator(profile);
+        System.out.printf("Creating [%d] accounts at [%s]%n", profile.getAccounts(), profile.getTarget());
+        generator.setUp();
+
+        List<Report> reports = new ArrayList<>();
+        for (String rate : System.getProperty("rates", "100,200,400,800,1600").split(",")) {
+            Report report = generator.run(Double.parseDouble(rate.trim()));
+            report.print(System.out);
+            System.out.println();
+            reports.add(report);
+        }
+        System.out.println(Report.summaryHeader());
+        reports.forEach(report -> System.out.println(report.summary()));
+    }
+
+    /**
+     * Creates accounts and deposits initial balance to every one of them
+     */
+    public void setUp() throws Exception {
+        UUID[] created = new UUID[profile.getAccounts()];
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(profile.getConnections(), 32));
+        try {
+            List<Future<?>> futures = new ArrayList<>(created.length);
+            for (int i = 0; i < created.length; i++) {
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    created[index] = client.createAccount();
+                    fund(created[index]);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            pool.shutdown();
+        }
+        accounts = created;
+    }
+
+    // bank turns away operations above its admission limit, setup just waits and tries again
+    private void fund(UUID account) throws IOException, InterruptedException {
+        int status = 0;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            status = client.deposit(account, profile.getInitialBalance());
+            if (status != 503) break;
+            TimeUnit.MILLISECONDS.sleep(100L << Math.min(attempt, 4));
+        }
+        if (status != 200) throw new IOException("Cannot fund account [" + account + "], status [" + status + "]");
+    }
+
+    /**
+     * Applies load at the given rate for the warmup and then for the measured duration
+     */
+    public Report run(double rate) throws InterruptedException {
+        if (accounts == null) throw new IllegalStateException("Accounts are not set up");
+        apply(rate, TimeUnit.SECONDS.toNanos(profile.getWarmupSeconds()), null);
+        long duration = TimeUnit.SECONDS.toNanos(profile.getDurationSeconds());
+        Report report = new Report(rate, duration);
+        apply(rate, duration, report);
+        return report;
+    }
+
+    private void apply(double rate, long durationNanos, Report report) throws InterruptedException {
+        ExecutorService connections = Executors.newFixedThreadPool(profile.getConnections());
+        long due = System.nanoTime();
+        long end = due + durationNanos;
+        while (due < end) {
+            long now;
+            while ((now = System.nanoTime()) < due) {
+                LockSupport.parkNanos(due - now);
+            }
+            long scheduled = due;
+            connections.execute(() -> perform(scheduled, report));
+            due += profile.getArrivals().nextGapNanos(rate);
+        }
+        connections.shutdown();
+        connections.awaitTermination(profile.getTimeoutMillis() + durationNanos / 1_000_000, TimeUnit.MILLISECONDS);
+    }
+
+    private void perform(long due, Report report) {
+        Operation operation = nextOperation();
+        int first = indexes.getAsInt();
+        int second = indexes.getAsInt();
+        while (second == first) {
+            second = ThreadLocalRandom.current().nextInt(accounts.length);
+        }
+
+        long started = System.nanoTime();
+        int status;
+        try {
+            status = operation.perform(client, accounts[first], accounts[second]);
+        } catch (IOException ex) {
+            status = -1;
+        }
+        if (report != null) report.record(operation, status, due, started, System.nanoTime());
+    }
+
+    private Operation nextOperation() {
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < profile.getReads()) return Operation.READ;
+        if (dice < profile.getReads() + profile.getDeposits()) return Operation.DEPOSIT;
+        return Operation.TRANSFER;
+    }
+}
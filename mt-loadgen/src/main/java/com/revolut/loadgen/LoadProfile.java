@@ -0,0 +1,81 @@
+package com.revolut.loadgen;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings of {@link LoadGenerator}
+ */
+@Value
+@Builder
+public class LoadProfile {
+
+    /**
+     * Base URL of the bank
+     */
+    @Builder.Default
+    private final String target = "http://localhost:8080";
+
+    /**
+     * Number of accounts created before the load starts
+     */
+    @Builder.Default
+    private final int accounts = 1000;
+
+    /**
+     * Balance every account starts with, in cents
+     */
+    @Builder.Default
+    private final int initialBalance = 1_000_000;
+
+    /**
+     * How accounts are picked for operations
+     */
+    @Builder.Default
+    private final Distribution distribution = Distribution.UNIFORM;
+
+    /**
+     * Skew of Zipf distribution
+     */
+    @Builder.Default
+    private final double zipfExponent = 1.0;
+
+    /**
+     * How operations are spread in time
+     */
+    @Builder.Default
+    private final Arrivals arrivals = Arrivals.POISSON;
+
+    /**
+     * Share of reads among operations
+     */
+    @Builder.Default
+    private final double reads = 0.2;
+
+    /**
+     * Share of deposits among operations, the rest are transfers
+     */
+    @Builder.Default
+    private final double deposits = 0.1;
+
+    /**
+     * Maximum number of requests in flight, operations due above that wait for a connection
+     */
+    @Builder.Default
+    private final int connections = 256;
+
+    /**
+     * Load applied before every step without being measured
+     */
+    @Builder.Default
+    private final int warmupSeconds = 5;
+
+    /**
+     * Measured load of every step
+     */
+    @Builder.Default
+    private final int durationSeconds = 30;
+
+    @Builder.Default
+    private final int timeoutMillis = 10_000;
+}
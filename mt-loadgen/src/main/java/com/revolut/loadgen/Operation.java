@@ -0,0 +1,38 @@
+package com.revolut.loadgen;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Request made against the bank, money is moved by a cent at a time
+ */
+public enum Operation {
+
+    READ {
+        @Override
+        int perform(BankClient client, UUID first, UUID second) throws IOException {
+            return client.getAccount(first);
+        }
+    },
+
+    DEPOSIT {
+        @Override
+        int perform(BankClient client, UUID first, UUID second) throws IOException {
+            return client.deposit(first, 1);
+        }
+    },
+
+    TRANSFER {
+        @Override
+        int perform(BankClient client, UUID first, UUID second) throws IOException {
+            return client.transfer(first, second, 1);
+        }
+    };
+
+    /**
+     * @param first  account to read, to deposit to or to transfer from
+     * @param second account to transfer to, distinct from the first one
+     * @return HTTP status of the response
+     */
+    abstract int perform(BankClient client, UUID first, UUID second) throws IOException;
+}
@@ -0,0 +1,115 @@
+package com.revolut.loadgen;
+
+import com.revolut.core.metrics.Histogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of a single step of load.
+ *
+ * Latency is measured from the moment an operation was due, not from the moment it was sent,
+ * so time spent waiting behind slow operations is counted the way clients of an open system
+ * see it, instead of being omitted. Service time, measured from the actual start, is kept
+ * for comparison, the gap between them shows how much queueing the bank causes.
+ */
+public class Report {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final double rate;
+    private final long durationNanos;
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+    private final Histogram latency = new Histogram();
+
+    public Report(double rate, long durationNanos) {
+        this.rate = rate;
+        this.durationNanos = durationNanos;
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * @param status HTTP status, negative if no response has been received
+     */
+    public void record(Operation operation, int status, long dueNanos, long startedNanos, long finishedNanos) {
+        Stats operationStats = stats.get(operation);
+        operationStats.latency.record(finishedNanos - dueNanos);
+        latency.record(finishedNanos - dueNanos);
+        operationStats.service.record(finishedNanos - startedNanos);
+        if (status >= 200 && status < 300) operationStats.succeeded.increment();
+        else if (status == 503) operationStats.rejected.increment();
+        else operationStats.failed.increment();
+    }
+
+    public long getCompleted() {
+        return latency.getCount();
+    }
+
+    public long getRejected() {
+        return stats.values().stream().mapToLong(s -> s.rejected.sum()).sum();
+    }
+
+    public long getFailed() {
+        return stats.values().stream().mapToLong(s -> s.failed.sum()).sum();
+    }
+
+    /**
+     * @return latency of the given operation at the quantile, corrected for coordinated omission
+     */
+    public long getLatency(Operation operation, double quantile, TimeUnit unit) {
+        return stats.get(operation).latency.getValueAtQuantile(quantile, unit);
+    }
+
+    /**
+     * @return single line comparing this step with the others
+     */
+    public String summary() {
+        return String.format("%10.0f %10.1f %8.2f%% %8.2f%% %10.2f %10.2f %10.2f",
+            rate, getCompleted() * 1e9 / durationNanos, percent(getFailed()), percent(getRejected()),
+            millis(latency.getValueAtQuantile(0.5)), millis(latency.getValueAtQuantile(0.99)),
+            millis(latency.getValueAtQuantile(0.999)));
+    }
+
+    public static String summaryHeader() {
+        return String.format("%10s %10s %9s %9s %10s %10s %10s",
+            "rate/s", "done/s", "errors", "rejected", "p50 ms", "p99 ms", "p99.9 ms");
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Rate [%.0f/s], completed [%.1f/s], errors [%.2f%%], rejected [%.2f%%]%n",
+            rate, getCompleted() * 1e9 / durationNanos, percent(getFailed()), percent(getRejected()));
+        out.printf("%-10s %8s %8s %8s %10s %10s %10s %10s %10s %14s%n",
+            "operation", "count", "errors", "rejected", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms",
+            "service p99 ms");
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            if (s.latency.getCount() == 0) continue;
+            out.printf("%-10s %8d %8d %8d", entry.getKey(), s.latency.getCount(), s.failed.sum(), s.rejected.sum());
+            for (double quantile : QUANTILES) {
+                out.printf(" %10.2f", millis(s.latency.getValueAtQuantile(quantile)));
+            }
+            out.printf(" %10.2f %14.2f%n", millis(s.latency.getMax()), millis(s.service.getValueAtQuantile(0.99)));
+        }
+    }
+
+    private double percent(long count) {
+        long completed = getCompleted();
+        return completed == 0 ? 0 : count * 100.0 / completed;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class Stats {
+        private final Histogram latency = new Histogram();
+        private final Histogram service = new Histogram();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+}
@@ -0,0 +1,37 @@
+package com.revolut.loadgen;
+
+import org.junit.Test;
+
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DistributionTest {
+
+    @Test
+    public void uniform() {
+        int[] counts = pick(Distribution.UNIFORM.indexes(10, 1.0), 10, 100_000);
+
+        for (int count : counts) {
+            assertThat(count).isBetween(9_000, 11_000);
+        }
+    }
+
+    @Test
+    public void zipf_firstAccountsTakeMost() {
+        int[] counts = pick(Distribution.ZIPF.indexes(1000, 1.0), 1000, 100_000);
+
+        // harmonic number of 1000 is about 7.49, so the first account takes about 13%
+        assertThat(counts[0]).isBetween(12_000, 14_700);
+        assertThat(counts[0]).isGreaterThan(counts[1]).isGreaterThan(counts[9]);
+        assertThat(counts[999]).isLessThan(100);
+    }
+
+    private static int[] pick(IntSupplier indexes, int accounts, int times) {
+        int[] counts = new int[accounts];
+        for (int i = 0; i < times; i++) {
+            counts[indexes.getAsInt()]++;
+        }
+        return counts;
+    }
+}
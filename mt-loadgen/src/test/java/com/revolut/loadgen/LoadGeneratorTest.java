@@ -0,0 +1,103 @@
+package com.revolut.loadgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadGeneratorTest {
+
+    private final ExecutorService handlers = Executors.newFixedThreadPool(8);
+    private final AtomicInteger transfers = new AtomicInteger();
+    private volatile long delayMillis;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/account", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    @Test
+    public void issuesOperationsAtGivenRate() throws Exception {
+        LoadGenerator generator = generator(4, Arrivals.CONSTANT);
+        generator.setUp();
+
+        Report report = generator.run(100);
+
+        assertThat(report.getCompleted()).isBetween(95L, 105L);
+        assertThat(transfers.get()).isEqualTo((int) report.getCompleted());
+        assertThat(report.getFailed()).isEqualTo(0);
+    }
+
+    @Test
+    public void latencyIncludesWaitingBehindSlowOperations() throws Exception {
+        LoadGenerator generator = generator(2, Arrivals.CONSTANT);
+        generator.setUp();
+        delayMillis = 50;
+
+        // two connections serve 40 operations per second, the rest queue up
+        Report report = generator.run(80);
+
+        assertThat(report.getCompleted()).isBetween(75L, 85L);
+        assertThat(report.getLatency(Operation.TRANSFER, 0.99, TimeUnit.MILLISECONDS)).isGreaterThan(500);
+    }
+
+    private LoadGenerator generator(int connections, Arrivals arrivals) {
+        return new LoadGenerator(LoadProfile.builder()
+            .target("http://localhost:" + server.getAddress().getPort())
+            .accounts(10)
+            .reads(0)
+            .deposits(0)
+            .arrivals(arrivals)
+            .connections(connections)
+            .warmupSeconds(0)
+            .durationSeconds(1)
+            .build());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String body = "";
+        if (path.equals("/account")) {
+            body = "{\"id\":\"" + UUID.randomUUID() + "\",\"balance\":0}";
+        } else if (path.endsWith("/transfer")) {
+            transfers.incrementAndGet();
+            sleep(delayMillis);
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.revolut.loadgen;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportTest {
+
+    private final Report report = new Report(100, TimeUnit.SECONDS.toNanos(1));
+
+    @Test
+    public void latencyCountedFromDueTime() {
+        long due = 0;
+        long started = TimeUnit.MILLISECONDS.toNanos(90);
+        long finished = TimeUnit.MILLISECONDS.toNanos(100);
+
+        report.record(Operation.TRANSFER, 200, due, started, finished);
+
+        assertThat(report.getLatency(Operation.TRANSFER, 0.5, TimeUnit.MILLISECONDS)).isBetween(97L, 103L);
+    }
+
+    @Test
+    public void outcomes() {
+        report.record(Operation.DEPOSIT, 200, 0, 0, 1);
+        report.record(Operation.DEPOSIT, 503, 0, 0, 1);
+        report.record(Operation.TRANSFER, 500, 0, 0, 1);
+        report.record(Operation.READ, -1, 0, 0, 1);
+
+        assertThat(report.getCompleted()).isEqualTo(4);
+        assertThat(report.getRejected()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(2);
+        assertThat(report.summary()).contains("50.00%", "25.00%");
+    }
+}
@@ -0,0 +1,252 @@
+package com.revolut.persistence;
+
+import com.revolut.core.metrics.Histogram;
+import com.revolut.core.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical connections.
+ *
+ * Connections are given away as proxies, closing proxy returns physical connection
+ * back to the pool. Idle connections are kept in LIFO order, so the ones at the tail
+ * are the first to be evicted after {@link PoolConfig#getIdleTimeoutMillis()}. Eviction
+ * is done along with acquire and release, the pool doesn't own any threads.
+ * Every physical connection keeps its prepared statements in a {@link StatementCache},
+ * so statements prepared through the proxy survive returning the connection to the pool.
+ */
+@Slf4j
+public class ConnectionPool {
+
+    private static final Histogram ACQUIRE = MetricsRegistry.DEFAULT.histogram(
+        "db_connection_acquire_seconds", "Time spent waiting for a connection from the pool");
+
+    private final javax.sql.DataSource dataSource;
+    private final PoolConfig config;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(javax.sql.DataSource dataSource, PoolConfig config) {
+        this.dataSource = dataSource;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+    }
+
+    /**
+     * Acquires connection, waits for one to become free if the pool is exhausted
+     *
+     * @return connection, which has to be closed to return it back to the pool
+     * @throws SQLTransientConnectionException if no connection became free in time
+     * @throws SQLNonTransientConnectionException if the pool is closed
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLNonTransientConnectionException("Pool is closed");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException(
+                    "No free connection within [" + config.getAcquireTimeoutMillis() + "] ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for connection", e);
+        }
+
+        try {
+            Physical physical = borrow();
+            active.incrementAndGet();
+            recordWait(System.nanoTime() - start);
+            return proxy(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public PoolStatistics getStatistics() {
+        return new PoolStatistics(
+            active.get(),
+            idle.size(),
+            acquired.sum(),
+            timeouts.sum(),
+            totalWaitNanos.sum(),
+            maxWaitNanos.get());
+    }
+
+    /**
+     * Closes all connections idle longer than configured timeout, keeping minimum of idle ones
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Idle> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > config.getMinIdle()) {
+            Idle candidate = it.next();
+            if (now - candidate.since < config.getIdleTimeoutMillis()) break;
+            if (idle.removeLastOccurrence(candidate)) {
+                closeQuietly(candidate.physical);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections, connections in use are closed as they're returned
+     */
+    public void close() {
+        closed = true;
+        Idle next;
+        while ((next = idle.pollFirst()) != null) {
+            closeQuietly(next.physical);
+        }
+    }
+
+    private Physical borrow() throws SQLException {
+        evictIdle();
+        Idle next;
+        while ((next = idle.pollFirst()) != null) {
+            if (isUsable(next)) return next.physical;
+            closeQuietly(next.physical);
+        }
+        Connection connection = dataSource.getConnection();
+        return new Physical(connection, new StatementCache(connection, config.getStatementCacheSize()));
+    }
+
+    private boolean isUsable(Idle candidate) {
+        if (System.currentTimeMillis() - candidate.since < config.getValidateAfterMillis()) return true;
+        try {
+            return candidate.physical.connection.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            log.warn("Connection validation failed", e);
+            return false;
+        }
+    }
+
+    private void release(Physical physical) {
+        Connection connection = physical.connection;
+        try {
+            if (connection.isClosed()) return;
+            physical.statements.reset();
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (closed) {
+                closeQuietly(physical);
+                return;
+            }
+            idle.offerFirst(new Idle(physical, System.currentTimeMillis()));
+            // pool closed meanwhile has missed this one
+            if (closed) close();
+        } catch (SQLException e) {
+            log.warn("Cannot reset connection, discarding it", e);
+            closeQuietly(physical);
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+            evictIdle();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        ACQUIRE.record(nanos);
+        acquired.increment();
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private Connection proxy(Physical pooled) {
+        Connection physical = pooled.connection;
+        boolean cached = config.getStatementCacheSize() > 0;
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class[]{Connection.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            release(pooled);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed[0] || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled[" + physical + "]";
+                    case "prepareStatement":
+                        if (closed[0]) throw new SQLException("Connection is closed");
+                        if (cached && args.length == 1) return pooled.statements.prepare((String) args[0]);
+                        return invoke(physical, method, args);
+                    default:
+                        if (closed[0]) throw new SQLException("Connection is closed");
+                        return invoke(physical, method, args);
+                }
+            });
+    }
+
+    private static Object invoke(Connection physical, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(physical, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(Physical physical) {
+        physical.statements.close();
+        try {
+            physical.connection.close();
+        } catch (SQLException e) {
+            log.warn("Cannot close connection", e);
+        }
+    }
+
+    /**
+     * Physical connection along with its prepared statements
+     */
+    private static class Physical {
+        private final Connection connection;
+        private final StatementCache statements;
+
+        Physical(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+        }
+    }
+
+    private static class Idle {
+        private final Physical physical;
+        private final long since;
+
+        Idle(Physical physical, long since) {
+            this.physical = physical;
+            this.since = since;
+        }
+    }
+}
@@ -6,20 +6,30 @@ import lombok.extern.slf4j.Slf4j;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+/**
+ * Gives every thread its own connection taken from the {@link ConnectionPool},
+ * the connection is returned back to the pool on {@link #closeConnection()}.
+ * Work outside of transactions goes through {@link #read(SqlWork)} and {@link #write(SqlWork)},
+ * which hold a connection for the duration of the work only.
+ */
 @Slf4j
 public class DataSource {
 
-    private final javax.sql.DataSource dataSource;
+    private final ConnectionPool pool;
     private final ThreadLocal<Connection> conn = new ThreadLocal<>();
 
     public DataSource(javax.sql.DataSource dataSource) {
-        this.dataSource = dataSource;
+        this(dataSource, PoolConfig.builder().build());
+    }
+
+    public DataSource(javax.sql.DataSource dataSource, PoolConfig config) {
+        this.pool = new ConnectionPool(dataSource, config);
     }
 
     public Connection getConnection() {
         if (conn.get() == null) {
             try {
-                conn.set(dataSource.getConnection());
+                conn.set(pool.getConnection());
             } catch (SQLException e) {
                 log.error("Cannot get connection from the pool", e);
                 throw new StorageException();
@@ -28,6 +38,23 @@ public class DataSource {
         return conn.get();
     }
 
+    /**
+     * Runs the work on the connection the thread already has, e.g. the one of its transaction.
+     * Otherwise the work gets a read-only connection, which is returned to the pool right after,
+     * so threads reading outside of transactions don't hold connections while idle.
+     */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        return scoped(true, work);
+    }
+
+    /**
+     * Same as {@link #read(SqlWork)}, but the connection taken for the work is writable,
+     * every statement is committed on its own
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        return scoped(false, work);
+    }
+
     public void closeConnection() {
         try {
             Connection connection = conn.get();
@@ -40,4 +67,48 @@ public class DataSource {
             conn.remove();
         }
     }
+
+    /**
+     * Hands the connection of the thread over to the caller, it's neither rolled back nor
+     * returned to the pool until the caller closes it
+     *
+     * @return connection of the thread, {@code null} if it has none
+     */
+    public Connection detachConnection() {
+        Connection connection = conn.get();
+        conn.remove();
+        return connection;
+    }
+
+    public PoolStatistics getPoolStatistics() {
+        return pool.getStatistics();
+    }
+
+    private <T> T scoped(boolean readOnly, SqlWork<T> work) throws SQLException {
+        Connection current = conn.get();
+        if (current != null) return work.apply(current);
+
+        Connection connection = getConnection();
+        try {
+            if (readOnly) connection.setReadOnly(true);
+            return work.apply(connection);
+        } finally {
+            if (readOnly) {
+                try {
+                    connection.setReadOnly(false);
+                } catch (SQLException e) {
+                    log.warn("Cannot make connection writable again", e);
+                }
+            }
+            closeConnection();
+        }
+    }
+
+    /**
+     * Work done on a connection
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
 }
@@ -0,0 +1,178 @@
+package com.revolut.persistence;
+
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.MetricsRegistry;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UnitOfWork;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link UnitOfWork}, which runs works of concurrent callers by the single committer thread
+ * and commits them together in one transaction.
+ *
+ * Works queued while the previous group is being committed form the next group. Every work
+ * runs within its own savepoint, if it fails, only its changes are rolled back and only its
+ * caller gets the exception, the rest of the group goes on. Callers are released once the
+ * group is committed, if commit fails, the whole group fails. Any other failure of the
+ * group fails all of its works not completed yet and the committer goes on with the next
+ * group. Works run on the committer thread, so they must not rely on thread locals of
+ * the caller.
+ */
+@Slf4j
+public class GroupCommitExecutor implements UnitOfWork, AutoCloseable {
+    private static final Counter GROUPS = MetricsRegistry.DEFAULT.counter(
+        "db_group_commits_total", "Transactions committed on behalf of a group of operations");
+    private static final Counter OPERATIONS = MetricsRegistry.DEFAULT.counter(
+        "db_group_commit_operations_total", "Operations committed as part of a group");
+    private static final Counter SAVEPOINT_ROLLBACKS = MetricsRegistry.DEFAULT.counter(
+        "db_savepoint_rollbacks_total", "Operations of a group rolled back to their savepoint");
+
+    private final DataSource dataSource;
+    private final int maxGroup;
+    private final long timeoutNanos;
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    /**
+     * @param maxGroup the most operations committed by a single transaction
+     */
+    public GroupCommitExecutor(DataSource dataSource, int maxGroup) {
+        this(dataSource, maxGroup, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param maxGroup the most operations committed by a single transaction
+     * @param timeout  how long callers wait for their works, not committed ones fail
+     */
+    public GroupCommitExecutor(DataSource dataSource, int maxGroup, long timeout, TimeUnit unit) {
+        this.dataSource = dataSource;
+        this.maxGroup = maxGroup;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.committer = new Thread(this::commitGroups, "group-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Waits till the work is committed along with its group, nested calls join the group
+     */
+    @Override
+    public void execute(Runnable work) throws Exception {
+        if (Thread.currentThread() == committer) {
+            work.run();
+            return;
+        }
+        if (!running) throw new IllegalStateException("Group commit executor is closed");
+
+        Task task = new Task(work);
+        queue.add(task);
+        try {
+            task.future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+            throw new StorageException("Operation has failed", ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new StorageException("Operation is not committed in time, it may still be applied");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for commit", ex);
+        }
+    }
+
+    /**
+     * Stops the committer, after it has committed all queued works
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        committer.join();
+    }
+
+    private void commitGroups() {
+        List<Task> group = new ArrayList<>(maxGroup);
+        while (running || !queue.isEmpty()) {
+            Task first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) continue;
+
+            group.add(first);
+            queue.drainTo(group, maxGroup - 1);
+            commit(group);
+            group.clear();
+        }
+    }
+
+    private void commit(List<Task> group) {
+        Connection connection = null;
+        List<Task> applied = new ArrayList<>(group.size());
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            for (Task task : group) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    task.work.run();
+                    connection.releaseSavepoint(savepoint);
+                    applied.add(task);
+                } catch (Exception ex) {
+                    connection.rollback(savepoint);
+                    SAVEPOINT_ROLLBACKS.increment();
+                    task.future.completeExceptionally(ex);
+                }
+            }
+            connection.commit();
+            GROUPS.increment();
+            OPERATIONS.add(applied.size());
+            applied.forEach(task -> task.future.complete(null));
+        } catch (Throwable ex) {
+            log.warn("Group of [{}] operations failed", group.size(), ex);
+            String message = "Cannot commit group of [" + group.size() + "] operations";
+            RuntimeException failure = ex instanceof SQLException
+                ? SqlStorage.failure(message, (SQLException) ex)
+                : new StorageException(message, ex);
+            // works failed alone keep their own exception
+            group.forEach(task -> task.future.completeExceptionally(failure));
+            if (connection != null) rollback(connection);
+        } finally {
+            dataSource.closeConnection();
+        }
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            log.error("Cannot rollback failed group", ex);
+        }
+    }
+
+    /**
+     * Work queued by a caller, which waits for the future
+     */
+    private static class Task {
+        private final Runnable work;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Task(Runnable work) {
+            this.work = work;
+        }
+    }
+}
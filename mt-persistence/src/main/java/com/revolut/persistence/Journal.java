@@ -0,0 +1,301 @@
+package com.revolut.persistence;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of account states split into memory-mapped segments.
+ *
+ * Every record is the full state of a single account, so replaying is idempotent.
+ * Records of a unit of work are appended together and followed by a commit record,
+ * a unit never spans segments. Records are checked with CRC, replay of a segment stops
+ * at the first broken record and skips records without a commit after them.
+ * Appends never touch the disk, {@link #sync(long)} waits for the flusher thread,
+ * which forces everything appended so far at once, so concurrent writers share
+ * a single fsync.
+ */
+@Slf4j
+class Journal implements Closeable {
+
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte COMMIT = 3;
+
+    // crc, type, sequence, msb, lsb, balance, version
+    static final int RECORD = 4 + 1 + 8 + 8 + 8 + 4 + 4;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+
+    private final Object lock = new Object();
+    private final Thread flusher;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long appended;
+    private long flushed;
+    private long forces;
+    private boolean closed;
+
+    /**
+     * Opens journal, appends go to a new segment after everything already written
+     *
+     * @param lastSequence sequence of the last commit written before
+     */
+    Journal(Path directory, int segmentSize, long lastSequence) throws IOException {
+        if (segmentSize < 2 * RECORD) throw new IllegalArgumentException("Segment cannot hold a committed record");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.appended = lastSequence;
+        this.flushed = lastSequence;
+        roll();
+
+        this.flusher = new Thread(this::flush, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Appends account states of a unit of work followed by a commit record
+     *
+     * @return sequence of the commit record, to wait for with {@link #sync(long)}
+     */
+    long append(List<Entry> entries) throws IOException {
+        int size = (entries.size() + 1) * RECORD;
+        if (size > segmentSize) throw new IOException(
+            "Unit of work of [" + entries.size() + "] records doesn't fit into a segment");
+        synchronized (lock) {
+            if (closed) throw new IOException("Journal is closed");
+            if (segment.remaining() < size) {
+                segment.force();
+                flushed = appended;
+                lock.notifyAll();
+                roll();
+            }
+            for (Entry entry : entries) {
+                write(segment, entry.getType(), ++appended, entry.getAccountId(), entry.getBalance(), entry.getVersion());
+            }
+            long sequence = ++appended;
+            write(segment, COMMIT, sequence, new UUID(0, 0), 0, 0);
+            lock.notifyAll();
+            return sequence;
+        }
+    }
+
+    /**
+     * Waits until the record with given sequence is on the disk
+     */
+    void sync(long sequence) throws IOException {
+        synchronized (lock) {
+            while (flushed < sequence) {
+                if (closed) throw new IOException("Journal is closed");
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for sync", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment, so all the older ones contain records up to returned sequence only
+     */
+    long cut() throws IOException {
+        synchronized (lock) {
+            if (segment.position() == 0) return appended;
+            segment.force();
+            flushed = appended;
+            lock.notifyAll();
+            roll();
+            return appended;
+        }
+    }
+
+    /**
+     * Removes segments, which contain records up to given sequence only
+     */
+    void truncate(long sequence) throws IOException {
+        List<Path> segments = segments(directory);
+        synchronized (lock) {
+            for (int i = 0; i < segments.size() - 1; i++) {
+                long nextFirst = firstSequence(segments.get(i + 1));
+                if (nextFirst > sequence + 1) break;
+                Files.delete(segments.get(i));
+            }
+        }
+    }
+
+    long getAppended() {
+        synchronized (lock) {
+            return appended;
+        }
+    }
+
+    long getForces() {
+        synchronized (lock) {
+            return forces;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+            segment.force();
+            flushed = appended;
+            closed = true;
+            lock.notifyAll();
+            channel.close();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads all valid committed records with sequence greater than given one in order
+     *
+     * @return sequence of the last commit, or given one if there is none after it
+     */
+    static long replay(Path directory, long after, Visitor visitor) throws IOException {
+        long committed = after;
+        for (Path path : segments(directory)) {
+            List<Entry> unit = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                byte[] record = new byte[RECORD];
+                while (buffer.remaining() >= RECORD) {
+                    buffer.get(record);
+                    ByteBuffer rec = ByteBuffer.wrap(record);
+                    int crc = rec.getInt();
+                    if (crc != crc(record)) break;
+                    byte type = rec.get();
+                    long sequence = rec.getLong();
+                    UUID accountId = new UUID(rec.getLong(), rec.getLong());
+                    if (type != COMMIT) {
+                        unit.add(new Entry(type, accountId, rec.getInt(), rec.getInt()));
+                        continue;
+                    }
+                    if (sequence > after) {
+                        unit.forEach(visitor::visit);
+                        committed = Math.max(committed, sequence);
+                    }
+                    unit.clear();
+                }
+            }
+            if (!unit.isEmpty()) log.warn("Skipping [{}] uncommitted records in [{}]", unit.size(), path);
+        }
+        return committed;
+    }
+
+    // segment starting right after the last valid record may only contain broken tail, it's overwritten
+    private void roll() throws IOException {
+        if (channel != null) channel.close();
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, appended + 1, SUFFIX));
+        channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void flush() {
+        while (true) {
+            MappedByteBuffer target;
+            long upTo;
+            synchronized (lock) {
+                while (flushed == appended && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) return;
+                target = segment;
+                upTo = appended;
+            }
+
+            target.force();
+
+            synchronized (lock) {
+                forces++;
+                if (upTo > flushed) flushed = upTo;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static void write(MappedByteBuffer segment, byte type, long sequence,
+                              UUID accountId, int balance, int version) {
+        byte[] record = new byte[RECORD];
+        ByteBuffer rec = ByteBuffer.wrap(record);
+        rec.putInt(0);
+        rec.put(type);
+        rec.putLong(sequence);
+        rec.putLong(accountId.getMostSignificantBits());
+        rec.putLong(accountId.getLeastSignificantBits());
+        rec.putInt(balance);
+        rec.putInt(version);
+        rec.putInt(0, crc(record));
+        segment.put(record);
+    }
+
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, record.length - 4);
+        return (int) crc.getValue();
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * State of a single account within a unit of work
+     */
+    @Value
+    static class Entry {
+        byte type;
+        UUID accountId;
+        int balance;
+        int version;
+    }
+
+    /**
+     * Receives committed records during replay
+     */
+    interface Visitor {
+        void visit(Entry entry);
+    }
+}
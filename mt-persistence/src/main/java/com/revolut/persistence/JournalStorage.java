@@ -0,0 +1,391 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UndoLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable implementation of a {@link Storage}, accounts are kept in memory and every
+ * unit of work is written to the {@link Journal} at once before it's acknowledged.
+ *
+ * Once enough records are appended, balances of all accounts are written to a snapshot
+ * and journal segments covered by it are removed. On start state is rebuilt from the
+ * latest valid snapshot and the journal records written after it.
+ *
+ * Storage has no transactions, changes are undone through given {@link UndoLog}. Account
+ * changed within a unit of work stays locked until it's over, changes are journaled
+ * once the work is done, so undone ones never reach the journal and a crash never leaves
+ * half of a unit. Change outside of a unit of work makes a unit of its own. Locks are waited for in stripe order only and at most
+ * {@value #LOCK_TIMEOUT_MILLIS} millis, busy lock out of order is reported as a conflict
+ * right away.
+ */
+@Slf4j
+public class JournalStorage implements Storage, Closeable {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final int STRIPES = 1024;
+    private static final long LOCK_TIMEOUT_MILLIS = 1000;
+
+    private final Path directory;
+    private final UndoLog undoLog;
+    private final long snapshotEvery;
+
+    private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+    private final Journal journal;
+    private volatile long snapshotSequence;
+
+    // accounts are guarded by stripes, units of work hold cut shared till they are over,
+    // snapshot takes it exclusively to see committed state only
+    private final StripedLocks stripes = new StripedLocks(STRIPES, LOCK_TIMEOUT_MILLIS);
+    private final ReadWriteLock cut = new ReentrantReadWriteLock();
+    // records of the current unit of work
+    private final ThreadLocal<List<Journal.Entry>> units = new ThreadLocal<>();
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param directory     where journal segments and snapshots are kept
+     * @param segmentSize   size of a single journal segment in bytes
+     * @param snapshotEvery number of journal records, after which snapshot is taken
+     */
+    public JournalStorage(Path directory, int segmentSize, long snapshotEvery, UndoLog undoLog) {
+        this.directory = directory;
+        this.undoLog = undoLog;
+        this.snapshotEvery = snapshotEvery;
+        try {
+            Files.createDirectories(directory);
+            snapshotSequence = readSnapshot();
+            long last = Journal.replay(directory, snapshotSequence, entry -> accounts.put(entry.getAccountId(),
+                new Account(entry.getAccountId(), new Money(entry.getBalance()), entry.getVersion())));
+            log.info("Recovered [{}] accounts up to sequence [{}]", accounts.size(), last);
+            journal = new Journal(directory, segmentSize, last);
+        } catch (IOException e) {
+            throw new StorageException("Cannot open journal in [" + directory + "]", e);
+        }
+    }
+
+    @Override
+    public Account details(UUID accountId) {
+        return read(find(accountId));
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> all = new ArrayList<>(accounts.size());
+        accounts.values().forEach(account -> all.add(read(account)));
+        return all;
+    }
+
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        accounts.values().forEach(account -> consumer.accept(read(account)));
+    }
+
+    @Override
+    public void update(Account account) {
+        inUnit(() -> update(account, find(account.getAccountId())));
+    }
+
+    /**
+     * Updates accounts in stripe order, so batches never wait for each other out of order
+     */
+    @Override
+    public void update(Collection<Account> accounts) {
+        List<Account> ordered = new ArrayList<>(accounts);
+        ordered.sort(Comparator.comparingInt(account -> stripes.stripe(account.getAccountId().hashCode())));
+        inUnit(() -> ordered.forEach(account -> update(account, find(account.getAccountId()))));
+    }
+
+    private void update(Account account, Account current) {
+        List<Journal.Entry> unit = unit();
+        UUID accountId = account.getAccountId();
+        int stripe = lock(accountId);
+        try {
+            if (current.getVersion() != account.getVersion()) throw new RetryStorageException(
+                "Optimistic lock failed for account [" + accountId + "]");
+            Money balance = current.getBalance();
+            current.setBalance(account.getBalance());
+            current.setVersion(account.getVersion() + 1);
+            unit.add(new Journal.Entry(Journal.UPDATE, accountId, account.getBalance().getCents(), account.getVersion() + 1));
+            undoLog.record(() -> {
+                current.setBalance(balance);
+                current.setVersion(account.getVersion());
+            });
+        } catch (RuntimeException ex) {
+            stripes.unlock(stripe);
+            throw ex;
+        }
+        undoLog.release(() -> stripes.unlock(stripe));
+    }
+
+    /**
+     * Journals new account right away, it's not undone with the unit of work
+     */
+    @Override
+    public void create(Account account) {
+        UUID accountId = account.getAccountId();
+        long sequence;
+        cut.readLock().lock();
+        try {
+            int stripe = lock(accountId);
+            try {
+                if (accounts.putIfAbsent(accountId, copy(account)) != null)
+                    throw new StorageException("Cannot create account [" + accountId + "]");
+                try {
+                    sequence = append(Collections.singletonList(new Journal.Entry(
+                        Journal.CREATE, accountId, account.getBalance().getCents(), account.getVersion())));
+                } catch (StorageException e) {
+                    accounts.remove(accountId);
+                    throw e;
+                }
+            } finally {
+                stripes.unlock(stripe);
+            }
+        } finally {
+            cut.readLock().unlock();
+        }
+        sync(sequence);
+    }
+
+    /**
+     * Writes balances of all accounts to a new snapshot and removes journal segments it covers
+     */
+    public void snapshot() {
+        Map<UUID, Account> state = new HashMap<>(accounts.size());
+        long sequence;
+        cut.writeLock().lock();
+        try {
+            sequence = journal.cut();
+            accounts.forEach((id, account) -> state.put(id, copy(account)));
+        } catch (IOException e) {
+            throw new StorageException("Cannot cut journal", e);
+        } finally {
+            cut.writeLock().unlock();
+        }
+
+        try {
+            writeSnapshot(state, sequence);
+            journal.truncate(sequence);
+            snapshotSequence = sequence;
+            log.info("Snapshot of [{}] accounts up to sequence [{}] is written", state.size(), sequence);
+        } catch (IOException e) {
+            throw new StorageException("Cannot write snapshot", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshots.shutdown();
+        journal.close();
+    }
+
+    private void inUnit(Runnable work) {
+        try {
+            undoLog.execute(work);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new StorageException("Unit of work failed", ex);
+        }
+    }
+
+    /**
+     * Records of the current unit of work, journaled once the work is done. Cut is taken
+     * before any account of the unit is locked and held till the unit is over
+     */
+    private List<Journal.Entry> unit() {
+        List<Journal.Entry> unit = units.get();
+        if (unit != null) return unit;
+        cut.readLock().lock();
+        List<Journal.Entry> started = new ArrayList<>();
+        units.set(started);
+        undoLog.release(() -> {
+            units.remove();
+            cut.readLock().unlock();
+        });
+        undoLog.commit(() -> {
+            if (!started.isEmpty()) sync(append(started));
+        });
+        return started;
+    }
+
+    private Account read(Account account) {
+        int stripe = lock(account.getAccountId());
+        try {
+            return copy(account);
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    // units of work hold stripes till they are over, so waiting for one is bounded
+    private int lock(UUID accountId) {
+        int stripe = stripes.stripe(accountId.hashCode());
+        try {
+            if (stripes.lock(stripe)) return stripe;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for account [" + accountId + "]", ex);
+        }
+        throw new RetryStorageException("Cannot lock account [" + accountId + "], it is busy");
+    }
+
+    private Account find(UUID accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null)
+            throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+        return account;
+    }
+
+    private long append(List<Journal.Entry> entries) {
+        try {
+            long sequence = journal.append(entries);
+            if (sequence - snapshotSequence >= snapshotEvery && snapshotting.compareAndSet(false, true)) {
+                snapshots.execute(() -> {
+                    try {
+                        snapshot();
+                    } catch (RuntimeException e) {
+                        log.error("Snapshot failed", e);
+                    } finally {
+                        snapshotting.set(false);
+                    }
+                });
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new StorageException("Cannot append [" + entries.size() + "] records to journal", e);
+        }
+    }
+
+    private void sync(long sequence) {
+        try {
+            journal.sync(sequence);
+        } catch (IOException e) {
+            throw new StorageException("Cannot sync journal", e);
+        }
+    }
+
+    private void writeSnapshot(Map<UUID, Account> state, long sequence) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT_PREFIX + "tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            OutputStream out = Channels.newOutputStream(channel);
+            DataOutputStream data = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(out, 1 << 16), crc));
+            data.writeLong(sequence);
+            data.writeInt(state.size());
+            for (Account account : state.values()) {
+                data.writeLong(account.getAccountId().getMostSignificantBits());
+                data.writeLong(account.getAccountId().getLeastSignificantBits());
+                data.writeInt(account.getBalance().getCents());
+                data.writeInt(account.getVersion());
+            }
+            data.flush();
+            new DataOutputStream(out).writeLong(crc.getValue());
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath(sequence), StandardCopyOption.ATOMIC_MOVE);
+
+        for (Path old : snapshots()) {
+            if (!old.equals(snapshotPath(sequence))) Files.delete(old);
+        }
+    }
+
+    /**
+     * Loads the latest valid snapshot
+     *
+     * @return sequence of the last journal record covered by the snapshot
+     */
+    private long readSnapshot() throws IOException {
+        List<Path> snapshots = snapshots();
+        Collections.reverse(snapshots);
+        for (Path path : snapshots) {
+            Map<UUID, Account> state = new HashMap<>();
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+                CRC32 crc = new CRC32();
+                DataInputStream data = new DataInputStream(new CheckedInputStream(in, crc));
+                long sequence = data.readLong();
+                int size = data.readInt();
+                for (int i = 0; i < size; i++) {
+                    UUID accountId = new UUID(data.readLong(), data.readLong());
+                    state.put(accountId, new Account(accountId, new Money(data.readInt()), data.readInt()));
+                }
+                long expected = crc.getValue();
+                if (new DataInputStream(in).readLong() != expected) {
+                    log.warn("Snapshot [{}] is broken, skipping", path);
+                    continue;
+                }
+                accounts.putAll(state);
+                return sequence;
+            } catch (EOFException e) {
+                log.warn("Snapshot [{}] is incomplete, skipping", path);
+            }
+        }
+        return 0;
+    }
+
+    private List<Path> snapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+            directory, SNAPSHOT_PREFIX + "[0-9]*" + SNAPSHOT_SUFFIX)) {
+            stream.forEach(snapshots::add);
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private Path snapshotPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+    }
+
+    // snapshot copies accounts without stripes, changes are made under the cut
+    private static Account copy(Account account) {
+        return new Account(account.getAccountId(), account.getBalance(), account.getVersion());
+    }
+}
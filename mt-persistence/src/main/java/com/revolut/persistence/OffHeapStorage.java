@@ -0,0 +1,250 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UndoLog;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of a {@link Storage}, which keeps accounts outside of java heap.
+ *
+ * Every account is a fixed-width record in a direct buffer: id as two longs, balance
+ * and version. Records are found through open-addressing hash index, which is a direct
+ * buffer of record numbers keyed by both halves of the id, so looking an account up
+ * doesn't allocate anything. Capacity is fixed, single record takes {@value #RECORD}
+ * bytes plus {@value #SLOT} bytes of the index per each of two slots.
+ *
+ * Storage has no transactions, changes are undone through given {@link UndoLog}. Record
+ * changed within a unit of work stays locked until it's over, so nobody reads or changes
+ * the balance, which may be undone yet. Records of a batch are locked in stripe order,
+ * stripe taken out of order by separate updates is only tried, see {@link StripedLocks}.
+ * Lock not taken, or not taken within {@value #LOCK_TIMEOUT_MILLIS} millis, is reported
+ * as a conflict.
+ */
+public class OffHeapStorage implements Storage {
+
+    private static final int RECORD = 24;
+    private static final int MSB = 0;
+    private static final int LSB = 8;
+    private static final int BALANCE = 16;
+    private static final int VERSION = 20;
+    private static final int SLOT = 4;
+
+    private static final int STRIPES = 1024;
+    private static final long LOCK_TIMEOUT_MILLIS = 1000;
+
+    private final UndoLog undoLog;
+    private final int capacity;
+    private final ByteBuffer records;
+    private final ByteBuffer index;
+    private final int indexMask;
+    private int size;
+
+    // index structure is changed by create only, records are guarded by stripes,
+    // records never move, so stripe is never taken while index lock is held
+    private final ReadWriteLock structure = new ReentrantReadWriteLock();
+    private final StripedLocks stripes = new StripedLocks(STRIPES, LOCK_TIMEOUT_MILLIS);
+
+    public OffHeapStorage(int capacity, UndoLog undoLog) {
+        if ((long) capacity * RECORD > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Capacity is too big [" + capacity + "]");
+        this.undoLog = undoLog;
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD);
+        int slots = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+        this.index = ByteBuffer.allocateDirect(slots * SLOT);
+        this.indexMask = slots - 1;
+    }
+
+    @Override
+    public Account details(UUID accountId) {
+        int record = find(accountId);
+        int stripe = lock(record);
+        try {
+            return new Account(accountId, new Money(balance(record)), version(record));
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        int count = size();
+        List<Account> accounts = new ArrayList<>(count);
+        for (int record = 0; record < count; record++) {
+            accounts.add(read(record));
+        }
+        return accounts;
+    }
+
+    /**
+     * Records never move, so only those created before the call are passed, without
+     * holding the index lock while the consumer works
+     */
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        int count = size();
+        for (int record = 0; record < count; record++) {
+            consumer.accept(read(record));
+        }
+    }
+
+    @Override
+    public void update(Account account) {
+        update(account, find(account.getAccountId()));
+    }
+
+    /**
+     * Updates records in stripe order, so batches never wait for each other out of order
+     */
+    @Override
+    public void update(Collection<Account> accounts) {
+        Map<Account, Integer> records = new IdentityHashMap<>(accounts.size());
+        for (Account account : accounts) {
+            records.put(account, find(account.getAccountId()));
+        }
+        List<Account> ordered = new ArrayList<>(accounts);
+        ordered.sort(Comparator.comparingInt(account -> stripes.stripe(records.get(account))));
+        for (Account account : ordered) {
+            update(account, records.get(account));
+        }
+    }
+
+    private void update(Account account, int record) {
+        int stripe = lock(record);
+        try {
+            if (version(record) != account.getVersion()) throw new RetryStorageException(
+                "Optimistic lock failed for account [" + account.getAccountId() + "]");
+            int balance = balance(record);
+            write(record, account.getBalance().getCents(), account.getVersion() + 1);
+            undoLog.record(() -> write(record, balance, account.getVersion()));
+        } catch (RuntimeException ex) {
+            stripes.unlock(stripe);
+            throw ex;
+        }
+        undoLog.release(() -> stripes.unlock(stripe));
+    }
+
+    @Override
+    public void create(Account account) {
+        long msb = account.getAccountId().getMostSignificantBits();
+        long lsb = account.getAccountId().getLeastSignificantBits();
+        structure.writeLock().lock();
+        try {
+            if (size == capacity)
+                throw new StorageException("Storage is full, cannot create account [" + account.getAccountId() + "]");
+            int slot = slot(msb, lsb);
+            while (true) {
+                int record = index.getInt(slot * SLOT) - 1;
+                if (record < 0) break;
+                if (matches(record, msb, lsb))
+                    throw new StorageException("Cannot create account [" + account.getAccountId() + "]");
+                slot = (slot + 1) & indexMask;
+            }
+
+            int record = size++;
+            int offset = record * RECORD;
+            records.putLong(offset + MSB, msb);
+            records.putLong(offset + LSB, lsb);
+            write(record, account.getBalance().getCents(), account.getVersion());
+            index.putInt(slot * SLOT, record + 1);
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of stored accounts
+     */
+    public int size() {
+        structure.readLock().lock();
+        try {
+            return size;
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    private Account read(int record) {
+        int stripe = lock(record);
+        try {
+            int offset = record * RECORD;
+            UUID accountId = new UUID(records.getLong(offset + MSB), records.getLong(offset + LSB));
+            return new Account(accountId, new Money(balance(record)), version(record));
+        } finally {
+            stripes.unlock(stripe);
+        }
+    }
+
+    private int find(UUID accountId) {
+        structure.readLock().lock();
+        try {
+            int record = find(accountId.getMostSignificantBits(), accountId.getLeastSignificantBits());
+            if (record < 0)
+                throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+            return record;
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    private int find(long msb, long lsb) {
+        int slot = slot(msb, lsb);
+        while (true) {
+            int record = index.getInt(slot * SLOT) - 1;
+            if (record < 0 || matches(record, msb, lsb)) return record;
+            slot = (slot + 1) & indexMask;
+        }
+    }
+
+    private boolean matches(int record, long msb, long lsb) {
+        int offset = record * RECORD;
+        return records.getLong(offset + MSB) == msb && records.getLong(offset + LSB) == lsb;
+    }
+
+    private int slot(long msb, long lsb) {
+        long hash = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16)) & indexMask;
+    }
+
+    private int balance(int record) {
+        return records.getInt(record * RECORD + BALANCE);
+    }
+
+    private int version(int record) {
+        return records.getInt(record * RECORD + VERSION);
+    }
+
+    private void write(int record, int balance, int version) {
+        records.putInt(record * RECORD + BALANCE, balance);
+        records.putInt(record * RECORD + VERSION, version);
+    }
+
+    // units of work hold stripes till they are over, so waiting for one is bounded
+    private int lock(int record) {
+        int stripe = stripes.stripe(record);
+        try {
+            if (stripes.lock(stripe)) return stripe;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting for record [" + record + "]", ex);
+        }
+        throw new RetryStorageException("Cannot lock record [" + record + "], it is busy");
+    }
+}
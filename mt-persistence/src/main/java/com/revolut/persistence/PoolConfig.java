@@ -0,0 +1,54 @@
+package com.revolut.persistence;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings of {@link ConnectionPool}
+ */
+@Value
+@Builder
+public class PoolConfig {
+
+    /**
+     * Maximum number of connections given away at the same time
+     */
+    @Builder.Default
+    private final int maxSize = 32;
+
+    /**
+     * Number of idle connections, which are never evicted
+     */
+    @Builder.Default
+    private final int minIdle = 2;
+
+    /**
+     * How long to wait for a free connection before giving up
+     */
+    @Builder.Default
+    private final long acquireTimeoutMillis = 5_000;
+
+    /**
+     * How long a connection could stay idle before it's closed
+     */
+    @Builder.Default
+    private final long idleTimeoutMillis = 60_000;
+
+    /**
+     * Connections idle for longer than that are validated before given away
+     */
+    @Builder.Default
+    private final long validateAfterMillis = 1_000;
+
+    /**
+     * How long validation query could take
+     */
+    @Builder.Default
+    private final int validationTimeoutSeconds = 1;
+
+    /**
+     * Number of prepared statements kept open by every connection, 0 turns caching off
+     */
+    @Builder.Default
+    private final int statementCacheSize = 64;
+}
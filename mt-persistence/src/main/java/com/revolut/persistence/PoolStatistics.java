@@ -0,0 +1,20 @@
+package com.revolut.persistence;
+
+import lombok.Value;
+
+/**
+ * Snapshot of {@link ConnectionPool} state
+ */
+@Value
+public class PoolStatistics {
+    private final int active;
+    private final int idle;
+    private final long acquired;
+    private final long timeouts;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    public long getAverageWaitNanos() {
+        return acquired == 0 ? 0 : totalWaitNanos / acquired;
+    }
+}
@@ -0,0 +1,410 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.MetricsRegistry;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UnitOfWork;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * {@link Storage} spread over several databases, every account lives in the shard chosen
+ * by hash of its id.
+ *
+ * Units of work have to go through {@link #unitOfWork()}. Transaction is started on a shard,
+ * when it's touched for the first time, so work on accounts of a single shard is committed
+ * as usual. When several shards are touched, they are committed in two phases: all of them
+ * but the first one are prepared, then the first one is committed together with the decision
+ * record, which is the point of no return, then the prepared ones are committed. Transactions
+ * left prepared by a crash are resolved by {@link #recover()}, as decision records say,
+ * no record means rollback.
+ *
+ * Prepared shard, which cannot commit after the decision, is retried a few times. If it still
+ * fails, its connection is kept out of the pool along with the prepared transaction, which is
+ * committed by the next unit of work.
+ */
+@Slf4j
+public class ShardedStorage implements Storage {
+
+    private static final Counter LOCAL_COMMITS = commits("local");
+    private static final Counter TWO_PHASE_COMMITS = commits("two_phase");
+    private static final int COMMIT_ATTEMPTS = 3;
+
+    private final List<DataSource> dataSources;
+    private final List<SqlStorage> shards;
+
+    // shards touched by the current unit of work, the first one decides
+    private final ThreadLocal<Set<Integer>> touched = new ThreadLocal<>();
+    // decided transactions, which have failed to commit on some shard
+    private final Queue<InDoubt> inDoubt = new ConcurrentLinkedQueue<>();
+
+    public ShardedStorage(List<DataSource> dataSources) {
+        if (dataSources.isEmpty()) throw new IllegalArgumentException("At least one shard is required");
+        this.dataSources = new ArrayList<>(dataSources);
+        this.shards = dataSources.stream().map(SqlStorage::new).collect(toList());
+    }
+
+    public int shardOf(UUID accountId) {
+        return Math.floorMod(accountId.hashCode(), shards.size());
+    }
+
+    @Override
+    public Account details(UUID accountId) {
+        return shard(shardOf(accountId)).details(accountId);
+    }
+
+    /**
+     * Reads accounts of every shard with a single statement of that shard
+     */
+    @Override
+    public Map<UUID, Account> details(Collection<UUID> accountIds) {
+        Map<Integer, List<UUID>> byShard = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            byShard.computeIfAbsent(shardOf(accountId), s -> new ArrayList<>()).add(accountId);
+        }
+        Map<UUID, Account> found = new HashMap<>();
+        byShard.forEach((shard, ids) -> found.putAll(shard(shard).details(ids)));
+
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        for (UUID accountId : accountIds) {
+            Account account = found.get(accountId);
+            if (account != null) accounts.put(accountId, account);
+        }
+        return accounts;
+    }
+
+    @Override
+    public void create(Account account) {
+        shard(shardOf(account.getAccountId())).create(account);
+    }
+
+    @Override
+    public void update(Account account) {
+        shard(shardOf(account.getAccountId())).update(account);
+    }
+
+    @Override
+    public void update(Collection<Account> accounts) {
+        Map<Integer, List<Account>> byShard = new LinkedHashMap<>();
+        for (Account account : accounts) {
+            byShard.computeIfAbsent(shardOf(account.getAccountId()), s -> new ArrayList<>()).add(account);
+        }
+        if (byShard.size() <= 1) {
+            byShard.forEach((shard, batch) -> shard(shard).update(batch));
+        } else {
+            atomically(() -> byShard.forEach((shard, batch) -> shard(shard).update(batch)));
+        }
+    }
+
+    @Override
+    public Account deposit(UUID accountId, Money amount) {
+        return shard(shardOf(accountId)).deposit(accountId, amount);
+    }
+
+    /**
+     * Transfer within a shard is made by conditional statements of that shard, the one
+     * between shards reads both accounts and updates them by version, unless any of them
+     * is striped, then both are changed in place in account id order
+     */
+    @Override
+    public void transfer(UUID from, UUID to, Money amount) {
+        int shard = shardOf(from);
+        if (shard == shardOf(to)) {
+            shard(shard).transfer(from, to, amount);
+        } else if (isStriped(from) || isStriped(to)) {
+            atomically(() -> {
+                if (from.compareTo(to) < 0) {
+                    shard(shard).withdraw(from, amount);
+                    shard(shardOf(to)).deposit(to, amount);
+                } else {
+                    shard(shardOf(to)).deposit(to, amount);
+                    shard(shard).withdraw(from, amount);
+                }
+            });
+        } else {
+            atomically(() -> Storage.super.transfer(from, to, amount));
+        }
+    }
+
+    /**
+     * Locks accounts in account id order across all the shards, not shard by shard
+     */
+    @Override
+    public Map<UUID, Account> lock(Collection<UUID> accountIds) {
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        for (UUID accountId : new TreeSet<>(accountIds)) {
+            accounts.putAll(shard(shardOf(accountId)).lock(Collections.singleton(accountId)));
+        }
+        return accounts;
+    }
+
+    @Override
+    public boolean supportsStriping() {
+        return true;
+    }
+
+    @Override
+    public void stripe(UUID accountId, int slots) {
+        shard(shardOf(accountId)).stripe(accountId, slots);
+    }
+
+    @Override
+    public boolean isStriped(UUID accountId) {
+        return shards.get(shardOf(accountId)).isStriped(accountId);
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        shards.forEach(shard -> accounts.addAll(shard.getAllAccounts()));
+        return accounts;
+    }
+
+    /**
+     * Takes a page from every shard and merges them
+     */
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        List<Account> accounts = new ArrayList<>();
+        shards.forEach(shard -> accounts.addAll(shard.getAccounts(after, limit)));
+        accounts.sort(Comparator.comparing(Account::getAccountId));
+        return accounts.size() > limit ? new ArrayList<>(accounts.subList(0, limit)) : accounts;
+    }
+
+    /**
+     * Accounts are ordered by id within a shard only
+     */
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        shards.forEach(shard -> shard.forEachAccount(consumer));
+    }
+
+    /**
+     * Unit of work spanning all the shards, nested ones join the outer one
+     */
+    public UnitOfWork unitOfWork() {
+        return work -> {
+            if (touched.get() != null) {
+                work.run();
+                return;
+            }
+
+            Set<Integer> shards = new LinkedHashSet<>();
+            touched.set(shards);
+            try {
+                work.run();
+                commit(shards);
+            } catch (Exception ex) {
+                rollback(shards);
+                throw ex;
+            } finally {
+                touched.remove();
+                dataSources.forEach(DataSource::closeConnection);
+            }
+        };
+    }
+
+    /**
+     * Resolves transactions left prepared by a crash. Has to be called before any unit
+     * of work is started, decision records are cleared afterwards.
+     */
+    public void recover() {
+        try {
+            Set<String> committed = new HashSet<>();
+            for (DataSource dataSource : dataSources) {
+                try (Statement stmt = dataSource.getConnection().createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT name FROM shard_decisions")) {
+                    while (rs.next()) committed.add(rs.getString(1));
+                }
+            }
+            for (int i = 0; i < dataSources.size(); i++) {
+                Connection connection = dataSources.get(i).getConnection();
+                List<String> inDoubt = new ArrayList<>();
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT \"TRANSACTION\" FROM INFORMATION_SCHEMA.IN_DOUBT")) {
+                    while (rs.next()) inDoubt.add(rs.getString(1));
+                }
+                for (String name : inDoubt) {
+                    boolean commit = committed.contains(name);
+                    log.warn("{} transaction [{}] left in doubt on shard [{}]", commit ? "Commit" : "Rollback", name, i);
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute((commit ? "COMMIT TRANSACTION " : "ROLLBACK TRANSACTION ") + name);
+                    }
+                }
+            }
+            for (DataSource dataSource : dataSources) {
+                try (Statement stmt = dataSource.getConnection().createStatement()) {
+                    stmt.executeUpdate("DELETE FROM shard_decisions");
+                }
+            }
+        } catch (SQLException ex) {
+            throw new StorageException("Cannot recover shards", ex);
+        } finally {
+            dataSources.forEach(DataSource::closeConnection);
+        }
+    }
+
+    private SqlStorage shard(int shard) {
+        Set<Integer> shards = touched.get();
+        if (shards != null && shards.add(shard)) {
+            try {
+                dataSources.get(shard).getConnection().setAutoCommit(false);
+            } catch (SQLException ex) {
+                throw new StorageException("Cannot begin transaction on shard [" + shard + "]", ex);
+            }
+        }
+        return this.shards.get(shard);
+    }
+
+    private void atomically(Runnable work) {
+        try {
+            unitOfWork().execute(work);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new StorageException("Cannot change accounts on several shards", ex);
+        }
+    }
+
+    private void commit(Set<Integer> shards) {
+        if (!inDoubt.isEmpty()) completeInDoubt();
+        if (shards.isEmpty()) return;
+        Iterator<Integer> iterator = shards.iterator();
+        Connection coordinator = dataSources.get(iterator.next()).getConnection();
+        if (!iterator.hasNext()) {
+            try {
+                coordinator.commit();
+            } catch (SQLException ex) {
+                throw SqlStorage.failure("Cannot commit shards " + shards, ex);
+            }
+            LOCAL_COMMITS.increment();
+            return;
+        }
+
+        String name = "TX_" + UUID.randomUUID().toString().replace("-", "");
+        List<Integer> participants = new ArrayList<>();
+        iterator.forEachRemaining(participants::add);
+        try {
+            for (int participant : participants) {
+                try (Statement stmt = dataSources.get(participant).getConnection().createStatement()) {
+                    stmt.execute("PREPARE COMMIT " + name);
+                }
+            }
+            try (PreparedStatement ps = coordinator.prepareStatement("INSERT INTO shard_decisions (name) VALUES (?)")) {
+                ps.setString(1, name);
+                ps.executeUpdate();
+            }
+            coordinator.commit();
+        } catch (SQLException ex) {
+            throw SqlStorage.failure("Cannot prepare transaction [" + name + "] on shards " + shards, ex);
+        }
+        TWO_PHASE_COMMITS.increment();
+
+        // decision is made, prepared transaction is never rolled back from now on
+        boolean completed = true;
+        for (int participant : participants) {
+            if (!commit(name, participant, dataSources.get(participant).getConnection())) {
+                completed = false;
+                inDoubt.add(new InDoubt(name, participant, dataSources.get(participant).detachConnection()));
+            }
+        }
+        if (!completed) return;
+        try (PreparedStatement ps = coordinator.prepareStatement("DELETE FROM shard_decisions WHERE name = ?")) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+            coordinator.commit();
+        } catch (SQLException ex) {
+            log.warn("Cannot clear decision of transaction [{}]", name, ex);
+        }
+    }
+
+    private boolean commit(String name, int shard, Connection connection) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                connection.commit();
+                return true;
+            } catch (SQLException ex) {
+                if (attempt == COMMIT_ATTEMPTS) {
+                    log.error("Transaction [{}] is left in doubt on shard [{}]", name, shard, ex);
+                    return false;
+                }
+                log.warn("Cannot commit transaction [{}] on shard [{}], attempt [{}]", name, shard, attempt, ex);
+            }
+        }
+    }
+
+    // decision records are left for recovery, they don't matter once shards have committed
+    private void completeInDoubt() {
+        for (int i = inDoubt.size(); i > 0; i--) {
+            InDoubt transaction = inDoubt.poll();
+            if (transaction == null) return;
+            if (!commit(transaction.name, transaction.shard, transaction.connection)) {
+                inDoubt.add(transaction);
+                continue;
+            }
+            log.info("Transaction [{}] left in doubt is committed on shard [{}]", transaction.name, transaction.shard);
+            try {
+                transaction.connection.close();
+            } catch (SQLException ex) {
+                log.warn("Cannot close connection of transaction [{}]", transaction.name, ex);
+            }
+        }
+    }
+
+    private void rollback(Set<Integer> shards) {
+        for (int shard : shards) {
+            try {
+                dataSources.get(shard).getConnection().rollback();
+            } catch (SQLException ex) {
+                log.error("Cannot rollback shard [{}]", shard, ex);
+            }
+        }
+    }
+
+    private static Counter commits(String protocol) {
+        return MetricsRegistry.DEFAULT.counter(
+            "db_shard_commits_total", "Units of work committed on sharded storage", "protocol", protocol);
+    }
+
+    /**
+     * Prepared transaction along with the connection it lives on
+     */
+    private static class InDoubt {
+        private final String name;
+        private final int shard;
+        private final Connection connection;
+
+        InDoubt(String name, int shard, Connection connection) {
+            this.name = name;
+            this.shard = shard;
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.revolut.persistence;
+
+import com.revolut.core.bank.Transfer;
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.Histogram;
+import com.revolut.core.metrics.MetricsRegistry;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.Ledger;
+import com.revolut.core.storage.LedgerEntry;
+import com.revolut.core.storage.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Implementation of a {@link Ledger} based on SQL engine.
+ *
+ * Within units of work wrapped by {@link #wrap(UnitOfWork)} transfers are collected and
+ * inserted by a single batch right before the unit of work is committed, so a unit of work
+ * pays for one more statement, however many transfers it has made. Outside of them every
+ * transfer is inserted at once. Entries of an account are read by index on either side
+ * of transfers, newest first.
+ */
+public class SqlLedger implements Ledger {
+    private static final Histogram WRITE = MetricsRegistry.DEFAULT.histogram(
+        "db_statement_seconds", "Time spent in storage calls, including connection wait", "statement", "ledger_insert");
+    private static final Counter ENTRIES = MetricsRegistry.DEFAULT.counter(
+        "db_ledger_entries_total", "Transfers recorded by the ledger");
+
+    private final DataSource dataSource;
+    private final ThreadLocal<List<Transfer>> pending = new ThreadLocal<>();
+
+    public SqlLedger(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void record(Transfer transfer) {
+        record(Collections.singletonList(transfer));
+    }
+
+    @Override
+    public void record(List<Transfer> transfers) {
+        List<Transfer> collected = pending.get();
+        if (collected != null) {
+            collected.addAll(transfers);
+        } else {
+            insert(transfers);
+        }
+    }
+
+    /**
+     * Unit of work, which writes transfers recorded by the work before the wrapped one commits
+     */
+    public UnitOfWork wrap(UnitOfWork unitOfWork) {
+        return work -> unitOfWork.execute(() -> {
+            if (pending.get() != null) {
+                work.run();
+                return;
+            }
+
+            List<Transfer> collected = new ArrayList<>();
+            pending.set(collected);
+            try {
+                work.run();
+            } finally {
+                pending.remove();
+            }
+            insert(collected);
+        });
+    }
+
+    @Override
+    public List<LedgerEntry> entries(UUID accountId, Long before, int limit) {
+        try {
+            List<LedgerEntry> entries = dataSource.read(connection -> {
+                List<LedgerEntry> found = new ArrayList<>();
+                found.addAll(select(connection, "fromId", accountId, before, limit));
+                found.addAll(select(connection, "toId", accountId, before, limit));
+                return found;
+            });
+            entries.sort(Comparator.comparingLong(LedgerEntry::getId).reversed());
+            return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+        } catch (SQLException ex) {
+            throw SqlStorage.failure("Cannot read transfers of account [" + accountId + "]", ex);
+        }
+    }
+
+    private void insert(List<Transfer> transfers) {
+        if (transfers.isEmpty()) return;
+        long started = System.nanoTime();
+        try {
+            dataSource.write(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO transfers (fromId, toId, amount, created) VALUES (?, ?, ?, ?)")
+                ) {
+                    Timestamp now = Timestamp.from(Instant.now());
+                    for (Transfer transfer : transfers) {
+                        ps.setObject(1, transfer.getFrom());
+                        ps.setObject(2, transfer.getTo());
+                        ps.setInt(3, transfer.getAmount().getCents());
+                        ps.setTimestamp(4, now);
+                        ps.addBatch();
+                    }
+                    return ps.executeBatch();
+                }
+            });
+            ENTRIES.add(transfers.size());
+        } catch (SQLException ex) {
+            throw SqlStorage.failure("Cannot record [" + transfers.size() + "] transfers", ex);
+        } finally {
+            WRITE.recordSince(started);
+        }
+    }
+
+    // column is substituted from a fixed set, never from the input
+    private static List<LedgerEntry> select(
+        Connection connection, String column, UUID accountId, Long before, int limit
+    ) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "SELECT id, fromId, toId, amount, created FROM transfers WHERE " + column + " = ? AND id < ? "
+                + "ORDER BY id DESC LIMIT ?")
+        ) {
+            ps.setObject(1, accountId);
+            ps.setLong(2, before == null ? Long.MAX_VALUE : before);
+            ps.setInt(3, limit);
+            ResultSet rs = ps.executeQuery();
+            List<LedgerEntry> entries = new ArrayList<>();
+            while (rs.next()) {
+                entries.add(new LedgerEntry(
+                    rs.getLong("id"),
+                    (UUID) rs.getObject("fromId"),
+                    (UUID) rs.getObject("toId"),
+                    new Money(rs.getInt("amount")),
+                    rs.getTimestamp("created").toInstant()));
+            }
+            return entries;
+        }
+    }
+}
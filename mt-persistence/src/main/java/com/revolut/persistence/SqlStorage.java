@@ -1,110 +1,687 @@
 package com.revolut.persistence;
 
 import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.Histogram;
+import com.revolut.core.metrics.MetricsRegistry;
 import com.revolut.core.money.Money;
 import com.revolut.core.storage.AccountDoesNotExistException;
 import com.revolut.core.storage.RetryStorageException;
 import com.revolut.core.storage.Storage;
 import com.revolut.core.storage.StorageException;
 import lombok.extern.slf4j.Slf4j;
+import org.h2.api.ErrorCode;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static java.util.Collections.singletonList;
 
 /**
- * Implementation of a {@link Storage} based on SQL engine
+ * Implementation of a {@link Storage} based on SQL engine. Calls made outside of
+ * a transaction hold a connection only while their statements run.
+ *
+ * Balance of striped account is kept in {@code account_slots}, deposit goes to a random
+ * slot, withdrawal takes from a random slot, if it has enough, otherwise locks all the slots
+ * and takes from them one by one. Reads sum the slots up where {@code accounts.slots} says so.
+ * Striped accounts are remembered by the instance to pick the statements of changes, whenever
+ * the database disagrees, e.g. striping transaction has been rolled back, the account is
+ * read again under the row lock and the changes go the way the database says.
  */
 @Slf4j
 public class SqlStorage implements Storage {
 
+    private static final int FETCH_SIZE = 1000;
+
+    private static final Histogram DETAILS = statement("details");
+    private static final Histogram DETAILS_MANY = statement("details_many");
+    private static final Histogram CREATE = statement("create");
+    private static final Histogram UPDATE = statement("update");
+    private static final Histogram UPDATE_BATCH = statement("update_batch");
+    private static final Histogram DEPOSIT = statement("deposit");
+    private static final Histogram TRANSFER = statement("transfer");
+    private static final Histogram PAGE = statement("page");
+    private static final Histogram LOCK = statement("lock");
+    private static final Counter CONFLICTS = MetricsRegistry.DEFAULT.counter(
+        "db_optimistic_lock_conflicts_total", "Updates failed because account version has changed");
+
     private final DataSource dataSource;
 
+    // number of slots of striped accounts, read on first use
+    private volatile Map<UUID, Integer> striped;
+
     public SqlStorage(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
     @Override
     public Account details(UUID accountId) {
-        Connection connection = dataSource.getConnection();
-        try (PreparedStatement ps = connection.prepareStatement(
-            "SELECT * FROM accounts WHERE accountId = ?")
-        ) {
-            ps.setString(1, accountId.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                Money amount = new Money(rs.getInt("balance"));
-                int version = rs.getInt("version");
-                return new Account(accountId, amount, version);
-            } else {
-                throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
-            }
+        long started = System.nanoTime();
+        try {
+            return dataSource.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(
+                    accountColumns() + " FROM accounts a WHERE a.accountId = ?")
+                ) {
+                    ps.setObject(1, accountId);
+                    ResultSet rs = ps.executeQuery();
+                    if (rs.next()) {
+                        Money amount = new Money(rs.getInt("balance"));
+                        int version = rs.getInt("version");
+                        return new Account(accountId, amount, version);
+                    } else {
+                        throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+                    }
+                }
+            });
         } catch (SQLException e) {
             throw new StorageException();
+        } finally {
+            DETAILS.recordSince(started);
         }
     }
 
+    /**
+     * Reads all the accounts with a single statement, ids are passed as one array parameter,
+     * so the statement is the same whatever number of ids is asked for
+     */
     @Override
-    public void create(Account account) {
-        Connection connection = dataSource.getConnection();
+    public Map<UUID, Account> details(Collection<UUID> accountIds) {
+        if (accountIds.isEmpty()) return new LinkedHashMap<>();
+        long started = System.nanoTime();
+        Object[] ids = new LinkedHashSet<>(accountIds).toArray();
+        // joined rather than IN (SELECT ...), H2 evaluates parameterized subquery of IN once per statement
+        String sql = accountColumns() + " FROM TABLE(id UUID = ?) t INNER JOIN accounts a ON a.accountId = t.id";
+        try {
+            Map<UUID, Account> found = dataSource.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setObject(1, ids);
+                    Map<UUID, Account> accounts = new HashMap<>();
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        Account account = account(rs);
+                        accounts.put(account.getAccountId(), account);
+                    }
+                    return accounts;
+                }
+            });
+            Map<UUID, Account> accounts = new LinkedHashMap<>();
+            for (Object id : ids) {
+                Account account = found.get(id);
+                if (account != null) accounts.put(account.getAccountId(), account);
+            }
+            return accounts;
+        } catch (SQLException e) {
+            throw new StorageException("Cannot read [" + ids.length + "] accounts", e);
+        } finally {
+            DETAILS_MANY.recordSince(started);
+        }
+    }
 
-        try (
-            PreparedStatement ps = connection.prepareStatement(
-                "INSERT INTO accounts (accountId, balance, version) VALUES (?, ?, ?)")
-        ) {
-            ps.setObject(1, account.getAccountId());
-            ps.setInt(2, account.getBalance().getCents());
-            ps.setInt(3, account.getVersion());
+    @Override
+    public void create(Account account) {
+        long started = System.nanoTime();
+        try {
+            dataSource.write(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO accounts (accountId, balance, version) VALUES (?, ?, ?)")
+                ) {
+                    ps.setObject(1, account.getAccountId());
+                    ps.setInt(2, account.getBalance().getCents());
+                    ps.setInt(3, account.getVersion());
 
-            int updated = ps.executeUpdate();
-            if (updated == 0) throw new RetryStorageException();
+                    int updated = ps.executeUpdate();
+                    if (updated == 0) throw new RetryStorageException();
+                    return null;
+                }
+            });
         } catch (SQLException ex) {
             throw new StorageException("Cannot create account [" + account.getAccountId() + "]");
+        } finally {
+            CREATE.recordSince(started);
         }
     }
 
     @Override
     public void update(Account account) {
-        Connection connection = dataSource.getConnection();
+        rejectStriped(singletonList(account));
+        long started = System.nanoTime();
+        try {
+            dataSource.write(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(
+                    "UPDATE accounts SET balance = ?, version = ? WHERE accountId = ? AND version = ? AND slots = 0")
+                ) {
+                    ps.setInt(1, account.getBalance().getCents());
+                    ps.setInt(2, account.getVersion() + 1);
+                    ps.setObject(3, account.getAccountId());
+                    ps.setInt(4, account.getVersion());
 
-        try (
-            PreparedStatement ps = connection.prepareStatement(
-                "UPDATE accounts SET balance = ?, version = ? WHERE accountId = ? AND version = ?")
-        ) {
-            ps.setInt(1, account.getBalance().getCents());
-            ps.setInt(2, account.getVersion() + 1);
-            ps.setObject(3, account.getAccountId());
-            ps.setInt(4, account.getVersion());
-
-            int updated = ps.executeUpdate();
-            if (updated == 0) throw new RetryStorageException(
-                "Optimistic lock failed for account [" + account.getAccountId() + "]");
+                    int updated = ps.executeUpdate();
+                    if (updated == 0) throw conflict(
+                        "Optimistic lock failed for account [" + account.getAccountId() + "]");
+                    return null;
+                }
+            });
         } catch (SQLException ex) {
-            throw new StorageException("Cannot update account [" + account.getAccountId() + "]");
+            throw failure("Cannot update account [" + account.getAccountId() + "]", ex);
+        } finally {
+            UPDATE.recordSince(started);
         }
     }
 
+    /**
+     * Sends all updates to the database as a single JDBC batch
+     */
     @Override
-    public List<Account> getAllAccounts() {
-        Connection connection = dataSource.getConnection();
+    public void update(Collection<Account> accounts) {
+        if (accounts.isEmpty()) return;
+        rejectStriped(accounts);
+        long started = System.nanoTime();
+        try {
+            dataSource.write(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(
+                    "UPDATE accounts SET balance = ?, version = ? WHERE accountId = ? AND version = ? AND slots = 0")
+                ) {
+                    for (Account account : accounts) {
+                        ps.setInt(1, account.getBalance().getCents());
+                        ps.setInt(2, account.getVersion() + 1);
+                        ps.setObject(3, account.getAccountId());
+                        ps.setInt(4, account.getVersion());
+                        ps.addBatch();
+                    }
+
+                    int[] updated = ps.executeBatch();
+                    int i = 0;
+                    for (Account account : accounts) {
+                        if (updated[i++] == 0) throw conflict(
+                            "Optimistic lock failed for account [" + account.getAccountId() + "]");
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException ex) {
+            throw failure("Cannot update [" + accounts.size() + "] accounts", ex);
+        } finally {
+            UPDATE_BATCH.recordSince(started);
+        }
+    }
+
+    /**
+     * Adds money with a single statement, concurrent deposits wait for the row lock
+     * instead of failing on version
+     */
+    @Override
+    public Account deposit(UUID accountId, Money amount) {
+        long started = System.nanoTime();
+        try {
+            return dataSource.write(connection -> {
+                credit(connection, accountId, amount);
+                return details(accountId);
+            });
+        } catch (SQLException ex) {
+            throw failure("Cannot deposit to account [" + accountId + "]", ex);
+        } finally {
+            DEPOSIT.recordSince(started);
+        }
+    }
+
+    /**
+     * Moves money with two conditional statements. Rows are locked in account id order,
+     * so opposite transfers don't deadlock. Statements run in a transaction of their own,
+     * or within a savepoint of the current one, so a failed transfer changes nothing,
+     * whichever slots it has touched.
+     */
+    @Override
+    public void transfer(UUID from, UUID to, Money amount) {
+        long started = System.nanoTime();
+        try {
+            dataSource.write(connection -> atomically(connection, () -> {
+                if (from.compareTo(to) < 0) {
+                    debit(connection, from, amount);
+                    credit(connection, to, amount);
+                } else {
+                    credit(connection, to, amount);
+                    debit(connection, from, amount);
+                }
+            }));
+        } catch (SQLException ex) {
+            throw failure("Cannot transfer from [" + from + "] to [" + to + "]", ex);
+        } finally {
+            TRANSFER.recordSince(started);
+        }
+    }
+
+    /**
+     * Locks rows with {@code SELECT ... FOR UPDATE} one by one in account id order, the same
+     * order transfers lock them in. Concurrent lockers wait up to the lock timeout of the
+     * database, then fail with {@link RetryStorageException}. Has no effect outside of
+     * a transaction. Striped accounts are changed in place only, so they cannot be locked.
+     */
+    @Override
+    public Map<UUID, Account> lock(Collection<UUID> accountIds) {
+        long started = System.nanoTime();
+        try {
+            return dataSource.write(connection -> {
+                Map<UUID, Account> accounts = new LinkedHashMap<>();
+                try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT balance, version, slots FROM accounts WHERE accountId = ? FOR UPDATE")
+                ) {
+                    for (UUID accountId : new TreeSet<>(accountIds)) {
+                        ps.setObject(1, accountId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next()) continue;
+                            if (striped(accountId, rs.getInt(3)) > 0) throw striped(accountId);
+                            accounts.put(accountId, new Account(accountId, new Money(rs.getInt(1)), rs.getInt(2)));
+                        }
+                    }
+                    return accounts;
+                }
+            });
+        } catch (SQLException ex) {
+            throw failure("Cannot lock accounts " + accountIds, ex);
+        } finally {
+            LOCK.recordSince(started);
+        }
+    }
+
+    /**
+     * Takes money from the account in place, the way transfers do
+     */
+    void withdraw(UUID accountId, Money amount) {
+        try {
+            dataSource.write(connection -> {
+                debit(connection, accountId, amount);
+                return null;
+            });
+        } catch (SQLException ex) {
+            throw failure("Cannot withdraw from account [" + accountId + "]", ex);
+        }
+    }
+
+    /**
+     * Moves balance of the account into given number of slots. Runs in its own transaction,
+     * unless there is one already. If that one is rolled back, the account is found not
+     * striped by the first change made to it.
+     */
+    @Override
+    public boolean supportsStriping() {
+        return true;
+    }
+
+    @Override
+    public void stripe(UUID accountId, int slots) {
+        if (slots < 1) throw new IllegalArgumentException("At least one slot is required");
+        try {
+            dataSource.write(connection -> atomically(connection, () -> stripe(connection, accountId, slots)));
+        } catch (SQLException ex) {
+            throw failure("Cannot stripe account [" + accountId + "]", ex);
+        }
+        striped().put(accountId, slots);
+    }
+
+    @Override
+    public boolean isStriped(UUID accountId) {
+        return striped().containsKey(accountId);
+    }
+
+    // runs the statements in a transaction, or within a savepoint of the current one
+    private static Void atomically(Connection connection, SqlStatements statements) throws SQLException {
+        boolean standalone = connection.getAutoCommit();
+        Savepoint savepoint = null;
+        if (standalone) connection.setAutoCommit(false);
+        else savepoint = connection.setSavepoint();
+        try {
+            statements.run();
+            if (standalone) connection.commit();
+            else connection.releaseSavepoint(savepoint);
+        } catch (SQLException | RuntimeException ex) {
+            if (standalone) connection.rollback();
+            else connection.rollback(savepoint);
+            throw ex;
+        } finally {
+            if (standalone) connection.setAutoCommit(true);
+        }
+        return null;
+    }
+
+    private void rejectStriped(Collection<Account> accounts) {
+        List<UUID> suspected = new ArrayList<>();
+        for (Account account : accounts) {
+            if (isStriped(account.getAccountId())) suspected.add(account.getAccountId());
+        }
+        if (suspected.isEmpty()) return;
+        try {
+            dataSource.write(connection -> {
+                for (UUID accountId : suspected) {
+                    if (slots(connection, accountId) > 0) throw striped(accountId);
+                }
+                return null;
+            });
+        } catch (SQLException ex) {
+            throw failure("Cannot read striping of accounts " + suspected, ex);
+        }
+    }
+
+    private void stripe(Connection connection, UUID accountId, int slots) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE accounts SET slots = ?, version = version + 1 WHERE accountId = ? AND slots = 0")
+        ) {
+            ps.setInt(1, slots);
+            ps.setObject(2, accountId);
+            if (ps.executeUpdate() == 0) {
+                details(accountId);
+                throw new StorageException("Account [" + accountId + "] is striped already");
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+            "INSERT INTO account_slots (accountId, slot, balance) SELECT accountId, 0, balance FROM accounts WHERE accountId = ?")
+        ) {
+            ps.setObject(1, accountId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+            "INSERT INTO account_slots (accountId, slot, balance) VALUES (?, ?, 0)")
+        ) {
+            for (int slot = 1; slot < slots; slot++) {
+                ps.setObject(1, accountId);
+                ps.setInt(2, slot);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE accounts SET balance = 0 WHERE accountId = ?")
+        ) {
+            ps.setObject(1, accountId);
+            ps.executeUpdate();
+        }
+    }
+
+    private void credit(Connection connection, UUID accountId, Money amount) throws SQLException {
+        Integer known = striped().get(accountId);
+        if (known != null ? credit(connection, accountId, amount, known) : creditBalance(connection, accountId, amount))
+            return;
+        // remembered striping is stale, the database decides
+        int slots = slots(connection, accountId);
+        if (slots > 0 ? credit(connection, accountId, amount, slots) : creditBalance(connection, accountId, amount))
+            return;
+        throw new StorageException("Slots of account [" + accountId + "] are missing");
+    }
+
+    private static boolean credit(Connection connection, UUID accountId, Money amount, int slots) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE account_slots SET balance = balance + ? WHERE accountId = ? AND slot = ?")
+        ) {
+            ps.setInt(1, amount.getCents());
+            ps.setObject(2, accountId);
+            ps.setInt(3, ThreadLocalRandom.current().nextInt(slots));
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    private static boolean creditBalance(Connection connection, UUID accountId, Money amount) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE accountId = ? AND slots = 0")
+        ) {
+            ps.setInt(1, amount.getCents());
+            ps.setObject(2, accountId);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    private void debit(Connection connection, UUID accountId, Money amount) throws SQLException {
+        Integer known = striped().get(accountId);
+        if (known != null ? debit(connection, accountId, amount, known) : debitBalance(connection, accountId, amount))
+            return;
+        int slots = slots(connection, accountId);
+        if (slots > 0 ? debit(connection, accountId, amount, slots) : debitBalance(connection, accountId, amount))
+            return;
+        if (slots == 0) throw new AccountException(AccountException.NOT_ENOUGH_MONEY);
+        throw new StorageException("Slots of account [" + accountId + "] are missing");
+    }
+
+    // false if there is not enough money or the account is striped
+    private static boolean debitBalance(Connection connection, UUID accountId, Money amount) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE accounts SET balance = balance - ?, version = version + 1 WHERE accountId = ? AND balance >= ? AND slots = 0")
+        ) {
+            ps.setInt(1, amount.getCents());
+            ps.setObject(2, accountId);
+            ps.setInt(3, amount.getCents());
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * @return {@code false} if the account has no slots, e.g. its striping has been rolled back
+     * @throws AccountException if the slots don't have enough money
+     */
+    private static boolean debit(Connection connection, UUID accountId, Money amount, int slots) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE account_slots SET balance = balance - ? WHERE accountId = ? AND slot = ? AND balance >= ?")
+        ) {
+            ps.setInt(1, amount.getCents());
+            ps.setObject(2, accountId);
+            ps.setInt(3, ThreadLocalRandom.current().nextInt(slots));
+            ps.setInt(4, amount.getCents());
+            if (ps.executeUpdate() == 1) return true;
+        }
+
+        // single slot doesn't have enough, all of them are locked and drawn one by one
+        List<int[]> balances = new ArrayList<>(slots);
+        long total = 0;
         try (PreparedStatement ps = connection.prepareStatement(
-            "SELECT * FROM accounts"
-        )) {
-            List<Account> accounts = new ArrayList<>();
+            "SELECT slot, balance FROM account_slots WHERE accountId = ? ORDER BY slot FOR UPDATE")
+        ) {
+            ps.setObject(1, accountId);
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
-                UUID accountId = UUID.fromString(rs.getString("accountId"));
-                Money balance = new Money(rs.getInt("balance"));
-                int version = rs.getInt("version");
-                accounts.add(new Account(accountId, balance, version));
+                balances.add(new int[]{rs.getInt(1), rs.getInt(2)});
+                total += rs.getInt(2);
             }
-            return accounts;
+        }
+        if (balances.isEmpty()) return false;
+        if (total < amount.getCents()) throw new AccountException(AccountException.NOT_ENOUGH_MONEY);
+
+        try (PreparedStatement ps = connection.prepareStatement(
+            "UPDATE account_slots SET balance = balance - ? WHERE accountId = ? AND slot = ?")
+        ) {
+            int remaining = amount.getCents();
+            for (int[] slot : balances) {
+                if (remaining == 0) break;
+                if (slot[1] <= 0) continue;
+                int taken = Math.min(slot[1], remaining);
+                ps.setInt(1, taken);
+                ps.setObject(2, accountId);
+                ps.setInt(3, slot[0]);
+                ps.addBatch();
+                remaining -= taken;
+            }
+            ps.executeBatch();
+        }
+        return true;
+    }
+
+    // number of slots the database has for the account, read under the row lock, so
+    // a transaction striping it is waited for; remembered striping is corrected to match
+    private int slots(Connection connection, UUID accountId) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+            "SELECT slots FROM accounts WHERE accountId = ? FOR UPDATE")
+        ) {
+            ps.setObject(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next())
+                    throw new AccountDoesNotExistException("There is no account with accountId [" + accountId + "]");
+                return striped(accountId, rs.getInt(1));
+            }
+        }
+    }
+
+    private int striped(UUID accountId, int slots) {
+        if (slots > 0) striped().put(accountId, slots);
+        else striped().remove(accountId);
+        return slots;
+    }
+
+    private Map<UUID, Integer> striped() {
+        Map<UUID, Integer> accounts = striped;
+        if (accounts != null) return accounts;
+        synchronized (this) {
+            if (striped == null) {
+                Map<UUID, Integer> loaded = new ConcurrentHashMap<>();
+                try {
+                    dataSource.read(connection -> {
+                        try (PreparedStatement ps = connection.prepareStatement(
+                            "SELECT accountId, slots FROM accounts WHERE slots > 0")
+                        ) {
+                            ResultSet rs = ps.executeQuery();
+                            while (rs.next()) {
+                                loaded.put((UUID) rs.getObject(1), rs.getInt(2));
+                            }
+                            return null;
+                        }
+                    });
+                } catch (SQLException e) {
+                    throw new StorageException("Cannot read striped accounts", e);
+                }
+                striped = loaded;
+            }
+            return striped;
+        }
+    }
+
+    private static StorageException striped(UUID accountId) {
+        return new StorageException("Account [" + accountId + "] is striped, it's changed by deposits and transfers only");
+    }
+
+    @FunctionalInterface
+    private interface SqlStatements {
+        void run() throws SQLException;
+    }
+
+    private static RetryStorageException conflict(String message) {
+        CONFLICTS.increment();
+        return new RetryStorageException(message);
+    }
+
+    private static Histogram statement(String name) {
+        return MetricsRegistry.DEFAULT.histogram(
+            "db_statement_seconds", "Time spent in storage calls, including connection wait", "statement", name);
+    }
+
+    // waiting for a lock too long or losing it to a concurrent transaction is worth retrying
+    static StorageException failure(String message, SQLException ex) {
+        switch (ex.getErrorCode()) {
+            case ErrorCode.LOCK_TIMEOUT_1:
+            case ErrorCode.DEADLOCK_1:
+            case ErrorCode.CONCURRENT_UPDATE_1:
+                return new RetryStorageException(message, ex);
+            default:
+                return new StorageException(message, ex);
+        }
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        String sql = selectAccounts();
+        try {
+            return dataSource.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    List<Account> accounts = new ArrayList<>();
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        accounts.add(account(rs));
+                    }
+                    return accounts;
+                }
+            });
         } catch (SQLException e) {
             throw new StorageException("Cannot read all accounts");
         }
     }
+
+    /**
+     * Reads page through primary key index, so it costs the same no matter how far the page is
+     */
+    @Override
+    public List<Account> getAccounts(UUID after, int limit) {
+        long started = System.nanoTime();
+        String sql = after == null
+            ? selectAccounts() + " ORDER BY a.accountId LIMIT ?"
+            : selectAccounts() + " WHERE a.accountId > ? ORDER BY a.accountId LIMIT ?";
+        try {
+            return dataSource.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    int i = 1;
+                    if (after != null) ps.setObject(i++, after);
+                    ps.setInt(i, limit);
+                    List<Account> accounts = new ArrayList<>(limit);
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        accounts.add(account(rs));
+                    }
+                    return accounts;
+                }
+            });
+        } catch (SQLException e) {
+            throw new StorageException("Cannot read accounts after [" + after + "]");
+        } finally {
+            PAGE.recordSince(started);
+        }
+    }
+
+    /**
+     * Passes accounts to the consumer right from the result set, so none of them are kept
+     */
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        String sql = selectAccounts() + " ORDER BY a.accountId";
+        try {
+            dataSource.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setFetchSize(FETCH_SIZE);
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        consumer.accept(account(rs));
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw new StorageException("Cannot read all accounts", e);
+        }
+    }
+
+    private static String selectAccounts() {
+        return accountColumns() + " FROM accounts a";
+    }
+
+    // slots are summed up only for accounts the database has them for
+    private static String accountColumns() {
+        return "SELECT a.accountId, a.balance + CASE WHEN a.slots = 0 THEN 0 ELSE COALESCE("
+            + "(SELECT SUM(s.balance) FROM account_slots s WHERE s.accountId = a.accountId), 0) END AS balance, "
+            + "a.version";
+    }
+
+    private static Account account(ResultSet rs) throws SQLException {
+        UUID accountId = (UUID) rs.getObject("accountId");
+        Money balance = new Money(rs.getInt("balance"));
+        int version = rs.getInt("version");
+        return new Account(accountId, balance, version);
+    }
 }
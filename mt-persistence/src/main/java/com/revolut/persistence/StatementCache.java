@@ -0,0 +1,153 @@
+package com.revolut.persistence;
+
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of a single physical connection by their SQL, the least recently
+ * used ones are closed above the capacity.
+ *
+ * Statements are given away as proxies, closing proxy closes its last result set and
+ * returns the statement back to the cache. While a statement is given away, the same SQL
+ * gets a fresh statement, which is not cached. Not thread safe, connection is used by
+ * a single thread at a time.
+ */
+@Slf4j
+class StatementCache {
+
+    private static final Counter HITS = MetricsRegistry.DEFAULT.counter(
+        "db_statement_cache_hits_total", "Prepared statements reused from the connection cache");
+    private static final Counter MISSES = MetricsRegistry.DEFAULT.counter(
+        "db_statement_cache_misses_total", "Prepared statements created because the cache had none");
+
+    private final Connection connection;
+    private final Map<String, Cached> statements;
+
+    StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                if (size() <= capacity) return false;
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        Cached cached = statements.get(sql);
+        if (cached == null || cached.evicted) {
+            MISSES.increment();
+            cached = new Cached(connection.prepareStatement(sql));
+            statements.put(sql, cached);
+        } else if (cached.inUse) {
+            return connection.prepareStatement(sql);
+        } else {
+            HITS.increment();
+        }
+        cached.inUse = true;
+        return cached.proxy;
+    }
+
+    /**
+     * Takes back statements left open, when the connection is returned to the pool
+     */
+    void reset() {
+        for (Cached cached : statements.values()) {
+            if (cached.inUse) cached.giveBack();
+        }
+    }
+
+    void close() {
+        for (Cached cached : new ArrayList<>(statements.values())) {
+            cached.evict();
+        }
+        statements.clear();
+    }
+
+    /**
+     * Physical statement along with its single proxy
+     */
+    private static class Cached {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private ResultSet resultSet;
+        private boolean inUse;
+        private boolean evicted;
+
+        Cached(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (inUse) giveBack();
+                            return null;
+                        case "isClosed":
+                            return !inUse || statement.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Cached[" + statement + "]";
+                        default:
+                            if (!inUse) throw new SQLException("Statement is closed");
+                            try {
+                                Object result = method.invoke(statement, args);
+                                if (result instanceof ResultSet) resultSet = (ResultSet) result;
+                                return result;
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+        }
+
+        void giveBack() {
+            inUse = false;
+            try {
+                if (resultSet != null) resultSet.close();
+                resultSet = null;
+                if (evicted) {
+                    statement.close();
+                } else {
+                    statement.clearParameters();
+                    statement.clearBatch();
+                }
+            } catch (SQLException e) {
+                log.warn("Cannot reset cached statement, closing it", e);
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        // statement given away is closed once it's back
+        void evict() {
+            evicted = true;
+            if (!inUse) closeQuietly();
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.warn("Cannot close statement", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.revolut.persistence;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks for storages, which keep changed records locked till the unit of work is over.
+ *
+ * Thread waits only for a stripe higher than any stripe it holds, so waiting threads never
+ * form a cycle. Stripe, which would be taken out of order, is only tried, so opposite
+ * transfers fail one of them right away instead of waiting for each other till the timeout.
+ */
+class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutMillis;
+    // highest stripe the thread holds and number of its holds, lower ones don't reset the highest
+    private final ThreadLocal<int[]> held = ThreadLocal.withInitial(() -> new int[]{-1, 0});
+
+    /**
+     * @param stripes number of locks, has to be power of two
+     */
+    StripedLocks(int stripes, long timeoutMillis) {
+        if (Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("Number of stripes has to be power of two");
+        this.stripes = new ReentrantLock[stripes];
+        this.timeoutMillis = timeoutMillis;
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    int stripe(int hash) {
+        return hash & (stripes.length - 1);
+    }
+
+    /**
+     * @return {@code false} if the stripe is busy and cannot be waited for in order, or
+     * it has not become free in time
+     */
+    boolean lock(int stripe) throws InterruptedException {
+        ReentrantLock lock = stripes[stripe];
+        int[] held = this.held.get();
+        boolean locked = lock.isHeldByCurrentThread() || stripe > held[0]
+            ? lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)
+            : lock.tryLock();
+        if (!locked) return false;
+        held[0] = Math.max(held[0], stripe);
+        held[1]++;
+        return true;
+    }
+
+    void unlock(int stripe) {
+        stripes[stripe].unlock();
+        int[] held = this.held.get();
+        if (--held[1] == 0) held[0] = -1;
+    }
+}
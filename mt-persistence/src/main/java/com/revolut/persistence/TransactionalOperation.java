@@ -1,5 +1,9 @@
 package com.revolut.persistence;
 
+import com.revolut.core.metrics.Counter;
+import com.revolut.core.metrics.Histogram;
+import com.revolut.core.metrics.MetricsRegistry;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.concurrent.Callable;
@@ -8,6 +12,13 @@ import java.util.concurrent.Callable;
  * Provides transactional capabilities for any runnable.
  */
 public class TransactionalOperation implements Callable<Object> {
+    private static final Histogram DURATION = MetricsRegistry.DEFAULT.histogram(
+        "db_transaction_seconds", "Time from the beginning of a transaction till commit or rollback");
+    private static final Counter COMMITS = MetricsRegistry.DEFAULT.counter(
+        "db_commits_total", "Committed transactions");
+    private static final Counter ROLLBACKS = MetricsRegistry.DEFAULT.counter(
+        "db_rollbacks_total", "Rolled back transactions");
+
     private final DataSource dataSource;
     private final Runnable runnable;
 
@@ -18,21 +29,25 @@ public class TransactionalOperation implements Callable<Object> {
 
     @Override
     public Object call() throws Exception {
+        long started = System.nanoTime();
         Connection connection = dataSource.getConnection();
         try {
             connection.setAutoCommit(false);
             runnable.run();
             connection.commit();
+            COMMITS.increment();
             return null;
         } catch (Exception ex) {
             try {
                 connection.rollback();
+                ROLLBACKS.increment();
             } catch (SQLException sqlEx) {
                 throw new Exception("Cannot rollback", sqlEx);
             }
             throw ex;
         } finally {
             dataSource.closeConnection();
+            DURATION.recordSince(started);
         }
     }
 }
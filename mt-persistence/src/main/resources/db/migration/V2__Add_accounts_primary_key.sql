@@ -0,0 +1 @@
+ALTER TABLE accounts ADD CONSTRAINT pk_accounts PRIMARY KEY (accountId);
@@ -0,0 +1,3 @@
+CREATE TABLE shard_decisions (
+    name VARCHAR(64) NOT NULL PRIMARY KEY
+);
\ No newline at end of file
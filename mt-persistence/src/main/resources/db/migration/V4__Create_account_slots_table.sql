@@ -0,0 +1,8 @@
+ALTER TABLE accounts ADD COLUMN slots INT NOT NULL DEFAULT 0;
+
+CREATE TABLE account_slots (
+    accountId UUID NOT NULL,
+    slot INT NOT NULL,
+    balance INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (accountId, slot)
+);
\ No newline at end of file
@@ -0,0 +1,10 @@
+CREATE TABLE transfers (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    fromId UUID NOT NULL,
+    toId UUID NOT NULL,
+    amount INT NOT NULL,
+    created TIMESTAMP NOT NULL
+);
+
+CREATE INDEX transfers_from ON transfers (fromId, id);
+CREATE INDEX transfers_to ON transfers (toId, id);
@@ -0,0 +1,274 @@
+package com.revolut.persistence;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void reusesReleasedConnection() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(true);
+        ConnectionPool pool = new ConnectionPool(dataSource, PoolConfig.builder().build());
+
+        pool.getConnection().close();
+        pool.getConnection().close();
+
+        assertThat(dataSource.created).hasSize(1);
+    }
+
+    @Test
+    public void closedProxyIsClosedButPhysicalIsNot() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(true);
+        ConnectionPool pool = new ConnectionPool(dataSource, PoolConfig.builder().build());
+
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        assertThat(connection.isClosed()).isTrue();
+        assertThat(dataSource.created.get(0).closed).isFalse();
+        assertThatThrownBy(connection::commit).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    public void boundedSize_timesOut() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(new CountingDataSource(true),
+            PoolConfig.builder().maxSize(1).acquireTimeoutMillis(10).build());
+
+        pool.getConnection();
+
+        assertThatThrownBy(pool::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        assertThat(pool.getStatistics().getTimeouts()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidConnectionIsDiscarded() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(false);
+        ConnectionPool pool = new ConnectionPool(dataSource,
+            PoolConfig.builder().validateAfterMillis(0).build());
+
+        pool.getConnection().close();
+        pool.getConnection().close();
+
+        assertThat(dataSource.created).hasSize(2);
+        assertThat(dataSource.created.get(0).closed).isTrue();
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(true);
+        ConnectionPool pool = new ConnectionPool(dataSource,
+            PoolConfig.builder().minIdle(1).idleTimeoutMillis(0).build());
+
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+
+        assertThat(pool.getStatistics().getIdle()).isEqualTo(1);
+        assertThat(dataSource.created).filteredOn(c -> c.closed).hasSize(1);
+    }
+
+    @Test
+    public void close_connectionInUseClosedOnRelease() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(true);
+        ConnectionPool pool = new ConnectionPool(dataSource, PoolConfig.builder().build());
+        pool.getConnection().close();
+        Connection inUse = pool.getConnection();
+
+        pool.close();
+        assertThat(dataSource.created.get(0).closed).isFalse();
+        inUse.close();
+
+        assertThat(dataSource.created.get(0).closed).isTrue();
+        assertThat(pool.getStatistics().getIdle()).isEqualTo(0);
+    }
+
+    @Test
+    public void close_rejectsNewConnections() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(true);
+        ConnectionPool pool = new ConnectionPool(dataSource, PoolConfig.builder().build());
+        pool.getConnection().close();
+
+        pool.close();
+
+        assertThatThrownBy(pool::getConnection).isInstanceOf(SQLNonTransientConnectionException.class);
+        assertThat(dataSource.created).hasSize(1);
+        assertThat(dataSource.created.get(0).closed).isTrue();
+    }
+
+    @Test
+    public void rollsBackUnfinishedTransactionOnRelease() throws SQLException {
+        CountingDataSource dataSource = new CountingDataSource(true);
+        ConnectionPool pool = new ConnectionPool(dataSource, PoolConfig.builder().build());
+
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+
+        assertThat(dataSource.created.get(0).rolledBack).isTrue();
+        assertThat(dataSource.created.get(0).autoCommit).isTrue();
+    }
+
+    @Test
+    public void statistics() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(new CountingDataSource(true), PoolConfig.builder().build());
+
+        Connection first = pool.getConnection();
+        pool.getConnection();
+        first.close();
+
+        PoolStatistics statistics = pool.getStatistics();
+        assertThat(statistics.getActive()).isEqualTo(1);
+        assertThat(statistics.getIdle()).isEqualTo(1);
+        assertThat(statistics.getAcquired()).isEqualTo(2);
+        assertThat(statistics.getMaxWaitNanos()).isGreaterThan(0);
+    }
+
+    @Test
+    public void preparedStatementReusedAfterRelease() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(h2(), PoolConfig.builder().build());
+
+        Connection first = pool.getConnection();
+        PreparedStatement statement = first.prepareStatement("SELECT 1");
+        statement.executeQuery();
+        statement.close();
+        first.close();
+
+        Connection second = pool.getConnection();
+        PreparedStatement reused = second.prepareStatement("SELECT 1");
+        assertThat(reused).isSameAs(statement);
+        assertThat(reused.isClosed()).isFalse();
+        ResultSet rs = reused.executeQuery();
+        assertThat(rs.next()).isTrue();
+        second.close();
+    }
+
+    @Test
+    public void statementInUseNotShared() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(h2(), PoolConfig.builder().build());
+        Connection connection = pool.getConnection();
+
+        try (PreparedStatement outer = connection.prepareStatement("SELECT ?");
+             PreparedStatement inner = connection.prepareStatement("SELECT ?")) {
+            outer.setInt(1, 1);
+            inner.setInt(1, 2);
+            ResultSet outerRs = outer.executeQuery();
+            ResultSet innerRs = inner.executeQuery();
+            outerRs.next();
+            innerRs.next();
+
+            assertThat(inner).isNotSameAs(outer);
+            assertThat(outerRs.getInt(1)).isEqualTo(1);
+            assertThat(innerRs.getInt(1)).isEqualTo(2);
+        }
+        connection.close();
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementClosed() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(h2(), PoolConfig.builder().statementCacheSize(1).build());
+        Connection connection = pool.getConnection();
+
+        PreparedStatement first = connection.prepareStatement("SELECT 1");
+        PreparedStatement physical = first.unwrap(PreparedStatement.class);
+        first.close();
+        connection.prepareStatement("SELECT 2").close();
+
+        assertThat(physical.isClosed()).isTrue();
+        assertThat(connection.prepareStatement("SELECT 1")).isNotSameAs(first);
+        connection.close();
+    }
+
+    @Test
+    public void statementCacheTurnedOff() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(h2(), PoolConfig.builder().statementCacheSize(0).build());
+        Connection connection = pool.getConnection();
+
+        PreparedStatement first = connection.prepareStatement("SELECT 1");
+        first.close();
+
+        assertThat(first.isClosed()).isTrue();
+        assertThat(connection.prepareStatement("SELECT 1")).isNotSameAs(first);
+        connection.close();
+    }
+
+    private static javax.sql.DataSource h2() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+        ds.setUser("sa");
+        ds.setPassword("");
+        return ds;
+    }
+
+    /**
+     * Creates new stub connection on every call and remembers all of them
+     */
+    private static class CountingDataSource extends JavaxSqlDataSource {
+        private final List<StubConnection> created = new ArrayList<>();
+        private final boolean valid;
+
+        CountingDataSource(boolean valid) {
+            this.valid = valid;
+        }
+
+        @Override
+        public Connection getConnection() {
+            StubConnection connection = new StubConnection(valid);
+            created.add(connection);
+            return connection;
+        }
+    }
+
+    private static class StubConnection extends TestConnection {
+        private final boolean valid;
+        private boolean closed;
+        private boolean rolledBack;
+        private boolean autoCommit = true;
+
+        StubConnection(boolean valid) {
+            this.valid = valid;
+        }
+
+        @Override
+        public boolean isValid(int timeout) {
+            return valid;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) {
+            this.autoCommit = autoCommit;
+        }
+
+        @Override
+        public boolean getAutoCommit() {
+            return autoCommit;
+        }
+
+        @Override
+        public void rollback() {
+            rolledBack = true;
+        }
+    }
+}
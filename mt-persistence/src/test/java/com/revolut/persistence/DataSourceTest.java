@@ -8,6 +8,7 @@ import org.junit.Test;
 
 import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import static org.assertj.core.api.Assertions.*;
@@ -54,6 +55,46 @@ public class DataSourceTest {
         assertThat(threadLocalConnection(dataSource)).isNull();
     }
 
+    @Test
+    public void read_releasesConnectionRightAfter() throws SQLException {
+        DataSource dataSource = new DataSource(this.dataSource);
+
+        int one = dataSource.read(connection -> {
+            try (ResultSet rs = connection.prepareStatement("SELECT 1").executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        });
+
+        assertThat(one).isEqualTo(1);
+        assertThat(threadLocalConnection(dataSource)).isNull();
+        assertThat(dataSource.getPoolStatistics().getActive()).isZero();
+    }
+
+    @Test
+    public void read_usesConnectionThreadAlreadyHas() throws SQLException {
+        DataSource dataSource = new DataSource(this.dataSource);
+        Connection current = dataSource.getConnection();
+
+        Connection used = dataSource.read(connection -> connection);
+
+        assertThat(used).isSameAs(current);
+        assertThat(threadLocalConnection(dataSource)).isSameAs(current);
+        assertThat(current.isClosed()).isFalse();
+        dataSource.closeConnection();
+    }
+
+    @Test
+    public void write_releasesConnectionOnFailure() {
+        DataSource dataSource = new DataSource(this.dataSource);
+
+        assertThatThrownBy(() -> dataSource.write(connection -> connection.prepareStatement("SELECT * FROM missing")))
+            .isInstanceOf(SQLException.class);
+
+        assertThat(threadLocalConnection(dataSource)).isNull();
+        assertThat(dataSource.getPoolStatistics().getActive()).isZero();
+    }
+
     @SneakyThrows
     private static Connection threadLocalConnection(DataSource dataSource) {
         Field conn = FieldUtils.getField(DataSource.class, "conn", true);
@@ -0,0 +1,179 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.metrics.MetricsRegistry;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.StorageException;
+import lombok.SneakyThrows;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GroupCommitExecutorTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(16);
+    private DataSource dataSource;
+    private SqlStorage storage;
+    private GroupCommitExecutor executor;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:group;DB_CLOSE_DELAY=-1");
+        ds.setUser("sa");
+        ds.setPassword("");
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(ds);
+        flyway.migrate();
+
+        try (Connection connection = ds.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM account_slots");
+            stmt.executeUpdate("DELETE FROM accounts");
+            stmt.executeUpdate("INSERT INTO accounts (accountId, balance, version) VALUES ('" + ONE + "', 1000, 1);");
+            stmt.executeUpdate("INSERT INTO accounts (accountId, balance, version) VALUES ('" + TWO + "', 0, 1);");
+        }
+
+        dataSource = new DataSource(ds);
+        storage = new SqlStorage(dataSource);
+        executor = new GroupCommitExecutor(dataSource, 64);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        executor.close();
+    }
+
+    @Test
+    public void concurrentWorksCommittedTogether() throws Exception {
+        long groups = groups();
+        CountDownLatch queued = block();
+
+        List<Future<?>> transfers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transfers.add(callers.submit(() -> execute(() -> storage.transfer(ONE, TWO, new Money(10)))));
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+        queued.countDown();
+        for (Future<?> transfer : transfers) transfer.get(5, TimeUnit.SECONDS);
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(900));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+        assertThat(groups() - groups).isLessThan(10);
+    }
+
+    @Test
+    public void failedWorkRolledBackAlone() throws Exception {
+        CountDownLatch queued = block();
+
+        Future<?> failed = callers.submit(() -> execute(() -> {
+            storage.deposit(TWO, new Money(500));
+            storage.transfer(ONE, TWO, new Money(5000));
+        }));
+        Future<?> completed = callers.submit(() -> execute(() -> storage.transfer(ONE, TWO, new Money(300))));
+        TimeUnit.MILLISECONDS.sleep(100);
+        queued.countDown();
+
+        completed.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+            .hasCauseInstanceOf(AccountException.class);
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(700));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(300));
+    }
+
+    @Test
+    public void nestedWorkJoinsGroup() throws Exception {
+        executor.execute(() -> execute(() -> storage.deposit(ONE, new Money(50))));
+
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(1050), 2));
+    }
+
+    @Test(timeout = 10000)
+    public void errorFailsGroupAndCommitterGoesOn() throws Exception {
+        assertThatThrownBy(() -> executor.execute(() -> {
+            storage.deposit(ONE, new Money(50));
+            throw new AssertionError("Suppose to happen");
+        })).isInstanceOf(StorageException.class).hasCauseInstanceOf(AssertionError.class);
+
+        executor.execute(() -> storage.deposit(TWO, new Money(50)));
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(1000));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(50));
+    }
+
+    @Test(timeout = 10000)
+    public void waitForCommitIsBounded() throws Exception {
+        GroupCommitExecutor slow = new GroupCommitExecutor(dataSource, 64, 100, TimeUnit.MILLISECONDS);
+        CountDownLatch released = new CountDownLatch(1);
+        try {
+            callers.submit(() -> {
+                slow.execute(() -> await(released));
+                return null;
+            });
+
+            assertThatThrownBy(() -> slow.execute(() -> storage.deposit(ONE, new Money(50))))
+                .isInstanceOf(StorageException.class);
+        } finally {
+            released.countDown();
+            slow.close();
+        }
+    }
+
+    @Test
+    public void closed() throws Exception {
+        executor.close();
+
+        assertThatThrownBy(() -> executor.execute(() -> storage.deposit(ONE, new Money(50))))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    // keeps the committer busy, so that works submitted meanwhile end up in the same group
+    private CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        callers.submit(() -> execute(() -> {
+            started.countDown();
+            await(released);
+        }));
+        started.await();
+        return released;
+    }
+
+    @SneakyThrows
+    private void execute(Runnable work) {
+        executor.execute(work);
+    }
+
+    @SneakyThrows
+    private static void await(CountDownLatch latch) {
+        latch.await();
+    }
+
+    private static long groups() {
+        return MetricsRegistry.DEFAULT
+            .counter("db_group_commits_total", "Transactions committed on behalf of a group of operations").get();
+    }
+}
@@ -0,0 +1,334 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.bank.SimpleBank;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UndoLog;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JournalStorageTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final UndoLog undoLog = new UndoLog();
+    private JournalStorage storage;
+
+    @After
+    public void tearDown() throws IOException {
+        if (storage != null) storage.close();
+    }
+
+    @Test
+    public void createAndUpdate() {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        storage.update(new Account(ONE, new Money(150), 1));
+
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 2));
+    }
+
+    @Test
+    public void details_noAccount() {
+        storage = open(1 << 16, 1_000_000);
+
+        assertThatThrownBy(() -> storage.details(ONE))
+            .isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void update_wrongVersion() {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        assertThatThrownBy(() -> storage.update(new Account(ONE, new Money(150), 3)))
+            .isInstanceOf(RetryStorageException.class);
+    }
+
+    @Test
+    public void createAccount_duplicate() {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        assertThatThrownBy(() -> storage.create(new Account(ONE, new Money(200), 1)))
+            .isInstanceOf(StorageException.class);
+    }
+
+    @Test
+    public void recoversFromJournal() throws IOException {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(0), 0));
+        storage.update(new Account(ONE, new Money(150), 1));
+        storage.close();
+
+        storage = open(1 << 16, 1_000_000);
+
+        assertThat(storage.getAllAccounts()).containsOnly(
+            new Account(ONE, new Money(150), 2),
+            new Account(TWO, new Money(0), 0));
+    }
+
+    @Test
+    public void recoversFromSnapshotAndJournalTail() throws IOException {
+        storage = open(Journal.RECORD * 4, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.update(new Account(ONE, new Money(150), 1));
+        storage.update(new Account(ONE, new Money(100), 2));
+        storage.snapshot();
+        storage.create(new Account(TWO, new Money(10), 0));
+        storage.update(new Account(ONE, new Money(50), 3));
+        storage.close();
+
+        assertThat(files("journal-")).hasSize(1);
+        assertThat(files("snapshot-")).hasSize(1);
+
+        storage = open(Journal.RECORD * 4, 1_000_000);
+
+        assertThat(storage.getAllAccounts()).containsOnly(
+            new Account(ONE, new Money(50), 4),
+            new Account(TWO, new Money(10), 0));
+    }
+
+    @Test(timeout = 10000)
+    public void snapshotIsTakenPeriodically() throws Exception {
+        storage = open(1 << 16, 3);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.update(new Account(ONE, new Money(150), 1));
+        storage.update(new Account(ONE, new Money(100), 2));
+
+        while (files("snapshot-").isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void brokenTailIsIgnored() throws IOException {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.update(new Account(ONE, new Money(150), 1));
+        storage.close();
+
+        Path segment = files("journal-").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // create and its commit, then the update
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 2 * Journal.RECORD + 20);
+        }
+
+        storage = open(1 << 16, 1_000_000);
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(200), 1));
+
+        storage.update(new Account(ONE, new Money(120), 1));
+        storage.close();
+        storage = open(1 << 16, 1_000_000);
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(120), 2));
+    }
+
+    @Test
+    public void transferCutBetweenDebitAndCreditIsSkipped() throws Exception {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(100), 1));
+        SimpleBank bank = new SimpleBank(storage);
+        undoLog.execute(() -> bank.transfer(ONE, TWO, new Money(50)));
+        storage.close();
+
+        // creates with their commits, then debit, credit and commit of the transfer
+        Path segment = files("journal-").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(2 * Journal.RECORD), 5 * Journal.RECORD);
+        }
+
+        storage = open(1 << 16, 1_000_000);
+        Money one = storage.details(ONE).getBalance();
+        Money two = storage.details(TWO).getBalance();
+        assertThat(one.getCents() + two.getCents()).isEqualTo(300);
+        assertThat(one).isEqualTo(new Money(200));
+    }
+
+    @Test
+    public void failedTransferIsUndone() throws IOException {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(100), 1));
+        SimpleBank bank = new SimpleBank(storage);
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            bank.transfer(ONE, TWO, new Money(50));
+            throw new RuntimeException("Suppose to happen");
+        }));
+        storage.close();
+
+        storage = open(1 << 16, 1_000_000);
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(200));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void changeIsNotVisibleUntilUndone() throws Exception {
+        storage = open(1 << 16, 1_000_000);
+        storage.create(new Account(ONE, new Money(200), 1));
+        CountDownLatch updated = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> work = executor.submit(() -> {
+                undoLog.execute(() -> {
+                    storage.update(new Account(ONE, new Money(50), 1));
+                    updated.countDown();
+                    Uninterruptibles.awaitUninterruptibly(fail);
+                    throw new RuntimeException("Suppose to happen");
+                });
+                return null;
+            });
+            updated.await();
+            Future<Account> read = executor.submit(() -> storage.details(ONE));
+            Thread.sleep(100);
+            assertThat(read.isDone()).isFalse();
+
+            fail.countDown();
+            assertThatThrownBy(work::get).hasMessageContaining("Suppose to happen");
+            assertThat(read.get()).isEqualTo(new Account(ONE, new Money(200), 1));
+        } finally {
+            executor.shutdownNow();
+        }
+        storage.close();
+
+        storage = open(1 << 16, 1_000_000);
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(200), 1));
+    }
+
+    @Test(timeout = 10000)
+    public void oppositeUpdatesDontWaitForEachOther() throws Exception {
+        storage = open(1 << 16, 1_000_000);
+        UUID[] ids = inStripeOrder();
+        storage.create(new Account(ids[0], new Money(200), 1));
+        storage.create(new Account(ids[1], new Money(200), 1));
+        CountDownLatch first = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> inOrder = executor.submit(() -> {
+                undoLog.execute(() -> {
+                    storage.update(new Account(ids[0], new Money(100), 1));
+                    first.countDown();
+                    Uninterruptibles.awaitUninterruptibly(first);
+                    storage.update(new Account(ids[1], new Money(300), 1));
+                });
+                return null;
+            });
+            Future<?> outOfOrder = executor.submit(() -> {
+                undoLog.execute(() -> {
+                    storage.update(new Account(ids[1], new Money(100), 1));
+                    first.countDown();
+                    Uninterruptibles.awaitUninterruptibly(first);
+                    storage.update(new Account(ids[0], new Money(300), 1));
+                });
+                return null;
+            });
+
+            long started = System.nanoTime();
+            assertThatThrownBy(outOfOrder::get).hasCauseInstanceOf(RetryStorageException.class);
+            inOrder.get();
+            assertThat(System.nanoTime() - started).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+            assertThat(storage.details(ids[0])).isEqualTo(new Account(ids[0], new Money(100), 2));
+            assertThat(storage.details(ids[1])).isEqualTo(new Account(ids[1], new Money(300), 2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void updateBatch_locksInStripeOrder() throws Exception {
+        storage = open(1 << 16, 1_000_000);
+        UUID[] ids = inStripeOrder();
+        storage.create(new Account(ids[0], new Money(200), 1));
+        storage.create(new Account(ids[1], new Money(200), 1));
+
+        undoLog.execute(() -> storage.update(Arrays.asList(
+            new Account(ids[1], new Money(100), 1), new Account(ids[0], new Money(300), 1))));
+
+        assertThat(storage.details(ids[0])).isEqualTo(new Account(ids[0], new Money(300), 2));
+        assertThat(storage.details(ids[1])).isEqualTo(new Account(ids[1], new Money(100), 2));
+    }
+
+    @Test(timeout = 20000)
+    public void concurrentUpdatesShareFsync() throws Exception {
+        storage = open(1 << 20, 1_000_000);
+        int threads = 16;
+        UUID[] ids = new UUID[threads];
+        for (int i = 0; i < threads; i++) {
+            ids[i] = UUID.randomUUID();
+            storage.create(new Account(ids[i], new Money(0), 0));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            UUID id = ids[t];
+            executor.execute(() -> {
+                for (int i = 0; i < 100; i++) {
+                    storage.update(new Account(id, new Money(i + 1), i));
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(15, TimeUnit.SECONDS)).isTrue();
+        storage.close();
+
+        storage = open(1 << 20, 1_000_000);
+        for (UUID id : ids) {
+            assertThat(storage.details(id)).isEqualTo(new Account(id, new Money(100), 100));
+        }
+    }
+
+    private JournalStorage open(int segmentSize, long snapshotEvery) {
+        return new JournalStorage(folder.getRoot().toPath(), segmentSize, snapshotEvery, undoLog);
+    }
+
+    // two accounts on different stripes, lower one first
+    private static UUID[] inStripeOrder() {
+        UUID one = UUID.randomUUID();
+        UUID two;
+        do {
+            two = UUID.randomUUID();
+        } while ((one.hashCode() & 1023) == (two.hashCode() & 1023));
+        return (one.hashCode() & 1023) < (two.hashCode() & 1023) ? new UUID[]{one, two} : new UUID[]{two, one};
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        return Files.list(folder.getRoot().toPath())
+            .filter(p -> p.getFileName().toString().startsWith(prefix))
+            .filter(p -> !p.getFileName().toString().endsWith("tmp"))
+            .sorted()
+            .collect(Collectors.toList());
+    }
+}
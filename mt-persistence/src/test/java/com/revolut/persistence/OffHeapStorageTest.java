@@ -0,0 +1,214 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.bank.SimpleBank;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.AccountDoesNotExistException;
+import com.revolut.core.storage.RetryStorageException;
+import com.revolut.core.storage.StorageException;
+import com.revolut.core.storage.UndoLog;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OffHeapStorageTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+
+    private final UndoLog undoLog = new UndoLog();
+
+    @Test
+    public void details() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(200), 1));
+    }
+
+    @Test
+    public void details_noAccount() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+
+        assertThatThrownBy(() -> storage.details(ONE))
+            .isInstanceOf(AccountDoesNotExistException.class)
+            .hasMessageContaining(ONE.toString());
+    }
+
+    @Test
+    public void createAccount_duplicate() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        assertThatThrownBy(() -> storage.create(new Account(ONE, new Money(100), 1)))
+            .isInstanceOf(StorageException.class);
+    }
+
+    @Test
+    public void createAccount_full() {
+        OffHeapStorage storage = new OffHeapStorage(1, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        assertThatThrownBy(() -> storage.create(new Account(TWO, new Money(100), 1)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining("full");
+    }
+
+    @Test
+    public void manyAccounts() {
+        OffHeapStorage storage = new OffHeapStorage(10_000, undoLog);
+        UUID[] ids = new UUID[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID();
+            storage.create(new Account(ids[i], new Money(i), 0));
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            assertThat(storage.details(ids[i]).getBalance()).isEqualTo(new Money(i));
+        }
+        assertThat(storage.getAllAccounts()).hasSize(10_000);
+    }
+
+    @Test
+    public void forEachAccount() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(100), 1));
+
+        List<Account> accounts = new ArrayList<>();
+        storage.forEachAccount(accounts::add);
+
+        assertThat(accounts).containsExactly(
+            new Account(ONE, new Money(200), 1),
+            new Account(TWO, new Money(100), 1));
+    }
+
+    @Test
+    public void update() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        storage.update(new Account(ONE, new Money(150), 1));
+
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(150), 2));
+    }
+
+    @Test
+    public void update_wrongVersion() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+
+        assertThatThrownBy(() -> storage.update(new Account(ONE, new Money(150), 3)))
+            .isInstanceOf(RetryStorageException.class);
+    }
+
+    @Test
+    public void failedTransferIsUndone() {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(100), 1));
+        SimpleBank bank = new SimpleBank(storage);
+
+        assertThatThrownBy(() -> undoLog.execute(() -> {
+            bank.transfer(ONE, TWO, new Money(50));
+            throw new RuntimeException("Suppose to happen");
+        }));
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(200));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void changeIsNotVisibleUntilUndone() throws Exception {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+        CountDownLatch updated = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> work = executor.submit(() -> {
+                undoLog.execute(() -> {
+                    storage.update(new Account(ONE, new Money(50), 1));
+                    updated.countDown();
+                    Uninterruptibles.awaitUninterruptibly(fail);
+                    throw new RuntimeException("Suppose to happen");
+                });
+                return null;
+            });
+            updated.await();
+            Future<Account> read = executor.submit(() -> storage.details(ONE));
+            Thread.sleep(100);
+            assertThat(read.isDone()).isFalse();
+
+            fail.countDown();
+            assertThatThrownBy(work::get).hasMessageContaining("Suppose to happen");
+            assertThat(read.get()).isEqualTo(new Account(ONE, new Money(200), 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void oppositeUpdatesDontWaitForEachOther() throws Exception {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        // records 0 and 1, so stripes 0 and 1
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(200), 1));
+        CountDownLatch first = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> inOrder = executor.submit(() -> {
+                undoLog.execute(() -> {
+                    storage.update(new Account(ONE, new Money(100), 1));
+                    first.countDown();
+                    Uninterruptibles.awaitUninterruptibly(first);
+                    storage.update(new Account(TWO, new Money(300), 1));
+                });
+                return null;
+            });
+            Future<?> outOfOrder = executor.submit(() -> {
+                undoLog.execute(() -> {
+                    storage.update(new Account(TWO, new Money(100), 1));
+                    first.countDown();
+                    Uninterruptibles.awaitUninterruptibly(first);
+                    storage.update(new Account(ONE, new Money(300), 1));
+                });
+                return null;
+            });
+
+            long started = System.nanoTime();
+            assertThatThrownBy(outOfOrder::get).hasCauseInstanceOf(RetryStorageException.class);
+            inOrder.get();
+            assertThat(System.nanoTime() - started).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+            assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(100), 2));
+            assertThat(storage.details(TWO)).isEqualTo(new Account(TWO, new Money(300), 2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void updateBatch_locksInStripeOrder() throws Exception {
+        OffHeapStorage storage = new OffHeapStorage(16, undoLog);
+        storage.create(new Account(ONE, new Money(200), 1));
+        storage.create(new Account(TWO, new Money(200), 1));
+
+        undoLog.execute(() -> storage.update(Arrays.asList(
+            new Account(TWO, new Money(100), 1), new Account(ONE, new Money(300), 1))));
+
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(300), 2));
+        assertThat(storage.details(TWO)).isEqualTo(new Account(TWO, new Money(100), 2));
+    }
+}
@@ -0,0 +1,342 @@
+package com.revolut.persistence;
+
+import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.UnitOfWork;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedStorageTest {
+
+    private static final int SHARDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<JdbcDataSource> databases = new ArrayList<>();
+    private ShardedStorage storage;
+    private UnitOfWork unitOfWork;
+
+    @Before
+    public void setUp() throws SQLException {
+        for (int i = 0; i < SHARDS; i++) {
+            JdbcDataSource ds = database("jdbc:h2:mem:shard" + i + ";DB_CLOSE_DELAY=-1");
+            execute(ds, "DELETE FROM account_slots");
+            execute(ds, "DELETE FROM accounts");
+            execute(ds, "DELETE FROM shard_decisions");
+            databases.add(ds);
+        }
+        storage = new ShardedStorage(databases.stream().map(DataSource::new).collect(toList()));
+        unitOfWork = storage.unitOfWork();
+    }
+
+    @Test
+    public void create_accountKeptInItsShardOnly() throws SQLException {
+        UUID id = UUID.randomUUID();
+
+        storage.create(new Account(id, new Money(100), 1));
+
+        for (int i = 0; i < SHARDS; i++) {
+            assertThat(count(databases.get(i), "SELECT count(*) FROM accounts WHERE accountId = '" + id + "'"))
+                .isEqualTo(i == storage.shardOf(id) ? 1 : 0);
+        }
+        assertThat(storage.details(id)).isEqualTo(new Account(id, new Money(100), 1));
+    }
+
+    @Test
+    public void transfer_withinShard() throws Exception {
+        UUID from = account(0, 200);
+        UUID to = account(0, 100);
+
+        unitOfWork.execute(() -> storage.transfer(from, to, new Money(50)));
+
+        assertThat(storage.details(from).getBalance()).isEqualTo(new Money(150));
+        assertThat(storage.details(to).getBalance()).isEqualTo(new Money(150));
+    }
+
+    @Test
+    public void transfer_acrossShards() throws Exception {
+        UUID from = account(0, 200);
+        UUID to = account(1, 100);
+
+        unitOfWork.execute(() -> storage.transfer(from, to, new Money(50)));
+
+        assertThat(storage.details(from).getBalance()).isEqualTo(new Money(150));
+        assertThat(storage.details(to).getBalance()).isEqualTo(new Money(150));
+        assertThat(count(databases.get(0), "SELECT count(*) FROM shard_decisions")).isEqualTo(0);
+    }
+
+    @Test
+    public void transfer_failedCommitOfPreparedShardIsRetried() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        storage = new ShardedStorage(failingCommits(1, failures));
+        unitOfWork = storage.unitOfWork();
+        UUID from = account(0, 200);
+        UUID to = account(1, 100);
+
+        failures.set(2);
+        unitOfWork.execute(() -> storage.transfer(from, to, new Money(50)));
+
+        assertThat(count(databases.get(0), "SELECT balance FROM accounts WHERE accountId = '" + from + "'")).isEqualTo(150);
+        assertThat(count(databases.get(1), "SELECT balance FROM accounts WHERE accountId = '" + to + "'")).isEqualTo(150);
+        assertThat(count(databases.get(0), "SELECT count(*) FROM shard_decisions")).isEqualTo(0);
+    }
+
+    @Test
+    public void transfer_preparedShardFailingToCommitIsLeftInDoubt() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        storage = new ShardedStorage(failingCommits(1, failures));
+        unitOfWork = storage.unitOfWork();
+        UUID from = account(0, 200);
+        UUID to = account(1, 100);
+
+        failures.set(Integer.MAX_VALUE);
+        unitOfWork.execute(() -> storage.transfer(from, to, new Money(50)));
+
+        assertThat(count(databases.get(0), "SELECT balance FROM accounts WHERE accountId = '" + from + "'")).isEqualTo(150);
+        assertThat(count(databases.get(1), "SELECT count(*) FROM INFORMATION_SCHEMA.IN_DOUBT")).isEqualTo(1);
+        assertThat(count(databases.get(1), "SELECT balance FROM accounts WHERE accountId = '" + to + "'")).isEqualTo(100);
+
+        failures.set(0);
+        unitOfWork.execute(() -> {
+        });
+
+        assertThat(count(databases.get(1), "SELECT balance FROM accounts WHERE accountId = '" + to + "'")).isEqualTo(150);
+        assertThat(count(databases.get(1), "SELECT count(*) FROM INFORMATION_SCHEMA.IN_DOUBT")).isEqualTo(0);
+    }
+
+    @Test
+    public void transfer_acrossShardsWithoutUnitOfWork() {
+        UUID from = account(2, 200);
+        UUID to = account(1, 100);
+
+        storage.transfer(from, to, new Money(50));
+
+        assertThat(storage.details(from).getBalance()).isEqualTo(new Money(150));
+        assertThat(storage.details(to).getBalance()).isEqualTo(new Money(150));
+    }
+
+    @Test
+    public void transfer_acrossShardsNotEnoughMoney() {
+        UUID from = account(0, 20);
+        UUID to = account(1, 100);
+
+        assertThatThrownBy(() -> unitOfWork.execute(() -> storage.transfer(from, to, new Money(50))))
+            .isInstanceOf(AccountException.class);
+
+        assertThat(storage.details(from).getBalance()).isEqualTo(new Money(20));
+        assertThat(storage.details(to).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void unitOfWork_failureRollsBackAllShards() {
+        UUID one = account(0, 100);
+        UUID two = account(1, 100);
+        UUID three = account(2, 100);
+
+        assertThatThrownBy(() -> unitOfWork.execute(() -> {
+            storage.deposit(one, new Money(10));
+            storage.deposit(two, new Money(10));
+            storage.deposit(three, new Money(10));
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(storage.details(one).getBalance()).isEqualTo(new Money(100));
+        assertThat(storage.details(two).getBalance()).isEqualTo(new Money(100));
+        assertThat(storage.details(three).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void update_batchAcrossShards() {
+        UUID one = account(0, 100);
+        UUID two = account(1, 100);
+
+        List<Account> accounts = new ArrayList<>();
+        accounts.add(new Account(one, new Money(50), 1));
+        accounts.add(new Account(two, new Money(150), 1));
+        storage.update(accounts);
+
+        assertThat(storage.details(one)).isEqualTo(new Account(one, new Money(50), 2));
+        assertThat(storage.details(two)).isEqualTo(new Account(two, new Money(150), 2));
+    }
+
+    @Test
+    public void stripe_transferAcrossShards() throws Exception {
+        UUID from = account(0, 200);
+        UUID to = account(1, 100);
+
+        storage.stripe(from, 3);
+        unitOfWork.execute(() -> storage.transfer(from, to, new Money(50)));
+
+        assertThat(storage.isStriped(from)).isTrue();
+        assertThat(storage.details(from).getBalance()).isEqualTo(new Money(150));
+        assertThat(storage.details(to).getBalance()).isEqualTo(new Money(150));
+    }
+
+    @Test
+    public void detailsMany_acrossShards() {
+        UUID first = account(2, 200);
+        UUID second = account(0, 100);
+        UUID third = account(2, 300);
+        UUID missing = UUID.randomUUID();
+
+        Map<UUID, Account> accounts = storage.details(Arrays.asList(first, second, missing, third));
+
+        assertThat(accounts.keySet()).containsExactly(first, second, third);
+        assertThat(accounts.get(third)).isEqualTo(new Account(third, new Money(300), 1));
+    }
+
+    @Test
+    public void getAccounts_pagesAcrossShards() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) ids.add(account(i % SHARDS, 100));
+        ids.sort(UUID::compareTo);
+
+        List<Account> first = storage.getAccounts(null, 4);
+        List<Account> second = storage.getAccounts(first.get(3).getAccountId(), 10);
+
+        assertThat(first).extracting(Account::getAccountId).containsExactlyElementsOf(ids.subList(0, 4));
+        assertThat(second).extracting(Account::getAccountId).containsExactlyElementsOf(ids.subList(4, 10));
+        assertThat(storage.getAllAccounts()).hasSize(10);
+    }
+
+    @Test
+    public void recover_resolvesInDoubtTransactionsByDecision() throws Exception {
+        List<JdbcDataSource> files = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            files.add(database("jdbc:h2:" + folder.getRoot().toPath().resolve("shard" + i) + ";WRITE_DELAY=0"));
+        }
+        UUID decided = UUID.randomUUID();
+        UUID undecided = UUID.randomUUID();
+        execute(files.get(1), "INSERT INTO accounts (accountId, balance, version) VALUES ('" + decided + "', 100, 1)");
+        execute(files.get(1), "INSERT INTO accounts (accountId, balance, version) VALUES ('" + undecided + "', 100, 1)");
+
+        // both prepared, only the first one is decided before the crash
+        prepare(files.get(1), decided, "TX_DECIDED");
+        prepare(files.get(1), undecided, "TX_UNDECIDED");
+        execute(files.get(0), "INSERT INTO shard_decisions (name) VALUES ('TX_DECIDED')");
+        crash(files.get(1));
+
+        List<DataSource> shards = files.stream().map(DataSource::new).collect(toList());
+        new ShardedStorage(shards).recover();
+
+        assertThat(count(shards.get(1), "SELECT balance FROM accounts WHERE accountId = '" + decided + "'")).isEqualTo(150);
+        assertThat(count(shards.get(1), "SELECT balance FROM accounts WHERE accountId = '" + undecided + "'")).isEqualTo(100);
+        assertThat(count(shards.get(1), "SELECT count(*) FROM INFORMATION_SCHEMA.IN_DOUBT")).isEqualTo(0);
+        assertThat(count(shards.get(0), "SELECT count(*) FROM shard_decisions")).isEqualTo(0);
+    }
+
+    private UUID account(int shard, int balance) {
+        UUID id;
+        do {
+            id = UUID.randomUUID();
+        } while (storage.shardOf(id) != shard);
+        storage.create(new Account(id, new Money(balance), 1));
+        return id;
+    }
+
+    // connection is left open, so the transaction stays prepared till the crash
+    private static void prepare(JdbcDataSource ds, UUID accountId, String name) throws SQLException {
+        Connection connection = ds.getConnection();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE accounts SET balance = balance + 50 WHERE accountId = '" + accountId + "'");
+            stmt.execute("PREPARE COMMIT " + name);
+        }
+    }
+
+    private static void crash(JdbcDataSource ds) {
+        try {
+            execute(ds, "SHUTDOWN IMMEDIATELY");
+        } catch (SQLException ex) {
+            // connection, which has closed the database, fails as well
+        }
+    }
+
+    // commit on the given shard fails as many times as failures say
+    private List<DataSource> failingCommits(int shard, AtomicInteger failures) {
+        List<DataSource> shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            JdbcDataSource database = databases.get(i);
+            shards.add(new DataSource(i != shard ? database : new JavaxSqlDataSource() {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    Connection connection = database.getConnection();
+                    return (Connection) Proxy.newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class[]{Connection.class},
+                        (proxy, method, args) -> {
+                            if (method.getName().equals("commit") && failures.getAndDecrement() > 0)
+                                throw new SQLException("Suppose to happen");
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            }
+                        });
+                }
+            }));
+        }
+        return shards;
+    }
+
+    private static JdbcDataSource database(String url) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL(url);
+        ds.setUser("sa");
+        ds.setPassword("");
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(ds);
+        flyway.migrate();
+        return ds;
+    }
+
+    private static void execute(JdbcDataSource ds, String sql) throws SQLException {
+        try (Connection connection = ds.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static int count(DataSource ds, String sql) throws SQLException {
+        try (Statement stmt = ds.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            ds.closeConnection();
+        }
+    }
+
+    private static int count(JdbcDataSource ds, String sql) throws SQLException {
+        try (Connection connection = ds.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
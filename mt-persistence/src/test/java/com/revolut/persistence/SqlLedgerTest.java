@@ -0,0 +1,131 @@
+package com.revolut.persistence;
+
+import com.revolut.core.bank.Transfer;
+import com.revolut.core.money.Money;
+import com.revolut.core.storage.LedgerEntry;
+import com.revolut.core.storage.UnitOfWork;
+import lombok.SneakyThrows;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SqlLedgerTest {
+
+    private static final UUID ONE = UUID.randomUUID();
+    private static final UUID TWO = UUID.randomUUID();
+    private static final UUID THREE = UUID.randomUUID();
+
+    private javax.sql.DataSource dataSource;
+    private DataSource pooled;
+    private SqlLedger ledger;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:db1;DB_CLOSE_DELAY=-1");
+        ds.setUser("sa");
+        ds.setPassword("");
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(ds);
+        flyway.migrate();
+
+        try (Connection connection = ds.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM transfers");
+        }
+
+        this.dataSource = ds;
+        this.pooled = new DataSource(ds);
+        this.ledger = new SqlLedger(pooled);
+    }
+
+    @Test
+    public void record() {
+        ledger.record(new Transfer(ONE, TWO, new Money(100)));
+
+        List<LedgerEntry> entries = ledger.entries(ONE, null, 10);
+
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getFrom()).isEqualTo(ONE);
+        assertThat(entries.get(0).getTo()).isEqualTo(TWO);
+        assertThat(entries.get(0).getAmount()).isEqualTo(new Money(100));
+        assertThat(entries.get(0).getTimestamp()).isNotNull();
+    }
+
+    @Test
+    public void entries_bothSidesLatestFirst() {
+        ledger.record(Arrays.asList(
+            new Transfer(ONE, TWO, new Money(1)),
+            new Transfer(THREE, ONE, new Money(2)),
+            new Transfer(TWO, THREE, new Money(3)),
+            new Transfer(TWO, ONE, new Money(4))));
+
+        assertThat(ledger.entries(ONE, null, 10)).extracting(LedgerEntry::getAmount)
+            .containsExactly(new Money(4), new Money(2), new Money(1));
+        assertThat(ledger.entries(THREE, null, 10)).extracting(LedgerEntry::getAmount)
+            .containsExactly(new Money(3), new Money(2));
+    }
+
+    @Test
+    public void entries_pages() {
+        for (int i = 1; i <= 5; i++) {
+            ledger.record(i % 2 == 0 ? new Transfer(ONE, TWO, new Money(i)) : new Transfer(TWO, ONE, new Money(i)));
+        }
+
+        List<LedgerEntry> first = ledger.entries(ONE, null, 2);
+        List<LedgerEntry> second = ledger.entries(ONE, first.get(1).getId(), 2);
+        List<LedgerEntry> third = ledger.entries(ONE, second.get(1).getId(), 2);
+
+        assertThat(first).extracting(LedgerEntry::getAmount).containsExactly(new Money(5), new Money(4));
+        assertThat(second).extracting(LedgerEntry::getAmount).containsExactly(new Money(3), new Money(2));
+        assertThat(third).extracting(LedgerEntry::getAmount).containsExactly(new Money(1));
+    }
+
+    @Test
+    public void wrap_insertsWhenWorkIsDone() throws Exception {
+        UnitOfWork unitOfWork = ledger.wrap(work -> new TransactionalOperation(pooled, work).call());
+
+        unitOfWork.execute(() -> {
+            ledger.record(new Transfer(ONE, TWO, new Money(1)));
+            ledger.record(new Transfer(ONE, TWO, new Money(2)));
+            assertThat(count()).isEqualTo(0);
+        });
+
+        assertThat(count()).isEqualTo(2);
+    }
+
+    @Test
+    public void wrap_nothingRecordedOnFailure() {
+        UnitOfWork unitOfWork = ledger.wrap(work -> new TransactionalOperation(pooled, work).call());
+
+        assertThatThrownBy(() -> unitOfWork.execute(() -> {
+            ledger.record(new Transfer(ONE, TWO, new Money(1)));
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(count()).isEqualTo(0);
+    }
+
+    @SneakyThrows
+    private int count() {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM transfers")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
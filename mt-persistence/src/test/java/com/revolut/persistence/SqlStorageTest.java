@@ -1,6 +1,7 @@
 package com.revolut.persistence;
 
 import com.revolut.core.account.Account;
+import com.revolut.core.account.AccountException;
 import com.revolut.core.money.Money;
 import com.revolut.core.storage.AccountDoesNotExistException;
 import com.revolut.core.storage.RetryStorageException;
@@ -16,9 +17,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -43,6 +52,7 @@ public class SqlStorageTest {
 
         try (Connection connection = ds.getConnection();
              Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM account_slots");
             stmt.executeUpdate("DELETE FROM accounts");
             stmt.executeUpdate("INSERT INTO accounts (accountId, balance, version) VALUES ('" + ONE + "', 200, 1);");
             stmt.executeUpdate("INSERT INTO accounts (accountId, balance, version) VALUES ('" + TWO + "', 100, 1);");
@@ -55,12 +65,21 @@ public class SqlStorageTest {
     public void createAccount() {
         SqlStorage storage = new SqlStorage(new DataSource(dataSource));
 
-        Account account = new Account(ONE, new Money(200), 1);
+        Account account = new Account(UUID.randomUUID(), new Money(200), 1);
         storage.create(account);
 
         assertThat(readAllAccounts()).contains(account);
     }
 
+    @Test
+    public void createAccount_duplicate() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        assertThatThrownBy(() -> storage.create(new Account(ONE, new Money(200), 1)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining(ONE.toString());
+    }
+
     @Test
     public void details() {
         SqlStorage storage = new SqlStorage(new DataSource(dataSource));
@@ -94,6 +113,56 @@ public class SqlStorageTest {
             .isInstanceOf(StorageException.class);
     }
 
+    @Test
+    public void detailsMany() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        UUID missing = UUID.randomUUID();
+
+        Map<UUID, Account> accounts = storage.details(Arrays.asList(TWO, missing, ONE, TWO));
+
+        assertThat(accounts.keySet()).containsExactly(TWO, ONE);
+        assertThat(accounts.values()).containsExactly(
+            new Account(TWO, new Money(100), 1), new Account(ONE, new Money(200), 1));
+    }
+
+    @Test
+    public void detailsMany_noIds() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        assertThat(storage.details(new ArrayList<>())).isEmpty();
+    }
+
+    @Test
+    public void readsOutsideTransactionDontHoldConnection() {
+        DataSource source = new DataSource(dataSource);
+        SqlStorage storage = new SqlStorage(source);
+
+        storage.details(ONE);
+        storage.details(Arrays.asList(ONE, TWO));
+        storage.getAllAccounts();
+        storage.getAccounts(null, 10);
+        storage.forEachAccount(account -> { });
+        storage.create(new Account(UUID.randomUUID(), new Money(0), 1));
+
+        assertThat(source.getPoolStatistics().getActive()).isZero();
+    }
+
+    @Test
+    public void writesOutsideTransactionDontHoldConnection() {
+        DataSource source = new DataSource(dataSource);
+        SqlStorage storage = new SqlStorage(source);
+
+        storage.update(new Account(ONE, new Money(300), 1));
+        storage.update(singletonList(new Account(TWO, new Money(150), 1)));
+        storage.deposit(ONE, new Money(10));
+        storage.transfer(ONE, TWO, new Money(10));
+        storage.lock(Arrays.asList(ONE, TWO));
+        storage.withdraw(TWO, new Money(10));
+        storage.stripe(ONE, 2);
+
+        assertThat(source.getPoolStatistics().getActive()).isZero();
+    }
+
     @Test
     public void getAllAccounts() {
         SqlStorage storage = new SqlStorage(new DataSource(dataSource));
@@ -108,6 +177,36 @@ public class SqlStorageTest {
         assertThat(storage.getAllAccounts()).contains(first, second);
     }
 
+    @Test
+    public void getAccounts_pages() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        for (int i = 0; i < 3; i++) {
+            storage.create(new Account(UUID.randomUUID(), new Money(200), 1));
+        }
+
+        List<Account> all = new ArrayList<>();
+        List<Account> page = storage.getAccounts(null, 2);
+        while (!page.isEmpty()) {
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            all.addAll(page);
+            page = storage.getAccounts(page.get(page.size() - 1).getAccountId(), 2);
+        }
+
+        assertThat(all).hasSize(5).doesNotHaveDuplicates().containsAll(readAllAccounts());
+    }
+
+    @Test
+    public void forEachAccount() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        List<Account> accounts = new ArrayList<>();
+        storage.forEachAccount(accounts::add);
+
+        assertThat(accounts).containsExactlyInAnyOrder(
+            new Account(ONE, new Money(200), 1),
+            new Account(TWO, new Money(100), 1));
+    }
+
     @Test
     public void update() {
         SqlStorage storage = new SqlStorage(new DataSource(dataSource));
@@ -138,6 +237,341 @@ public class SqlStorageTest {
             .isInstanceOf(RetryStorageException.class);
     }
 
+    @Test
+    public void updateBatch() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        storage.update(Arrays.asList(
+            new Account(ONE, new Money(150), 1),
+            new Account(TWO, new Money(150), 1)));
+
+        assertThat(readAllAccounts()).contains(
+            new Account(ONE, new Money(150), 2),
+            new Account(TWO, new Money(150), 2));
+    }
+
+    @Test
+    public void updateBatch_wrongVersion() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        assertThatThrownBy(() -> storage.update(Arrays.asList(
+            new Account(ONE, new Money(150), 1),
+            new Account(TWO, new Money(150), 3))))
+            .isInstanceOf(RetryStorageException.class)
+            .hasMessageContaining(TWO.toString());
+    }
+
+    @Test
+    public void deposit() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        Account account = storage.deposit(ONE, new Money(50));
+
+        assertThat(account).isEqualTo(new Account(ONE, new Money(250), 2));
+        assertThat(readAllAccounts()).contains(account);
+    }
+
+    @Test
+    public void deposit_noAccount() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        assertThatThrownBy(() -> storage.deposit(UUID.randomUUID(), new Money(50)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void transfer() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        storage.transfer(ONE, TWO, new Money(150));
+        storage.transfer(TWO, ONE, new Money(50));
+
+        assertThat(readAllAccounts()).contains(
+            new Account(ONE, new Money(100), 3),
+            new Account(TWO, new Money(200), 3));
+    }
+
+    @Test
+    public void transfer_notEnoughMoneyChangesNothing() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        assertThatThrownBy(() -> storage.transfer(ONE, TWO, new Money(250)))
+            .isInstanceOf(AccountException.class);
+        assertThatThrownBy(() -> storage.transfer(TWO, ONE, new Money(150)))
+            .isInstanceOf(AccountException.class);
+
+        List<Account> accounts = readAllAccounts();
+        assertThat(accounts).extracting(Account::getBalance)
+            .containsExactlyInAnyOrder(new Money(200), new Money(100));
+    }
+
+    @Test
+    public void transfer_noAccount() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        UUID missing = UUID.randomUUID();
+
+        assertThatThrownBy(() -> storage.transfer(ONE, missing, new Money(50)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+        assertThatThrownBy(() -> storage.transfer(missing, ONE, new Money(50)))
+            .isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void lock_skipsMissingAccounts() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        UUID missing = UUID.randomUUID();
+        Map<UUID, Account> locked = storage.lock(Arrays.asList(TWO, missing, ONE));
+
+        assertThat(locked).containsOnlyKeys(ONE, TWO);
+        assertThat(locked.get(ONE)).isEqualTo(new Account(ONE, new Money(200), 1));
+    }
+
+    @Test(timeout = 10000)
+    public void lock_concurrentLockerWaits() throws Exception {
+        DataSource source = new DataSource(dataSource);
+        SqlStorage storage = new SqlStorage(source);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        try {
+            Future<?> holder = executor.submit(() -> new TransactionalOperation(source, () -> {
+                Account account = storage.lock(singletonList(ONE)).get(ONE);
+                locked.countDown();
+                await(released);
+                storage.update(account.withdraw(new Money(50)));
+            }).call());
+            locked.await();
+
+            Future<?> waiter = executor.submit(() -> new TransactionalOperation(source, () -> {
+                Account account = storage.lock(singletonList(ONE)).get(ONE);
+                storage.update(account.withdraw(new Money(50)));
+            }).call());
+            TimeUnit.MILLISECONDS.sleep(200);
+            assertThat(waiter.isDone()).isFalse();
+
+            released.countDown();
+            holder.get();
+            waiter.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(100), 3));
+    }
+
+    @Test
+    public void lock_stripedRejected() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 2);
+
+        assertThatThrownBy(() -> storage.lock(singletonList(ONE)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining("striped");
+    }
+
+    @Test
+    public void stripe_keepsBalance() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        storage.stripe(ONE, 4);
+
+        assertThat(storage.isStriped(ONE)).isTrue();
+        assertThat(storage.isStriped(TWO)).isFalse();
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(200), 2));
+        assertThat(new SqlStorage(new DataSource(dataSource)).isStriped(ONE)).isTrue();
+    }
+
+    @Test
+    public void stripe_twice() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+
+        assertThatThrownBy(() -> storage.stripe(ONE, 2))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining(ONE.toString());
+    }
+
+    @Test
+    public void stripe_noAccount() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+
+        assertThatThrownBy(() -> storage.stripe(UUID.randomUUID(), 4))
+            .isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void stripe_depositsSpreadOverSlots() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+
+        for (int i = 0; i < 100; i++) storage.deposit(ONE, new Money(1));
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(300));
+        assertThat(count("SELECT count(*) FROM account_slots WHERE accountId = '" + ONE + "' AND balance > 0"))
+            .isGreaterThan(1);
+    }
+
+    @Test
+    public void stripe_transferDrawsAcrossSlots() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+        for (int i = 0; i < 100; i++) storage.deposit(ONE, new Money(1));
+
+        storage.transfer(ONE, TWO, new Money(280));
+        storage.transfer(TWO, ONE, new Money(30));
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(50));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(350));
+        assertThat(count("SELECT count(*) FROM account_slots WHERE balance < 0")).isEqualTo(0);
+    }
+
+    @Test
+    public void stripe_notEnoughMoneyChangesNothing() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+
+        assertThatThrownBy(() -> storage.transfer(ONE, TWO, new Money(250)))
+            .isInstanceOf(AccountException.class);
+
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(200));
+        assertThat(storage.details(TWO).getBalance()).isEqualTo(new Money(100));
+    }
+
+    @Test
+    public void stripe_updateRejected() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+
+        assertThatThrownBy(() -> storage.update(new Account(ONE, new Money(150), 2)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining("striped");
+    }
+
+    @Test
+    public void stripe_listsSumSlots() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+        storage.deposit(ONE, new Money(50));
+
+        List<Account> accounts = new ArrayList<>();
+        storage.forEachAccount(accounts::add);
+
+        assertThat(accounts).extracting(Account::getBalance)
+            .containsExactlyInAnyOrder(new Money(250), new Money(100));
+        assertThat(storage.getAllAccounts()).extracting(Account::getBalance)
+            .containsExactlyInAnyOrder(new Money(250), new Money(100));
+        assertThat(storage.getAccounts(null, 10)).extracting(Account::getBalance)
+            .containsExactlyInAnyOrder(new Money(250), new Money(100));
+        assertThat(storage.details(Arrays.asList(ONE, TWO)).values()).extracting(Account::getBalance)
+            .containsExactly(new Money(250), new Money(100));
+    }
+
+    @Test
+    public void stripe_rolledBackWithTransaction() {
+        DataSource source = new DataSource(dataSource);
+        SqlStorage storage = new SqlStorage(source);
+
+        assertThatThrownBy(() -> new TransactionalOperation(source, () -> {
+            storage.stripe(ONE, 4);
+            throw new IllegalStateException("rolled back");
+        }).call()).isInstanceOf(IllegalStateException.class);
+        storage.deposit(ONE, new Money(50));
+
+        assertThat(storage.isStriped(ONE)).isFalse();
+        assertThat(storage.details(ONE)).isEqualTo(new Account(ONE, new Money(250), 2));
+        storage.update(new Account(ONE, new Money(300), 2));
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(300));
+    }
+
+    @Test
+    public void stripe_missingSlotsFailDeposit() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        storage.stripe(ONE, 4);
+        execute("DELETE FROM account_slots WHERE accountId = '" + ONE + "'");
+
+        assertThatThrownBy(() -> storage.deposit(ONE, new Money(50)))
+            .isInstanceOf(StorageException.class)
+            .hasMessageContaining("missing");
+        assertThat(storage.details(ONE).getBalance()).isEqualTo(new Money(0));
+    }
+
+    @Test
+    public void stripe_failedTransferToStripedChangesNoSlot() {
+        SqlStorage storage = new SqlStorage(new DataSource(dataSource));
+        // credited first, when it goes first in id order
+        UUID to = ONE.compareTo(TWO) < 0 ? ONE : TWO;
+        UUID from = to == ONE ? TWO : ONE;
+        storage.stripe(to, 4);
+        List<Integer> slots = slots(to);
+
+        for (int i = 0; i < 20; i++) {
+            assertThatThrownBy(() -> storage.transfer(from, to, new Money(1000)))
+                .isInstanceOf(AccountException.class);
+        }
+
+        assertThat(slots(to)).isEqualTo(slots);
+    }
+
+    @Test
+    public void stripe_failedTransferWithinTransactionChangesNoSlot() throws Exception {
+        DataSource source = new DataSource(dataSource);
+        SqlStorage storage = new SqlStorage(source);
+        storage.stripe(ONE, 4);
+        storage.stripe(TWO, 4);
+        List<Integer> one = slots(ONE);
+        List<Integer> two = slots(TWO);
+
+        new TransactionalOperation(source, () -> {
+            for (int i = 0; i < 20; i++) {
+                assertThatThrownBy(() -> storage.transfer(ONE, TWO, new Money(1000)))
+                    .isInstanceOf(AccountException.class);
+                assertThatThrownBy(() -> storage.transfer(TWO, ONE, new Money(1000)))
+                    .isInstanceOf(AccountException.class);
+            }
+        }).call();
+
+        assertThat(slots(ONE)).isEqualTo(one);
+        assertThat(slots(TWO)).isEqualTo(two);
+    }
+
+    @SneakyThrows
+    private static void await(CountDownLatch latch) {
+        latch.await();
+    }
+
+    @SneakyThrows
+    private int count(String sql) {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @SneakyThrows
+    private void execute(String sql) {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    @SneakyThrows
+    private List<Integer> slots(UUID accountId) {
+        List<Integer> balances = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT balance FROM account_slots WHERE accountId = '" + accountId + "' ORDER BY slot")) {
+            while (rs.next()) {
+                balances.add(rs.getInt(1));
+            }
+        }
+        return balances;
+    }
+
     @SneakyThrows
     private List<Account> readAllAccounts() {
         List<Account> accounts = new ArrayList<>();
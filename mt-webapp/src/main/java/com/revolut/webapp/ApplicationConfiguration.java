@@ -1,33 +1,227 @@
 package com.revolut.webapp;
 
 import com.revolut.core.bank.Bank;
+import com.revolut.core.bank.ConcurrentBank;
+import com.revolut.core.bank.ConflictTracker;
+import com.revolut.core.bank.PartitionedBank;
+import com.revolut.core.bank.SequencedBank;
 import com.revolut.core.bank.SimpleBank;
+import com.revolut.core.metrics.MetricsRegistry;
+import com.revolut.core.storage.CachingStorage;
+import com.revolut.core.storage.Ledger;
 import com.revolut.core.storage.Storage;
+import com.revolut.core.storage.UndoLog;
+import com.revolut.core.storage.UnitOfWork;
 import com.revolut.persistence.DataSource;
+import com.revolut.persistence.GroupCommitExecutor;
+import com.revolut.persistence.JournalStorage;
+import com.revolut.persistence.OffHeapStorage;
+import com.revolut.persistence.ShardedStorage;
+import com.revolut.persistence.SqlLedger;
 import com.revolut.persistence.SqlStorage;
+import com.revolut.persistence.TransactionalOperation;
 import com.revolut.webapp.service.AccountController;
+import com.revolut.webapp.service.AdmissionController;
+import com.revolut.webapp.service.BoundedExecutor;
+import com.revolut.webapp.service.MetricsController;
+import com.revolut.webapp.service.MetricsFilter;
+import com.revolut.webapp.service.RetryBudget;
+import com.revolut.webapp.service.RetryCounters;
+import com.revolut.webapp.service.RetryPolicy;
 import lombok.extern.slf4j.Slf4j;
 import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
 import org.flywaydb.core.Flyway;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.h2.jdbcx.JdbcDataSource;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wires the application together. Bank implementation is chosen with
+ * {@code -Dmt.bank=simple|sequenced|concurrent|partitioned} system property, {@code simple} by default,
+ * simple bank deals with conflicts as {@code -Dmt.bank.mode=optimistic|delta|pessimistic|adaptive} says,
+ * adaptive one locks accounts, which conflict more than {@code -Dmt.bank.adaptive.threshold} times
+ * per {@code -Dmt.bank.adaptive.halflife} millis,
+ * partitioned one runs {@code -Dmt.bank.partitions} workers, one per core by default.
+ * Storage is chosen with {@code -Dmt.storage=sql|sharded|offheap|journal}, {@code sql} by default,
+ * sharded one spreads accounts over {@code -Dmt.storage.shards} databases.
+ * Transfers made on sql storage are recorded by the ledger.
+ * With {@code -Dmt.commit=group} operations on sql storage are committed in groups of up to
+ * {@code -Dmt.commit.group} by a single committer thread.
+ * Account reads are cached, if Guava cache spec is given with {@code -Dmt.cache}.
+ * Conflicting operations are retried with jittered backoff up to {@code -Dmt.retry.attempts}
+ * times within {@code -Dmt.retry.deadline} millis, at most {@code -Dmt.retry.budget} retries per second.
+ * Changing operations run on the request thread or are handed over to
+ * {@code -Dmt.executor=direct|threads|virtual} executor, {@code direct} by default.
+ * Changing operations in flight are limited by latency-adaptive admission control, starting from
+ * {@code -Dmt.admission.limit} within {@code -Dmt.admission.min} and {@code -Dmt.admission.max},
+ * {@code -Dmt.admission=false} turns it off.
+ */
 @Slf4j
 class ApplicationConfiguration extends ResourceConfig {
 
     ApplicationConfiguration() {
-        DataSource dataSource = new DataSource(createDataSource());
-        Storage storage = new SqlStorage(dataSource);
-        Bank bank = new SimpleBank(storage);
-        int numberOfRetries = 3;
+        MetricsRegistry metrics = MetricsRegistry.DEFAULT;
+        Storage storage;
+        UnitOfWork transaction;
+        Ledger ledger = Ledger.none();
+        String storageMode = System.getProperty("mt.storage", "sql");
+        switch (storageMode) {
+            case "sql":
+                DataSource dataSource = new DataSource(createDataSource("db1"));
+                storage = new SqlStorage(dataSource);
+                SqlLedger sqlLedger = new SqlLedger(dataSource);
+                ledger = sqlLedger;
+                transaction = sqlLedger.wrap(createTransaction(dataSource));
+                registerPool(metrics, dataSource);
+                break;
+            case "sharded":
+                List<DataSource> shards = new ArrayList<>();
+                for (int i = 0; i < Integer.getInteger("mt.storage.shards", 4); i++) {
+                    DataSource shard = new DataSource(createDataSource("shard" + i));
+                    registerPool(metrics, shard, "shard", String.valueOf(i));
+                    shards.add(shard);
+                }
+                ShardedStorage sharded = new ShardedStorage(shards);
+                sharded.recover();
+                storage = sharded;
+                transaction = sharded.unitOfWork();
+                break;
+            case "offheap":
+                UndoLog undoLog = new UndoLog();
+                storage = new OffHeapStorage(Integer.getInteger("mt.storage.capacity", 1_000_000), undoLog);
+                transaction = undoLog;
+                break;
+            case "journal":
+                UndoLog journalUndoLog = new UndoLog();
+                storage = new JournalStorage(
+                    Paths.get(System.getProperty("mt.storage.dir", "data")), 64 << 20, 1_000_000, journalUndoLog);
+                transaction = journalUndoLog;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown storage [" + storageMode + "]");
+        }
+        String cacheSpec = System.getProperty("mt.cache");
+        if (cacheSpec != null && "group".equals(System.getProperty("mt.commit"))) {
+            // works run on the committer thread, out of sight of the cache
+            throw new IllegalArgumentException("Cache cannot be combined with group commit");
+        }
+        if (cacheSpec != null) {
+            CachingStorage caching = new CachingStorage(storage, cacheSpec);
+            storage = caching;
+            transaction = caching.wrap(transaction);
+        }
+        RetryPolicy retryPolicy = RetryPolicy
+            .exponentialBackoff(Integer.getInteger("mt.retry.attempts", 5), 1, 50, TimeUnit.MILLISECONDS)
+            .withDeadline(Integer.getInteger("mt.retry.deadline", 1000), TimeUnit.MILLISECONDS)
+            .withBudget(new RetryBudget(Integer.getInteger("mt.retry.budget", 1000), 100));
+
+        String mode = System.getProperty("mt.bank", "simple");
+        log.info("Starting [{}] bank on [{}] storage", mode, storageMode);
+
+        Bank bank;
+        UnitOfWork unitOfWork;
+        switch (mode) {
+            case "simple":
+                ConflictTracker conflicts = new ConflictTracker(
+                    Double.parseDouble(System.getProperty("mt.bank.adaptive.threshold", "5")),
+                    Long.getLong("mt.bank.adaptive.halflife", 10_000), TimeUnit.MILLISECONDS);
+                metrics.counter("bank_conflicts_total", "Optimistic lock conflicts seen by the bank", conflicts::getConflicts);
+                metrics.gauge("bank_hot_accounts", "Accounts locked pessimistically in adaptive mode", conflicts::getHotAccounts);
+                bank = new SimpleBank(storage,
+                    SimpleBank.Mode.valueOf(System.getProperty("mt.bank.mode", "optimistic").toUpperCase()), ledger, conflicts);
+                unitOfWork = transaction;
+                break;
+            case "sequenced":
+                // writer persists in batches itself, requests don't need own transaction
+                bank = new SequencedBank(storage, transaction, 1024, 256);
+                unitOfWork = Runnable::run;
+                break;
+            case "concurrent":
+                // everything is kept in memory, nothing to be transactional about
+                bank = new ConcurrentBank();
+                unitOfWork = Runnable::run;
+                break;
+            case "partitioned":
+                bank = new PartitionedBank(
+                    Integer.getInteger("mt.bank.partitions", Runtime.getRuntime().availableProcessors()));
+                unitOfWork = Runnable::run;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown bank [" + mode + "]");
+        }
+
+        RetryCounters retryCounters = new RetryCounters();
+        metrics.counter("operation_attempts_total", "Operation calls including retries", retryCounters::getAttempts);
+        metrics.counter("operation_retries_total", "Operation calls scheduled again after a conflict", retryCounters::getRetries);
+        metrics.counter("operation_successes_total", "Operations completed successfully", retryCounters::getSuccesses);
+        metrics.counter("operation_retries_exhausted_total", "Operations failed after giving up retrying", retryCounters::getExhausted);
+
+        AdmissionController admission = createAdmission();
+        metrics.gauge("admission_limit", "Changing operations allowed in flight", admission::getLimit);
+        metrics.gauge("admission_in_flight", "Changing operations in flight", admission::getInFlight);
+        metrics.counter("admission_rejected_total", "Changing operations rejected by admission control", admission::getRejected);
 
         register(new JacksonJsonProvider());
-        register(new AccountController(bank, dataSource, numberOfRetries));
+        register(new MetricsFilter(metrics));
+        register(new MetricsController(metrics));
+        register(new AccountController(bank, unitOfWork, retryPolicy, retryCounters, createExecutor(), admission));
+    }
+
+    private static AdmissionController createAdmission() {
+        if (!Boolean.parseBoolean(System.getProperty("mt.admission", "true"))) return AdmissionController.unlimited();
+        return new AdmissionController(
+            Integer.getInteger("mt.admission.limit", 64),
+            Integer.getInteger("mt.admission.min", 8),
+            Integer.getInteger("mt.admission.max", 1024));
+    }
+
+    private static Executor createExecutor() {
+        String mode = System.getProperty("mt.executor", "direct");
+        int threads = Integer.getInteger("mt.executor.threads", 64);
+        int maxInFlight = Integer.getInteger("mt.executor.inflight", 1024);
+        log.info("Running operations on [{}] executor", mode);
+        switch (mode) {
+            case "direct":
+                return Runnable::run;
+            case "threads":
+                return BoundedExecutor.threads(threads, maxInFlight);
+            case "virtual":
+                return BoundedExecutor.virtualThreads(threads, maxInFlight);
+            default:
+                throw new IllegalArgumentException("Unknown executor [" + mode + "]");
+        }
+    }
+
+    private static UnitOfWork createTransaction(DataSource dataSource) {
+        String mode = System.getProperty("mt.commit", "single");
+        log.info("Committing operations in [{}] mode", mode);
+        switch (mode) {
+            case "single":
+                return work -> new TransactionalOperation(dataSource, work).call();
+            case "group":
+                return new GroupCommitExecutor(dataSource, Integer.getInteger("mt.commit.group", 256));
+            default:
+                throw new IllegalArgumentException("Unknown commit mode [" + mode + "]");
+        }
+    }
+
+    private static void registerPool(MetricsRegistry metrics, DataSource dataSource, String... labels) {
+        metrics.gauge("db_connections_active", "Connections given away by the pool",
+            () -> dataSource.getPoolStatistics().getActive(), labels);
+        metrics.gauge("db_connections_idle", "Connections kept by the pool",
+            () -> dataSource.getPoolStatistics().getIdle(), labels);
+        metrics.counter("db_connection_timeouts_total", "Connections not acquired within timeout",
+            () -> dataSource.getPoolStatistics().getTimeouts(), labels);
     }
 
-    private static JdbcDataSource createDataSource() {
+    private static JdbcDataSource createDataSource(String name) {
         JdbcDataSource ds = new JdbcDataSource();
-        ds.setURL("jdbc:h2:mem:db1;DB_CLOSE_DELAY=-1");
+        ds.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
         ds.setUser("sa");
         ds.setPassword("");
 
@@ -11,6 +11,7 @@ public class JettyServer {
 
     JettyServer(URI baseUri, ResourceConfig configuration) {
         server = JettyHttpContainerFactory.createServer(baseUri, configuration, false);
+        server.setHandler(new ResumedRequestHandler(server.getHandler()));
     }
 
     public void start() throws Exception {
@@ -22,4 +23,4 @@ public class JettyServer {
         server.join();
         server.destroy();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,38 @@
+package com.revolut.webapp;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Jersey container resumes continuation of suspended request, when response is already written,
+ * Jetty dispatches such request once again and Jersey would handle it as a new one with empty body.
+ * Errors and timeouts of async responses are written by Jersey the same way before it resumes,
+ * so resumed dispatch is finished right away. Expired continuation, which nobody has resumed,
+ * has no response yet, it's answered with 503.
+ */
+class ResumedRequestHandler extends HandlerWrapper {
+
+    ResumedRequestHandler(Handler handler) {
+        setHandler(handler);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request,
+                       HttpServletResponse response) throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.ASYNC) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        baseRequest.setHandled(true);
+        if (baseRequest.getHttpChannelState().isExpired() && !response.isCommitted()) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Request has timed out");
+        }
+    }
+}
@@ -2,21 +2,45 @@ package com.revolut.webapp.service;
 
 import com.revolut.core.account.Account;
 import com.revolut.core.bank.Bank;
+import com.revolut.core.bank.Transfer;
+import com.revolut.core.bank.TransferResult;
 import com.revolut.core.money.Money;
-import com.revolut.persistence.DataSource;
-import com.revolut.persistence.TransactionalOperation;
+import com.revolut.core.storage.UnitOfWork;
 import lombok.extern.slf4j.Slf4j;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.toList;
 
@@ -24,14 +48,34 @@ import static java.util.stream.Collectors.toList;
 @Path("/")
 public class AccountController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final JsonFactory JSON = new JsonFactory();
+
     private final Bank bank;
-    private final DataSource dataSource;
-    private final int numberOfRetries;
+    private final UnitOfWork unitOfWork;
+    private final RetryPolicy retryPolicy;
+    private final RetryCounters retryCounters;
+    private final Executor executor;
+    private final AdmissionController admission;
+
+    public AccountController(Bank bank, UnitOfWork unitOfWork, int numberOfRetries) {
+        this(bank, unitOfWork, RetryPolicy.immediate(numberOfRetries), new RetryCounters(), Runnable::run,
+            AdmissionController.unlimited());
+    }
 
-    public AccountController(Bank bank, DataSource dataSource, int numberOfRetries) {
+    /**
+     * @param executor  runs changing operations, {@code Runnable::run} keeps them on the request thread
+     * @param admission limits changing operations in flight, the rest are rejected before reaching the executor
+     */
+    public AccountController(Bank bank, UnitOfWork unitOfWork, RetryPolicy retryPolicy,
+                             RetryCounters retryCounters, Executor executor, AdmissionController admission) {
         this.bank = bank;
-        this.dataSource = dataSource;
-        this.numberOfRetries = numberOfRetries;
+        this.unitOfWork = unitOfWork;
+        this.retryPolicy = retryPolicy;
+        this.retryCounters = retryCounters;
+        this.executor = executor;
+        this.admission = admission;
     }
 
     @POST
@@ -50,59 +94,285 @@ public class AccountController {
         return new AccountDto(bank.getAccount(id));
     }
 
+    /**
+     * Many accounts in one go, ids are given comma separated or as repeated parameters,
+     * the ones not found are listed as missing
+     */
+    @GET
+    @Path("/accounts")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAccounts(
+        @QueryParam("ids") List<String> ids
+    ) {
+        List<UUID> accountIds = new ArrayList<>();
+        for (String value : ids) {
+            for (String id : value.split(",")) {
+                if (id.trim().isEmpty()) continue;
+                try {
+                    accountIds.add(UUID.fromString(id.trim()));
+                } catch (IllegalArgumentException e) {
+                    return Response.status(400).entity("Invalid account id [" + id.trim() + "]").build();
+                }
+            }
+        }
+        return accounts(accountIds);
+    }
+
+    /**
+     * Same as {@link #getAccounts(List)}, for lists of ids too long for the query string
+     */
+    @POST
+    @Path("/accounts")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response postAccounts(List<UUID> ids) {
+        if (ids == null || ids.contains(null))
+            return Response.status(400).entity("Account ids must be given").build();
+        return accounts(ids);
+    }
+
+    /**
+     * Without limit all accounts are streamed to the client one by one. With limit single
+     * page of accounts ordered by id is returned, link to the next page is in the header.
+     */
     @GET
     @Path("/account")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<AccountDto> getAllAccounts() {
-        return bank.getAllAccounts().stream()
+    public Response getAllAccounts(
+        @QueryParam("after") UUID after,
+        @QueryParam("limit") Integer limit,
+        @Context UriInfo uriInfo
+    ) {
+        if (limit == null) {
+            if (after != null)
+                return Response.status(400).entity("Cursor cannot be used without limit").build();
+            return Response.ok((StreamingOutput) this::writeAllAccounts).build();
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            return Response.status(400).entity("Limit must be between 1 and " + MAX_PAGE_SIZE).build();
+
+        List<AccountDto> page = bank.getAccounts(after, limit).stream()
             .map(AccountDto::new)
             .collect(toList());
+        Response.ResponseBuilder response = Response.ok(page);
+        if (page.size() == limit) {
+            UUID last = page.get(page.size() - 1).getId();
+            response.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", last).build(), "next");
+        }
+        return response.build();
+    }
+
+    /**
+     * Page of transfers from or to the account, the latest first, link to the next page
+     * is in the header
+     */
+    @GET
+    @Path("/account/{id}/transactions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTransactions(
+        @PathParam("id") UUID id,
+        @QueryParam("before") Long before,
+        @QueryParam("limit") @DefaultValue("100") int limit,
+        @Context UriInfo uriInfo
+    ) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            return Response.status(400).entity("Limit must be between 1 and " + MAX_PAGE_SIZE).build();
+        if (!bank.hasHistory())
+            return Response.status(404).entity("Bank doesn't keep history of transfers").build();
+
+        List<TransactionDto> page = bank.getTransactions(id, before, limit).stream()
+            .map(TransactionDto::new)
+            .collect(toList());
+        Response.ResponseBuilder response = Response.ok(page);
+        if (page.size() == limit) {
+            long last = page.get(page.size() - 1).getId();
+            response.link(uriInfo.getRequestUriBuilder().replaceQueryParam("before", last).build(), "next");
+        }
+        return response.build();
     }
 
     @POST
     @Path("/account/{id}/deposit")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response deposit(
+    public void deposit(
         @PathParam("id") UUID id,
-        @FormParam("amount") int amount
+        @FormParam("amount") int amount,
+        @Suspended AsyncResponse response
     ) {
-        Account[] account = new Account[1];
-        RetriableOperation operation = new RetriableOperation(
-            numberOfRetries,
-            new TransactionalOperation(dataSource,
-                () -> account[0] = bank.deposit(id, new Money(amount))
-            ));
+        dispatch(response, () -> {
+            Account[] account = new Account[1];
+            RetriableOperation operation = new RetriableOperation(
+                retryPolicy, retryCounters,
+                inUnitOfWork(() -> account[0] = bank.deposit(id, new Money(amount))));
 
-        try {
-            operation.call();
-            return Response.status(200).entity(new AccountDto(account[0])).build();
-        } catch (Exception e) {
-            return Response.status(500).entity(e.getMessage()).build();
-        }
+            try {
+                operation.call();
+                return Response.status(200).entity(new AccountDto(account[0])).build();
+            } catch (Exception e) {
+                return Response.status(500).entity(e.getMessage()).build();
+            }
+        });
     }
 
     @POST
     @Path("/account/{id}/transfer")
-    public Response transfer(
+    public void transfer(
         @PathParam("id") UUID from,
         @FormParam("to") UUID to,
-        @FormParam("amount") int amount
+        @FormParam("amount") int amount,
+        @Suspended AsyncResponse response
     ) {
-        log.debug("Transfer amount [{}] from [{}] to [{}]", amount, from, to);
+        dispatch(response, () -> {
+            log.debug("Transfer amount [{}] from [{}] to [{}]", amount, from, to);
 
-        if (amount < 0)
-            return Response.status(400).entity("Negative amount cannot be transferred").build();
+            if (amount < 0)
+                return Response.status(400).entity("Negative amount cannot be transferred").build();
 
-        RetriableOperation operation = new RetriableOperation(
-            numberOfRetries,
-            new TransactionalOperation(dataSource,
-                () -> bank.transfer(from, to, new Money(amount))));
+            RetriableOperation operation = new RetriableOperation(
+                retryPolicy, retryCounters,
+                inUnitOfWork(() -> bank.transfer(from, to, new Money(amount))));
+
+            try {
+                operation.call();
+                return Response.status(200).build();
+            } catch (Exception e) {
+                return Response.status(500).entity(e.getMessage()).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("/account/transfers/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void transferBatch(List<TransferDto> transfers, @Suspended AsyncResponse response) {
+        dispatch(response, () -> {
+            if (transfers == null || transfers.stream().anyMatch(t -> t == null || t.getFrom() == null || t.getTo() == null))
+                return Response.status(400).entity("Every transfer must have from and to accounts").build();
+            if (transfers.size() > MAX_BATCH_SIZE)
+                return Response.status(400).entity("Batch cannot have more than " + MAX_BATCH_SIZE + " transfers").build();
+
+            log.debug("Batch of [{}] transfers", transfers.size());
+
+            List<Transfer> valid = new ArrayList<>(transfers.size());
+            for (TransferDto transfer : transfers) {
+                if (transfer.getAmount() >= 0)
+                    valid.add(new Transfer(transfer.getFrom(), transfer.getTo(), new Money(transfer.getAmount())));
+            }
+
+            List<List<TransferResult>> results = new ArrayList<>(1);
+            RetriableOperation operation = new RetriableOperation(
+                retryPolicy, retryCounters,
+                inUnitOfWork(() -> {
+                    results.clear();
+                    results.add(bank.transfer(valid));
+                }));
+
+            try {
+                operation.call();
+            } catch (Exception e) {
+                return Response.status(500).entity(e.getMessage()).build();
+            }
+
+            Iterator<TransferResult> applied = results.get(0).iterator();
+            List<TransferResultDto> body = new ArrayList<>(transfers.size());
+            for (TransferDto transfer : transfers) {
+                TransferResult result = transfer.getAmount() >= 0
+                    ? applied.next()
+                    : TransferResult.failed("Negative amount cannot be transferred");
+                body.add(new TransferResultDto(transfer, result));
+            }
+            return Response.status(200).entity(body).build();
+        });
+    }
+
+    /**
+     * Spreads balance of a hot account over given number of slots, so that concurrent
+     * deposits and transfers don't fight over a single row
+     */
+    @POST
+    @Path("/account/{id}/stripes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response stripe(
+        @PathParam("id") UUID id,
+        @FormParam("slots") int slots
+    ) {
+        if (slots < 1)
+            return Response.status(400).entity("Number of slots must be positive").build();
+        if (!bank.supportsStriping())
+            return Response.status(501).entity("Bank doesn't support striped accounts").build();
 
         try {
-            operation.call();
-            return Response.status(200).build();
+            unitOfWork.execute(() -> bank.stripe(id, slots));
         } catch (Exception e) {
             return Response.status(500).entity(e.getMessage()).build();
         }
+        return Response.ok(new AccountDto(bank.getAccount(id))).build();
+    }
+
+    private Response accounts(List<UUID> ids) {
+        Set<UUID> accountIds = new LinkedHashSet<>(ids);
+        if (accountIds.isEmpty() || accountIds.size() > MAX_PAGE_SIZE)
+            return Response.status(400).entity("Number of ids must be between 1 and " + MAX_PAGE_SIZE).build();
+
+        Map<UUID, Account> found = bank.getAccounts(accountIds);
+        List<AccountDto> accounts = new ArrayList<>(found.size());
+        List<UUID> missing = new ArrayList<>();
+        for (UUID accountId : accountIds) {
+            Account account = found.get(accountId);
+            if (account != null) accounts.add(new AccountDto(account));
+            else missing.add(accountId);
+        }
+        return Response.ok(new AccountsDto(accounts, missing)).build();
+    }
+
+    private void writeAllAccounts(OutputStream output) throws IOException {
+        JsonGenerator json = JSON.createJsonGenerator(output, JsonEncoding.UTF8);
+        json.writeStartArray();
+        try {
+            bank.forEachAccount(account -> {
+                try {
+                    json.writeStartObject();
+                    json.writeStringField("id", account.getAccountId().toString());
+                    json.writeNumberField("balance", account.getBalance().getCents());
+                    json.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        json.writeEndArray();
+        json.close();
+    }
+
+    private void dispatch(AsyncResponse response, Supplier<Response> work) {
+        AdmissionController.Permit permit = admission.tryAcquire();
+        if (permit == null) {
+            response.resume(Response.status(503).header("Retry-After", 1).entity("Too many operations in flight").build());
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    response.resume(work.get());
+                } catch (RuntimeException e) {
+                    response.resume(e);
+                } finally {
+                    permit.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permit.release();
+            response.resume(Response.status(503).header("Retry-After", 1).entity(e.getMessage()).build());
+        }
+    }
+
+    private Callable<Object> inUnitOfWork(Runnable work) {
+        return () -> {
+            unitOfWork.execute(work);
+            return null;
+        };
     }
 }
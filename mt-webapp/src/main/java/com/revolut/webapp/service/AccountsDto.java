@@ -0,0 +1,16 @@
+package com.revolut.webapp.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountsDto {
+    private List<AccountDto> accounts;
+    private List<UUID> missing;
+}
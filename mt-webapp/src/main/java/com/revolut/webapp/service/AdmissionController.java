@@ -0,0 +1,121 @@
+package com.revolut.webapp.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps number of operations in flight, anything above the limit is turned away at once.
+ *
+ * The limit follows observed latency the way gradient limiters do: short-term average
+ * latency is compared with the long-term one, while they are close the limit grows by
+ * about square root of itself, once operations slow down it shrinks proportionally
+ * down to the half. Long-term average slowly follows the short-term one, so the limit
+ * settles on a new normal instead of shrinking forever. The limit doesn't grow, when
+ * less than half of it is used. Operations giving up on retries take as long as their
+ * deadline, so they bring the limit down the same way.
+ */
+public class AdmissionController {
+
+    private static final double SHORT_SMOOTHING = 0.1;
+    private static final double LONG_SMOOTHING = 0.01;
+    private static final double TOLERANCE = 1.5;
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+    private double shortLatency;
+    private double longLatency;
+
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of nanoseconds to measure latency of operations with
+     */
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, LongSupplier clock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.clock = clock;
+    }
+
+    /**
+     * Admits everything, never changes the limit
+     */
+    public static AdmissionController unlimited() {
+        return new AdmissionController(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE) {
+            @Override
+            synchronized void sample(long latencyNanos, int inFlight) {
+            }
+        };
+    }
+
+    /**
+     * @return permit to release once the operation is finished, null if the limit is reached
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) return new Permit(current + 1);
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    synchronized void sample(long latencyNanos, int inFlight) {
+        double latency = Math.max(1, latencyNanos);
+        if (shortLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+        }
+        shortLatency += (latency - shortLatency) * SHORT_SMOOTHING;
+        longLatency += (latency - longLatency) * LONG_SMOOTHING;
+        // recovering after sustained slowdown, long-term average must not stay inflated
+        if (longLatency > 2 * shortLatency) longLatency *= 0.95;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double target = limit * gradient + Math.sqrt(limit);
+        if (target > limit && inFlight < limit / 2) return;
+
+        double smoothed = limit * (1 - LIMIT_SMOOTHING) + target * LIMIT_SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, smoothed));
+    }
+
+    /**
+     * Slot of an admitted operation
+     */
+    public class Permit {
+        private final long started = clock.getAsLong();
+        private final int inFlightOnStart;
+
+        Permit(int inFlightOnStart) {
+            this.inFlightOnStart = inFlightOnStart;
+        }
+
+        public void release() {
+            inFlight.decrementAndGet();
+            sample(clock.getAsLong() - started, inFlightOnStart);
+        }
+    }
+}
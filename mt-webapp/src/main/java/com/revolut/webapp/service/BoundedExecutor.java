@@ -0,0 +1,72 @@
+package com.revolut.webapp.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs request work off the HTTP threads. At most given number of tasks could be
+ * in flight, running or waiting, anything above is rejected right away, so overload
+ * turns into quick refusals instead of ever growing queue.
+ */
+@Slf4j
+public class BoundedExecutor implements Executor {
+
+    private final Executor delegate;
+    private final Semaphore inFlight;
+
+    public BoundedExecutor(Executor delegate, int maxInFlight) {
+        this.delegate = delegate;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!inFlight.tryAcquire()) throw new RejectedExecutionException("Too many requests in flight");
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Fixed number of platform threads
+     */
+    public static BoundedExecutor threads(int threads, int maxInFlight) {
+        AtomicInteger number = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "request-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new BoundedExecutor(pool, maxInFlight);
+    }
+
+    /**
+     * New virtual thread for every task, if the JDK has them, fixed number of platform
+     * threads otherwise
+     */
+    public static BoundedExecutor virtualThreads(int fallbackThreads, int maxInFlight) {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new BoundedExecutor(virtual, maxInFlight);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available, falling back to [{}] threads", fallbackThreads);
+            return threads(fallbackThreads, maxInFlight);
+        }
+    }
+}
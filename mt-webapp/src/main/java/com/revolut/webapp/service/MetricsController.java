@@ -0,0 +1,34 @@
+package com.revolut.webapp.service;
+
+import com.revolut.core.metrics.MetricsRegistry;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+@Path("/metrics")
+public class MetricsController {
+
+    private final MetricsRegistry registry;
+
+    public MetricsController(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * All metrics in Prometheus text format
+     */
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public StreamingOutput metrics() {
+        return output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            registry.write(writer);
+            writer.flush();
+        };
+    }
+}
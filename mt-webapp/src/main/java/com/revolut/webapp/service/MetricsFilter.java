@@ -0,0 +1,58 @@
+package com.revolut.webapp.service;
+
+import com.revolut.core.metrics.Histogram;
+import com.revolut.core.metrics.MetricsRegistry;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records latency and response status of every endpoint, named after its resource method.
+ * Time is measured until the response entity starts being written, so streamed
+ * responses are counted without the streaming itself.
+ */
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String STARTED = MetricsFilter.class.getName() + ".started";
+    private static final String UNMATCHED = "unmatched";
+
+    private final MetricsRegistry registry;
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public MetricsFilter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        request.setProperty(STARTED, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object started = request.getProperty(STARTED);
+        String endpoint = endpoint();
+        if (started != null) {
+            latencies.computeIfAbsent(endpoint, e -> registry.histogram(
+                "http_request_seconds", "Time spent handling requests", "endpoint", e))
+                .recordSince((Long) started);
+        }
+        registry.counter("http_responses_total", "Responses by endpoint and status",
+            "endpoint", endpoint, "status", String.valueOf(response.getStatus())).increment();
+    }
+
+    private String endpoint() {
+        Method method = resourceInfo == null ? null : resourceInfo.getResourceMethod();
+        return method == null ? UNMATCHED : method.getName();
+    }
+}
@@ -4,16 +4,18 @@ import com.revolut.core.storage.RetryStorageException;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides retry mechanism for any kind of runnable, callable.
- * Can be configured with how many times to retry.
+ * When and how many times to retry is decided by {@link RetryPolicy}.
  *
  * At the moment it triggers retry only on RetryStorageException.
  */
 @Slf4j
 public class RetriableOperation implements Callable<Object> {
-    private final int numberOfRetries;
+    private final RetryPolicy policy;
+    private final RetryCounters counters;
     private final Callable callable;
 
     public RetriableOperation(int numberOfRetries, Runnable runnable) {
@@ -24,27 +26,46 @@ public class RetriableOperation implements Callable<Object> {
     }
 
     public RetriableOperation(int numberOfRetries, Callable callable) {
-        this.numberOfRetries = numberOfRetries;
+        this(RetryPolicy.immediate(numberOfRetries), new RetryCounters(), callable);
+    }
+
+    public RetriableOperation(RetryPolicy policy, RetryCounters counters, Callable callable) {
+        this.policy = policy;
+        this.counters = counters;
         this.callable = callable;
     }
 
     @Override
     public Object call() throws Exception {
-        int retry = numberOfRetries;
-        while (retry > 0) {
+        long started = System.nanoTime();
+        int attempts = 0;
+        while (true) {
             try {
+                attempts++;
+                counters.attempt();
                 callable.call();
+                counters.success();
                 return null;
             } catch (RetryStorageException ex) {
-                retry--;
-                log.warn("Retries left [{}], exc [{}]", retry, ex.getMessage());
-                if (retry == 0) {
-                    log.error("Retries no more", ex);
+                long delay = policy.delayNanos(attempts, System.nanoTime() - started);
+                if (delay < 0) {
+                    counters.exhausted();
+                    log.error("Retries no more after [{}] attempts", attempts, ex);
                     throw ex;
                 }
-
+                counters.retry();
+                log.warn("Retry in [{}] us, exc [{}]", TimeUnit.NANOSECONDS.toMicros(delay), ex.getMessage());
+                if (delay > 0) pause(delay, ex);
             }
         }
-        return null;
+    }
+
+    private static void pause(long nanos, RetryStorageException ex) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        }
     }
 }
@@ -0,0 +1,40 @@
+package com.revolut.webapp.service;
+
+/**
+ * Token bucket limiting retries of the whole process. Every retry takes a token,
+ * tokens are refilled at constant rate up to the burst size. Once the bucket is empty
+ * operations fail right away instead of adding more load to the contended storage.
+ */
+public class RetryBudget {
+
+    private final double tokensPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param retriesPerSecond rate tokens are refilled at
+     * @param burst            maximum number of tokens
+     */
+    public RetryBudget(double retriesPerSecond, int burst) {
+        this.tokensPerNano = retriesPerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token
+     *
+     * @return false, if there are no tokens left
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens < 1) return false;
+        tokens--;
+        return true;
+    }
+}
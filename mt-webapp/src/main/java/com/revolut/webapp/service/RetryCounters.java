@@ -0,0 +1,58 @@
+package com.revolut.webapp.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts outcomes of all {@link RetriableOperation}s sharing it
+ */
+public class RetryCounters {
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    void attempt() {
+        attempts.increment();
+    }
+
+    void retry() {
+        retries.increment();
+    }
+
+    void success() {
+        successes.increment();
+    }
+
+    void exhausted() {
+        exhausted.increment();
+    }
+
+    /**
+     * Number of times operations have been called, including retries
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * Number of times operations have been scheduled to be called again
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Number of operations completed successfully
+     */
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    /**
+     * Number of operations failed after policy has given up retrying
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+}
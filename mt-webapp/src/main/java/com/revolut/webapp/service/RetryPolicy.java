@@ -0,0 +1,67 @@
+package com.revolut.webapp.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether failed operation is tried again and how long to wait before that.
+ *
+ * Policies are shared between operations, so they must not keep state of a single one.
+ */
+public interface RetryPolicy {
+
+    /**
+     * @param attempts     number of attempts made so far
+     * @param elapsedNanos time passed since the first attempt started
+     * @return nanoseconds to wait before the next attempt, negative to give up
+     */
+    long delayNanos(int attempts, long elapsedNanos);
+
+    /**
+     * Retries right away until given number of attempts is made
+     */
+    static RetryPolicy immediate(int maxAttempts) {
+        return (attempts, elapsedNanos) -> attempts < maxAttempts ? 0 : -1;
+    }
+
+    /**
+     * Waits random time between zero and exponentially growing ceiling, so operations
+     * failed together don't collide again on the next attempt
+     *
+     * @param base ceiling of the first wait
+     * @param cap  ceiling never grows above it
+     */
+    static RetryPolicy exponentialBackoff(int maxAttempts, long base, long cap, TimeUnit unit) {
+        long baseNanos = unit.toNanos(base);
+        long capNanos = unit.toNanos(cap);
+        return (attempts, elapsedNanos) -> {
+            if (attempts >= maxAttempts) return -1;
+            long ceiling = attempts > 62 ? capNanos : Math.min(capNanos, baseNanos << (attempts - 1));
+            if (ceiling <= 0) ceiling = capNanos;
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        };
+    }
+
+    /**
+     * Gives up, when there are no tokens left in given budget
+     */
+    default RetryPolicy withBudget(RetryBudget budget) {
+        return (attempts, elapsedNanos) -> {
+            long delay = delayNanos(attempts, elapsedNanos);
+            return delay >= 0 && budget.tryAcquire() ? delay : -1;
+        };
+    }
+
+    /**
+     * Gives up, when the next attempt would start after the deadline
+     *
+     * @param deadline time since the first attempt
+     */
+    default RetryPolicy withDeadline(long deadline, TimeUnit unit) {
+        long deadlineNanos = unit.toNanos(deadline);
+        return (attempts, elapsedNanos) -> {
+            long delay = delayNanos(attempts, elapsedNanos);
+            return delay >= 0 && elapsedNanos + delay < deadlineNanos ? delay : -1;
+        };
+    }
+}
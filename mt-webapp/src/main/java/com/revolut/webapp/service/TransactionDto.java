@@ -0,0 +1,24 @@
+package com.revolut.webapp.service;
+
+import com.revolut.core.storage.LedgerEntry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionDto {
+    private long id;
+    private UUID from;
+    private UUID to;
+    private int amount;
+    private long timestamp;
+
+    public TransactionDto(LedgerEntry entry) {
+        this(entry.getId(), entry.getFrom(), entry.getTo(), entry.getAmount().getCents(),
+            entry.getTimestamp().toEpochMilli());
+    }
+}
@@ -0,0 +1,16 @@
+package com.revolut.webapp.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferDto {
+    private UUID from;
+    private UUID to;
+    private int amount;
+}
@@ -0,0 +1,23 @@
+package com.revolut.webapp.service;
+
+import com.revolut.core.bank.TransferResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferResultDto {
+    private UUID from;
+    private UUID to;
+    private int amount;
+    private boolean completed;
+    private String error;
+
+    public TransferResultDto(TransferDto transfer, TransferResult result) {
+        this(transfer.getFrom(), transfer.getTo(), transfer.getAmount(), result.isCompleted(), result.getError());
+    }
+}
@@ -1,17 +1,25 @@
 package com.revolut.webapp;
 
 import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.http.ContentType;
 import com.jayway.restassured.response.Response;
 import com.revolut.webapp.ApplicationConfiguration;
 import com.revolut.webapp.JettyServer;
 import com.revolut.core.account.AccountException;
 import com.revolut.webapp.service.AccountDto;
+import com.revolut.webapp.service.AccountsDto;
+import com.revolut.webapp.service.TransactionDto;
+import com.revolut.webapp.service.TransferDto;
+import com.revolut.webapp.service.TransferResultDto;
 import lombok.SneakyThrows;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -19,6 +27,8 @@ import java.util.concurrent.Executors;
 
 import static com.jayway.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
 public class AccountControllerIT {
 
@@ -69,6 +79,140 @@ public class AccountControllerIT {
         assertThat(accounts).contains(first, second);
     }
 
+    @Test
+    public void getAccounts_pages() {
+        for (int i = 0; i < 3; i++) createAccount();
+        AccountDto[] all = getAccounts();
+
+        List<AccountDto> paged = new ArrayList<>();
+        Response response = given().queryParam("limit", 2).get("account");
+        while (true) {
+            assertThat(response.statusCode()).isEqualTo(200);
+            paged.addAll(Arrays.asList(response.as(AccountDto[].class)));
+            String next = response.header("Link");
+            if (next == null) break;
+            response = given().get(next.substring(next.indexOf('<') + 1, next.indexOf('>')));
+        }
+
+        assertThat(paged).doesNotHaveDuplicates().contains(all);
+    }
+
+    @Test
+    public void getAccounts_wrongLimit() {
+        Response response = given().queryParam("limit", 0).get("account");
+
+        assertThat(response.statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void getAccountsByIds() {
+        AccountDto first = createAccount();
+        AccountDto second = createAccount();
+        depositTo(second, 100);
+        UUID randomId = UUID.randomUUID();
+
+        Response response = given()
+            .queryParam("ids", second.getId() + "," + randomId)
+            .queryParam("ids", first.getId())
+            .get("accounts");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        AccountsDto accounts = response.as(AccountsDto.class);
+        assertThat(accounts.getAccounts()).containsExactly(new AccountDto(second.getId(), 100), first);
+        assertThat(accounts.getMissing()).containsExactly(randomId);
+    }
+
+    @Test
+    public void getAccountsByIds_wrongId() {
+        Response response = given().queryParam("ids", "not-an-id").get("accounts");
+
+        assertThat(response.statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void postAccountsByIds() {
+        AccountDto account = createAccount();
+        UUID randomId = UUID.randomUUID();
+
+        AccountsDto accounts = given()
+            .contentType(ContentType.JSON)
+            .body(new UUID[]{randomId, account.getId()})
+            .post("accounts")
+            .as(AccountsDto.class);
+
+        assertThat(accounts.getAccounts()).containsExactly(account);
+        assertThat(accounts.getMissing()).containsExactly(randomId);
+    }
+
+    @Test
+    public void getTransactions() {
+        assumeTrue(keepsHistory());
+        AccountDto first = createAccount();
+        AccountDto second = createAccount();
+        depositTo(first, 1000);
+        transfer(first.getId(), second.getId(), 100);
+        transfer(second.getId(), first.getId(), 30);
+        transfer(first.getId(), second.getId(), 5000);
+
+        Response response = given().queryParam("limit", 1).get("account/{id}/transactions", first.getId());
+        assertThat(response.statusCode()).isEqualTo(200);
+        TransactionDto[] page = response.as(TransactionDto[].class);
+        assertThat(page).hasSize(1);
+        assertThat(page[0].getFrom()).isEqualTo(second.getId());
+        assertThat(page[0].getAmount()).isEqualTo(30);
+
+        String next = response.header("Link");
+        TransactionDto[] rest = given().get(next.substring(next.indexOf('<') + 1, next.indexOf('>')))
+            .as(TransactionDto[].class);
+        assertThat(rest).hasSize(1);
+        assertThat(rest[0].getTo()).isEqualTo(second.getId());
+        assertThat(rest[0].getAmount()).isEqualTo(100);
+    }
+
+    @Test
+    public void getTransactions_noHistory() {
+        assumeFalse(keepsHistory());
+
+        Response response = given().get("account/{id}/transactions", createAccount().getId());
+
+        assertThat(response.statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    public void stripe() {
+        assumeTrue(supportsStriping());
+        AccountDto hot = createAccount();
+        AccountDto other = createAccount();
+        depositTo(hot, 1000);
+
+        Response response = given().param("slots", 4).post("account/{id}/stripes", hot.getId());
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.as(AccountDto.class)).isEqualTo(new AccountDto(hot.getId(), 1000));
+
+        for (int i = 0; i < 10; i++) depositTo(hot, 10);
+        assertThat(transfer(hot.getId(), other.getId(), 1050).statusCode()).isEqualTo(200);
+
+        assertThat(getAccounts()).contains(new AccountDto(hot.getId(), 50), new AccountDto(other.getId(), 1050));
+    }
+
+    @Test
+    public void stripe_wrongSlots() {
+        AccountDto account = createAccount();
+
+        Response response = given().param("slots", 0).post("account/{id}/stripes", account.getId());
+
+        assertThat(response.statusCode()).isEqualTo(400);
+    }
+
+    @Test
+    public void stripe_notSupported() {
+        assumeFalse(supportsStriping());
+
+        Response response = given().param("slots", 4).post("account/{id}/stripes", createAccount().getId());
+
+        assertThat(response.statusCode()).isEqualTo(501);
+    }
+
     @Test
     public void deposit() {
         AccountDto account = createAccount();
@@ -129,6 +273,83 @@ public class AccountControllerIT {
         assertThat(response.statusCode()).isEqualTo(400);
     }
 
+    @Test
+    public void transferBatch() {
+        AccountDto first = createAccount();
+        AccountDto second = createAccount();
+        depositTo(first, 1000);
+        UUID randomId = UUID.randomUUID();
+
+        TransferResultDto[] results = given()
+            .contentType(ContentType.JSON)
+            .body(new TransferDto[]{
+                new TransferDto(first.getId(), second.getId(), 300),
+                new TransferDto(first.getId(), second.getId(), 800),
+                new TransferDto(second.getId(), first.getId(), -100),
+                new TransferDto(randomId, second.getId(), 100),
+                new TransferDto(second.getId(), first.getId(), 100)
+            })
+            .post("account/transfers/batch")
+            .as(TransferResultDto[].class);
+
+        assertThat(results).extracting(TransferResultDto::isCompleted)
+            .containsExactly(true, false, false, false, true);
+        assertThat(results[1].getError()).contains(AccountException.NOT_ENOUGH_MONEY);
+        assertThat(results[3].getError()).contains(randomId.toString());
+        assertThat(getAccounts()).contains(
+            new AccountDto(first.getId(), 800),
+            new AccountDto(second.getId(), 200)
+        );
+    }
+
+    @Test
+    public void transferBatch_missingAccount() {
+        AccountDto first = createAccount();
+        depositTo(first, 1000);
+
+        Response response = given()
+            .contentType(ContentType.JSON)
+            .body(new TransferDto[]{
+                new TransferDto(first.getId(), null, 300)
+            })
+            .post("account/transfers/batch");
+
+        assertThat(response.statusCode()).isEqualTo(400);
+        assertThat(getAccounts()).contains(new AccountDto(first.getId(), 1000));
+    }
+
+    @Test
+    public void transferBatch_tooBig() {
+        AccountDto first = createAccount();
+        AccountDto second = createAccount();
+        depositTo(first, 1000);
+        TransferDto[] transfers = new TransferDto[1001];
+        Arrays.fill(transfers, new TransferDto(first.getId(), second.getId(), 1));
+
+        Response response = given()
+            .contentType(ContentType.JSON)
+            .body(transfers)
+            .post("account/transfers/batch");
+
+        assertThat(response.statusCode()).isEqualTo(400);
+        assertThat(getAccounts()).contains(new AccountDto(first.getId(), 1000));
+    }
+
+    @Test
+    public void metrics() {
+        AccountDto first = createAccount();
+        depositTo(first, 100);
+
+        Response response = given().get("metrics");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.contentType()).startsWith("text/plain");
+        assertThat(response.asString()).contains(
+            "http_request_seconds_count{endpoint=\"deposit\"}",
+            "http_responses_total{endpoint=\"createAccount\",status=\"200\"}",
+            "operation_attempts_total");
+    }
+
     @Test(timeout = 10000)
     public void concurrentTransfer() {
         AccountDto first = createAccount();
@@ -180,6 +401,17 @@ public class AccountControllerIT {
         );
     }
 
+    // only simple bank keeps transfers, in the ledger of sql storage
+    private static boolean keepsHistory() {
+        return "simple".equals(System.getProperty("mt.bank", "simple"))
+            && "sql".equals(System.getProperty("mt.storage", "sql"));
+    }
+
+    private static boolean supportsStriping() {
+        return "simple".equals(System.getProperty("mt.bank", "simple"))
+            && Arrays.asList("sql", "sharded").contains(System.getProperty("mt.storage", "sql"));
+    }
+
     @SneakyThrows
     private static void await(CountDownLatch latch) {
         latch.await();
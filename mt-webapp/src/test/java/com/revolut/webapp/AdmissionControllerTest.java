@@ -0,0 +1,88 @@
+package com.revolut.webapp;
+
+import com.revolut.webapp.service.AdmissionController;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControllerTest {
+
+    private long now;
+    private final AdmissionController admission = new AdmissionController(10, 4, 40, () -> now);
+
+    @Test
+    public void rejectsAboveLimit() {
+        AdmissionController limited = new AdmissionController(2, 1, 2, () -> now);
+
+        AdmissionController.Permit first = limited.tryAcquire();
+        assertThat(limited.tryAcquire()).isNotNull();
+        assertThat(limited.tryAcquire()).isNull();
+        assertThat(limited.getRejected()).isEqualTo(1);
+
+        first.release();
+        assertThat(limited.tryAcquire()).isNotNull();
+        assertThat(limited.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void growsWhileLatencyIsSteady() {
+        run(50, 1);
+
+        assertThat(admission.getLimit()).isEqualTo(40);
+    }
+
+    @Test
+    public void doesNotGrowWhenMostlyIdle() {
+        for (int i = 0; i < 50; i++) {
+            AdmissionController.Permit permit = admission.tryAcquire();
+            now += TimeUnit.MILLISECONDS.toNanos(1);
+            permit.release();
+        }
+
+        assertThat(admission.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    public void shrinksWhenLatencyGrows() {
+        run(50, 1);
+
+        run(1, 20);
+
+        assertThat(admission.getLimit()).isLessThan(10);
+    }
+
+    @Test
+    public void recoversOnceLatencySettles() {
+        run(50, 1);
+        run(1, 20);
+
+        run(50, 20);
+
+        assertThat(admission.getLimit()).isEqualTo(40);
+    }
+
+    @Test
+    public void unlimited() {
+        AdmissionController unlimited = AdmissionController.unlimited();
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(unlimited.tryAcquire()).isNotNull();
+        }
+        assertThat(unlimited.getRejected()).isEqualTo(0);
+    }
+
+    // rounds of operations taking all the limit at once, each one lasting given millis
+    private void run(int rounds, long millis) {
+        for (int round = 0; round < rounds; round++) {
+            List<AdmissionController.Permit> permits = new ArrayList<>();
+            AdmissionController.Permit permit;
+            while ((permit = admission.tryAcquire()) != null) permits.add(permit);
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+            permits.forEach(AdmissionController.Permit::release);
+        }
+    }
+}
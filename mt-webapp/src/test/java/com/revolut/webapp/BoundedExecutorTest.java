@@ -0,0 +1,75 @@
+package com.revolut.webapp;
+
+import com.revolut.webapp.service.BoundedExecutor;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BoundedExecutorTest {
+
+    @Test(timeout = 5000)
+    public void rejectsAboveLimit() throws InterruptedException {
+        BoundedExecutor executor = BoundedExecutor.threads(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        executor.execute(() -> {
+            await(release);
+            done.countDown();
+        });
+        executor.execute(done::countDown);
+
+        assertThatThrownBy(() -> executor.execute(() -> {
+        })).isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test(timeout = 5000)
+    public void acceptsAgainAfterCompletion() throws InterruptedException {
+        BoundedExecutor executor = BoundedExecutor.threads(1, 1);
+
+        for (int i = 0; i < 3; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute(done::countDown);
+            done.await();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void failedTaskReleasesPermit() throws InterruptedException {
+        BoundedExecutor executor = new BoundedExecutor(task -> {
+            throw new RejectedExecutionException("Shut down");
+        }, 1);
+
+        assertThatThrownBy(() -> executor.execute(() -> {
+        })).hasMessage("Shut down");
+        assertThatThrownBy(() -> executor.execute(() -> {
+        })).hasMessage("Shut down");
+    }
+
+    @Test(timeout = 5000)
+    public void virtualThreadsRunTasks() throws InterruptedException {
+        BoundedExecutor executor = BoundedExecutor.virtualThreads(2, 10);
+        CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 0; i < 5; i++) executor.execute(done::countDown);
+
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.revolut.webapp;
+
+import com.jayway.restassured.response.Response;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.FormParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JettyServerIT {
+
+    private static final String uri = "http://localhost:8081";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final AtomicInteger calls = new AtomicInteger();
+    private static JettyServer server;
+
+    @BeforeClass
+    public static void startUp() throws Exception {
+        server = new JettyServer(new URI(uri), new ResourceConfig().register(new AsyncResource()));
+        server.start();
+    }
+
+    @AfterClass
+    public static void shutDown() throws Exception {
+        server.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void resumedRequestIsHandledOnce() throws Exception {
+        calls.set(0);
+
+        Response response = given().baseUri(uri).formParam("value", "first").post("async");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.asString()).isEqualTo("first");
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void resumedRequestWithoutBodyIsHandledOnce() throws Exception {
+        calls.set(0);
+
+        Response response = given().baseUri(uri).formParam("value", "").post("async");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.asString()).isEmpty();
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Path("/")
+    public static class AsyncResource {
+
+        @POST
+        @Path("async")
+        public void async(@FormParam("value") String value, @Suspended AsyncResponse response) {
+            calls.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    // resumed after the request thread has suspended it
+                    TimeUnit.MILLISECONDS.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.resume(value == null || value.isEmpty() ? null : value);
+            });
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.revolut.webapp;
 
 import com.revolut.core.storage.RetryStorageException;
 import com.revolut.webapp.service.RetriableOperation;
+import com.revolut.webapp.service.RetryCounters;
+import com.revolut.webapp.service.RetryPolicy;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.*;
 
 public class RetriableOperationTest {
@@ -60,4 +64,40 @@ public class RetriableOperationTest {
 
         assertThat(counter[0]).isEqualTo(2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void countersShared() throws Exception {
+        RetryCounters counters = new RetryCounters();
+        int[] counter = {0};
+        new RetriableOperation(RetryPolicy.immediate(3), counters, () -> {
+            if (counter[0]++ == 0) throw new RetryStorageException();
+            return null;
+        }).call();
+        RetriableOperation failing = new RetriableOperation(RetryPolicy.immediate(2), counters, () -> {
+            throw new RetryStorageException();
+        });
+        assertThatThrownBy(failing::call).isInstanceOf(RetryStorageException.class);
+
+        assertThat(counters.getAttempts()).isEqualTo(4);
+        assertThat(counters.getSuccesses()).isEqualTo(1);
+        assertThat(counters.getExhausted()).isEqualTo(1);
+    }
+
+    @Test(timeout = 2000)
+    public void waitsBeforeRetry() throws Exception {
+        int[] counter = {0};
+        RetriableOperation operation = new RetriableOperation(
+            (attempts, elapsed) -> attempts < 3 ? TimeUnit.MILLISECONDS.toNanos(50) : -1,
+            new RetryCounters(),
+            () -> {
+                if (counter[0]++ < 2) throw new RetryStorageException();
+                return null;
+            });
+
+        long started = System.nanoTime();
+        operation.call();
+
+        assertThat(counter[0]).isEqualTo(3);
+        assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+}
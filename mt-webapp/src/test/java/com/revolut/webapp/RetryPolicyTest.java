@@ -0,0 +1,71 @@
+package com.revolut.webapp;
+
+import com.revolut.webapp.service.RetryBudget;
+import com.revolut.webapp.service.RetryPolicy;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void immediate() {
+        RetryPolicy policy = RetryPolicy.immediate(3);
+
+        assertThat(policy.delayNanos(1, 0)).isEqualTo(0);
+        assertThat(policy.delayNanos(2, 0)).isEqualTo(0);
+        assertThat(policy.delayNanos(3, 0)).isNegative();
+    }
+
+    @Test
+    public void exponentialBackoff_jitterWithinCeiling() {
+        RetryPolicy policy = RetryPolicy.exponentialBackoff(100, 1, 50, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(policy.delayNanos(1, 0)).isBetween(0L, MS);
+            assertThat(policy.delayNanos(3, 0)).isBetween(0L, 4 * MS);
+            assertThat(policy.delayNanos(80, 0)).isBetween(0L, 50 * MS);
+        }
+        assertThat(policy.delayNanos(100, 0)).isNegative();
+    }
+
+    @Test
+    public void withDeadline() {
+        RetryPolicy policy = ((RetryPolicy) (attempts, elapsed) -> 10 * MS).withDeadline(100, TimeUnit.MILLISECONDS);
+
+        assertThat(policy.delayNanos(1, 50 * MS)).isEqualTo(10 * MS);
+        assertThat(policy.delayNanos(1, 95 * MS)).isNegative();
+    }
+
+    @Test
+    public void withBudget_failsFastWhenEmpty() {
+        RetryPolicy policy = RetryPolicy.immediate(10).withBudget(new RetryBudget(0.001, 2));
+
+        assertThat(policy.delayNanos(1, 0)).isEqualTo(0);
+        assertThat(policy.delayNanos(1, 0)).isEqualTo(0);
+        assertThat(policy.delayNanos(1, 0)).isNegative();
+    }
+
+    @Test
+    public void withBudget_tokenNotTakenWhenGivingUpAnyway() {
+        RetryBudget budget = new RetryBudget(0.001, 1);
+        RetryPolicy policy = RetryPolicy.immediate(1).withBudget(budget);
+
+        assertThat(policy.delayNanos(1, 0)).isNegative();
+        assertThat(budget.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void budgetRefills() throws InterruptedException {
+        RetryBudget budget = new RetryBudget(1000, 1);
+        assertThat(budget.tryAcquire()).isTrue();
+
+        Thread.sleep(10);
+
+        assertThat(budget.tryAcquire()).isTrue();
+    }
+}